@@ -0,0 +1,34 @@
+package analyze;
+
+import data.CurveStore;
+
+/**
+ * Total absolute difference between the curves after offsetting them to the same average,
+ * which is less affected than the squared difference by a few frequencies that differ a lot.
+ *
+ * @author Adam Luck
+ */
+public class AbsoluteDifferenceMetric implements DistanceMetric {
+
+	@Override
+	public double[] prepare(double[] optimal) {
+		return Analyzer.center(optimal);
+	}
+
+	@Override
+	public double distance(double[] prepared, CurveStore store, int index, double limit) {
+		double[] centered = store.getCenteredCurves();
+		int offset = index * CurveStore.CURVE_LENGTH;
+		double total = 0;
+		for (int start = 0; start < prepared.length; start += Analyzer.CHECK_INTERVAL) {
+			int end = Math.min(start + Analyzer.CHECK_INTERVAL, prepared.length);
+			for (int i = start; i < end; i++) {
+				total += Math.abs(prepared[i] - centered[offset + i]);
+			}
+			if (total > limit)
+				return total;
+		}
+		return total;
+	}
+
+}
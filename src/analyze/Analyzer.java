@@ -1,8 +1,15 @@
 package analyze;
 
-import java.util.Arrays;
+import java.nio.Buffer;
+import java.nio.DoubleBuffer;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
+import data.CompactCurveStore;
+import data.CurveStore;
 import data.Headphone;
+import io.MappedCatalog;
+import util.HeadphoneList;
 
 /**
  * Analyzes headphone measurement preferences and returns recommended headphones.
@@ -13,6 +20,22 @@ public class Analyzer {
 	
 	/** Array of frequencies measured by the program. **/
 	public static final int[] MEASURED_FREQUENCIES = Headphone.MEASURED_FREQUENCIES;
+	/** Number of frequencies added to a squared difference between checks against the limit. */
+	static final int CHECK_INTERVAL = 9;
+	/** Default number of headphones below which a parallel analysis is done on one thread. */
+	public static final int DEFAULT_PARALLEL_THRESHOLD = 8192;
+	/** Number of headphones below which a parallel analysis is done on one thread. */
+	private static volatile int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+	/** Number of candidates per returned headphone that a compact analysis reranks at full precision. */
+	public static final int DEFAULT_RERANK_FACTOR = 4;
+	/** Name of the vectorized distance kernel, which is only present if the vector profile was built. */
+	private static final String VECTOR_KERNEL = "analyze.vector.VectorKernel";
+	/** System property that can be set to "vector" to use the vectorized kernel if it was built and works. */
+	public static final String KERNEL_PROPERTY = "analyzer.kernel";
+	/** Kernel that calculates squared differences. */
+	private static final DistanceKernel KERNEL = loadKernel();
+	/** Number of curves in each block of a batch analysis, small enough for a block to stay in cache. */
+	private static final int BATCH_TILE_SIZE = 128;
 	
 	/**
 	 * Returns an array of Headphones that most closely match the given parameters.
@@ -24,7 +47,369 @@ public class Analyzer {
 	 */
 	public static Headphone[] analyze(Headphone base, double[] freqDiff, int returnAmt, Headphone[] compareList) {
 		// Error checking.
-		if (compareList.length < returnAmt) {
+		checkArguments(freqDiff, returnAmt, compareList.length);
+		double[] optimalF = calculateCenteredOptimal(base, freqDiff);
+		// Keep the closest headphones by their position in compareList,
+		// so ties go to the headphone that comes first.
+		TopK closest = new TopK(returnAmt);
+		for (int i = 0; i < compareList.length; i++) {
+			Headphone headphone = compareList[i];
+			if (headphone.equals(base))
+				continue;
+			double totalSD = calculateSquaredDifference(optimalF, headphone.getStore().getCenteredCurves(),
+					headphone.getIndex() * MEASURED_FREQUENCIES.length, closest.worstScore());
+			closest.offer(totalSD, i);
+		}
+		// Return the headphones from closest to farthest.
+		Headphone[] closestHeadphones = new Headphone[returnAmt];
+		int[] keys = closest.drainKeys();
+		for (int i = 0; i < keys.length; i++) {
+			closestHeadphones[i] = compareList[keys[i]];
+		}
+		return closestHeadphones;
+	}
+
+	/**
+	 * Returns an array of Headphones that most closely match the given parameters,
+	 * scanning the curves of the list's store in order.
+	 * Returns the same headphones as analyze(base, freqDiff, returnAmt, compareList.getAll()).
+	 * @param base Base headphone to compare to.
+	 * @param freqDiff Array of dB differences for each of the measured frequencies.
+	 * @param returnAmt Number of headphones to return.
+	 * @param compareList List of headphones to compare to.
+	 * @return an array of Headphones that most closely match the given parameters.
+	 */
+	public static Headphone[] analyze(Headphone base, double[] freqDiff, int returnAmt, HeadphoneList compareList) {
+		CurveStore store = compareList.getStore();
+		// Error checking.
+		checkArguments(freqDiff, returnAmt, store.size());
+		double[] optimalF = calculateCenteredOptimal(base, freqDiff);
+		// The store is sorted, so ties are broken the same way as when scanning the sorted array.
+		TopK closest = new TopK(returnAmt);
+		scan(base, optimalF, store, 0, store.size(), closest);
+		return toHeadphones(closest, store, returnAmt);
+	}
+
+	/**
+	 * Returns an array of Headphones that most closely match the given parameters,
+	 * measuring how close each headphone is with the given metric.
+	 * With a SquaredDifferenceMetric, returns the same headphones as
+	 * analyze(base, freqDiff, returnAmt, compareList).
+	 * @param base Base headphone to compare to.
+	 * @param freqDiff Array of dB differences for each of the measured frequencies.
+	 * @param returnAmt Number of headphones to return.
+	 * @param compareList List of headphones to compare to.
+	 * @param metric Metric to measure the distance between curves with.
+	 * @return an array of Headphones that most closely match the given parameters.
+	 */
+	public static Headphone[] analyze(Headphone base, double[] freqDiff, int returnAmt, HeadphoneList compareList,
+			DistanceMetric metric) {
+		CurveStore store = compareList.getStore();
+		// Error checking.
+		checkArguments(freqDiff, returnAmt, store.size());
+		double[] prepared = metric.prepare(calculateOptimal(base, freqDiff));
+		TopK closest = new TopK(returnAmt);
+		for (int index = 0; index < store.size(); index++) {
+			if (base != null && store.matches(index, base))
+				continue;
+			closest.offer(metric.distance(prepared, store, index, closest.worstScore()), index);
+		}
+		return toHeadphones(closest, store, returnAmt);
+	}
+
+	/**
+	 * Returns an array of Headphones that most closely match the given parameters from a compact store,
+	 * reranking DEFAULT_RERANK_FACTOR candidates per returned headphone at full precision.
+	 * @param base Base headphone to compare to.
+	 * @param freqDiff Array of dB differences for each of the measured frequencies.
+	 * @param returnAmt Number of headphones to return.
+	 * @param store Compact store of headphones to compare to.
+	 * @return an array of Headphones that most closely match the given parameters.
+	 */
+	public static Headphone[] analyze(Headphone base, double[] freqDiff, int returnAmt, CompactCurveStore store) {
+		checkArguments(freqDiff, returnAmt, store.size());
+		return analyze(base, freqDiff, returnAmt, store, Math.min(store.size(), returnAmt * DEFAULT_RERANK_FACTOR));
+	}
+
+	/**
+	 * Returns an array of Headphones that most closely match the given parameters from a compact store.
+	 * The first pass compares the stored hundredths of a decibel to the optimal values rounded to
+	 * hundredths of a decibel using integer math, and keeps the closest rerankAmt candidates.
+	 * The second pass compares only those candidates at full precision. Since measurements are stored
+	 * exactly, this returns the same headphones as analyze(base, freqDiff, returnAmt, compareList)
+	 * for a list containing the same headphones, unless rounding the optimal values moves one of
+	 * them out of the candidates.
+	 * @param base Base headphone to compare to.
+	 * @param freqDiff Array of dB differences for each of the measured frequencies.
+	 * @param returnAmt Number of headphones to return.
+	 * @param store Compact store of headphones to compare to.
+	 * @param rerankAmt Number of candidates to compare at full precision, at least returnAmt.
+	 * @return an array of Headphones that most closely match the given parameters.
+	 */
+	public static Headphone[] analyze(Headphone base, double[] freqDiff, int returnAmt, CompactCurveStore store,
+			int rerankAmt) {
+		// Error checking.
+		checkArguments(freqDiff, returnAmt, store.size());
+		if (rerankAmt < returnAmt || rerankAmt > store.size()) {
+			throw new IndexOutOfBoundsException("Number of headphones to rerank must be at least the number"
+					+ " of headphones to return and at most the number of headphones in the store.");
+		}
+		double[] optimal = calculateOptimal(base, freqDiff);
+		int numMF = MEASURED_FREQUENCIES.length;
+		long[] optimalUnits = new long[numMF];
+		for (int i = 0; i < numMF; i++) {
+			optimalUnits[i] = Math.round(optimal[i] * CompactCurveStore.UNITS_PER_DB);
+		}
+		// First pass: n * sum(d^2) - sum(d)^2 is n^2 times the squared difference after offsetting
+		// the curves to the same average, so it ranks the same way without any division.
+		short[] curves = store.getCurves();
+		TopK candidates = new TopK(rerankAmt);
+		for (int index = 0; index < store.size(); index++) {
+			if (base != null && store.matches(index, base))
+				continue;
+			int offset = index * numMF;
+			long sum = 0;
+			long sumSquares = 0;
+			for (int i = 0; i < numMF; i++) {
+				long difference = optimalUnits[i] - curves[offset + i];
+				sum += difference;
+				sumSquares += difference * difference;
+			}
+			candidates.offer(numMF * sumSquares - sum * sum, index);
+		}
+		// Second pass: rerank the candidates with the same math as a CurveStore.
+		double[] optimalF = center(optimal);
+		double[] centered = new double[numMF];
+		TopK closest = new TopK(returnAmt);
+		for (int index : candidates.drainKeys()) {
+			int offset = index * numMF;
+			double mean = 0;
+			for (int i = 0; i < numMF; i++) {
+				centered[i] = curves[offset + i] / (double) CompactCurveStore.UNITS_PER_DB;
+				mean += centered[i];
+			}
+			mean /= numMF;
+			for (int i = 0; i < numMF; i++) {
+				centered[i] -= mean;
+			}
+			closest.offer(calculateSquaredDifference(optimalF, centered, 0, closest.worstScore()), index);
+		}
+		Headphone[] closestHeadphones = new Headphone[returnAmt];
+		int[] keys = closest.drainKeys();
+		for (int i = 0; i < keys.length; i++) {
+			closestHeadphones[i] = store.get(keys[i]);
+		}
+		return closestHeadphones;
+	}
+
+	/**
+	 * Returns an array of Headphones that most closely match the given parameters from a mapped catalog.
+	 * Curves are compared where they are in the mapped file, and headphone objects are only created
+	 * for the headphones returned. Returns the same headphones as analyze(base, freqDiff, returnAmt,
+	 * compareList) for a list containing the same headphones in the same order.
+	 * @param base Base headphone to compare to.
+	 * @param freqDiff Array of dB differences for each of the measured frequencies.
+	 * @param returnAmt Number of headphones to return.
+	 * @param catalog Mapped catalog of headphones to compare to.
+	 * @param type Type of headphones to compare to, or null to compare to every type.
+	 * @return an array of Headphones that most closely match the given parameters.
+	 */
+	public static Headphone[] analyze(Headphone base, double[] freqDiff, int returnAmt, MappedCatalog catalog,
+			String type) {
+		// Error checking, against only the headphones of the type if there is one.
+		checkArguments(freqDiff, returnAmt, type == null ? catalog.size() : catalog.count(type));
+		double[] optimalF = calculateCenteredOptimal(base, freqDiff);
+		// Compare string table ids instead of decoding the strings of every headphone.
+		// A type that isn't in the table has the missing id, which no headphone has.
+		int baseNameId = base == null ? MappedCatalog.MISSING_ID : catalog.getStringId(base.getName());
+		int baseTypeId = base == null ? MappedCatalog.MISSING_ID : catalog.getStringId(base.getType());
+		int typeId = type == null ? MappedCatalog.MISSING_ID : catalog.getStringId(type);
+		// Read through a duplicate, so concurrent analyses of the catalog don't move each other's position.
+		DoubleBuffer curves = catalog.getCurves().duplicate();
+		DoubleBuffer means = catalog.getMeans();
+		int numMF = MEASURED_FREQUENCIES.length;
+		double[] centered = new double[numMF];
+		TopK closest = new TopK(returnAmt);
+		for (int index = 0; index < catalog.size(); index++) {
+			int headphoneTypeId = catalog.getTypeId(index);
+			if (type != null && headphoneTypeId != typeId)
+				continue;
+			if (headphoneTypeId == baseTypeId && catalog.getNameId(index) == baseNameId)
+				continue;
+			// Center the values the same way a CurveStore does, so the kernel calculates the same totals.
+			((Buffer) curves).position(index * numMF);
+			curves.get(centered);
+			double mean = means.get(index);
+			for (int i = 0; i < numMF; i++) {
+				centered[i] -= mean;
+			}
+			closest.offer(calculateSquaredDifference(optimalF, centered, 0, closest.worstScore()), index);
+		}
+		Headphone[] closestHeadphones = new Headphone[returnAmt];
+		int[] keys = closest.drainKeys();
+		for (int i = 0; i < keys.length; i++) {
+			closestHeadphones[i] = catalog.get(keys[i]);
+		}
+		return closestHeadphones;
+	}
+
+	/**
+	 * Returns an array of Headphones that most closely match the given parameters,
+	 * splitting the list's store into partitions that are scanned in parallel.
+	 * Lists smaller than the parallel threshold are scanned on the calling thread.
+	 * Returns the same headphones as analyze(base, freqDiff, returnAmt, compareList).
+	 * @param base Base headphone to compare to.
+	 * @param freqDiff Array of dB differences for each of the measured frequencies.
+	 * @param returnAmt Number of headphones to return.
+	 * @param compareList List of headphones to compare to.
+	 * @return an array of Headphones that most closely match the given parameters.
+	 */
+	public static Headphone[] analyzeParallel(Headphone base, double[] freqDiff, int returnAmt,
+			HeadphoneList compareList) {
+		CurveStore store = compareList.getStore();
+		// Error checking.
+		checkArguments(freqDiff, returnAmt, store.size());
+		double[] optimalF = calculateCenteredOptimal(base, freqDiff);
+		int threshold = parallelThreshold;
+		TopK closest;
+		if (store.size() < threshold) {
+			closest = new TopK(returnAmt);
+			scan(base, optimalF, store, 0, store.size(), closest);
+		}
+		else {
+			closest = ForkJoinPool.commonPool().invoke(
+					new PartitionSearch(base, optimalF, store, 0, store.size(), returnAmt, threshold));
+		}
+		return toHeadphones(closest, store, returnAmt);
+	}
+
+	/**
+	 * Returns the headphones that most closely match each of the queries, in the same order
+	 * as the queries. The list's store is scanned once in blocks of curves, and each block
+	 * is compared to every query before moving on to the next, so each block is read
+	 * from memory once for the whole batch instead of once per query.
+	 * Returns the same headphones as calling analyze(base, freqDiff, returnAmt, compareList) for each query.
+	 * @param queries Queries to analyze.
+	 * @param compareList List of headphones to compare to.
+	 * @return the headphones that most closely match each of the queries.
+	 */
+	public static Headphone[][] analyzeBatch(List<Query> queries, HeadphoneList compareList) {
+		CurveStore store = compareList.getStore();
+		int numQueries = queries.size();
+		Headphone[] bases = new Headphone[numQueries];
+		double[][] optimalFs = new double[numQueries][];
+		TopK[] closest = new TopK[numQueries];
+		for (int q = 0; q < numQueries; q++) {
+			Query query = queries.get(q);
+			// Error checking.
+			checkArguments(query.getFreqDiff(), query.getReturnAmt(), store.size());
+			bases[q] = query.getBase();
+			optimalFs[q] = calculateCenteredOptimal(query.getBase(), query.getFreqDiff());
+			closest[q] = new TopK(query.getReturnAmt());
+		}
+		// Each heap sees its curves in store order either way, so the results match separate scans.
+		for (int from = 0; from < store.size(); from += BATCH_TILE_SIZE) {
+			int to = Math.min(from + BATCH_TILE_SIZE, store.size());
+			for (int q = 0; q < numQueries; q++) {
+				scan(bases[q], optimalFs[q], store, from, to, closest[q]);
+			}
+		}
+		Headphone[][] results = new Headphone[numQueries][];
+		for (int q = 0; q < numQueries; q++) {
+			results[q] = toHeadphones(closest[q], store, queries.get(q).getReturnAmt());
+		}
+		return results;
+	}
+
+	/**
+	 * Sets the number of headphones below which a parallel analysis is done on one thread.
+	 * It is also the smallest partition a parallel analysis splits the list into.
+	 * @param threshold Number of headphones below which a parallel analysis is done on one thread.
+	 */
+	public static void setParallelThreshold(int threshold) {
+		if (threshold < 1) {
+			throw new IllegalArgumentException("Parallel threshold must be positive.");
+		}
+		parallelThreshold = threshold;
+	}
+
+	/**
+	 * Returns the number of headphones below which a parallel analysis is done on one thread.
+	 * @return the number of headphones below which a parallel analysis is done on one thread.
+	 */
+	public static int getParallelThreshold() {
+		return parallelThreshold;
+	}
+
+	/**
+	 * Offers the squared difference of each headphone in a range of the store to the heap,
+	 * keyed by the headphone's index, skipping the base headphone.
+	 * @param base Base headphone to skip, or null.
+	 * @param optimalF Array of mean-centered optimal dB values.
+	 * @param store Store containing the headphones.
+	 * @param from Index of the first headphone to scan.
+	 * @param to Index after the last headphone to scan.
+	 * @param closest Heap of the closest headphones.
+	 */
+	static void scan(Headphone base, double[] optimalF, CurveStore store, int from, int to, TopK closest) {
+		double[] curves = store.getCenteredCurves();
+		int numMF = MEASURED_FREQUENCIES.length;
+		for (int index = from; index < to; index++) {
+			if (base != null && store.matches(index, base))
+				continue;
+			double totalSD = calculateSquaredDifference(optimalF, curves, index * numMF, closest.worstScore());
+			closest.offer(totalSD, index);
+		}
+	}
+
+	/**
+	 * Offers the squared difference of each of the given headphones in the store to the heap,
+	 * keyed by the headphone's index, skipping the base headphone.
+	 * @param base Base headphone to skip, or null.
+	 * @param optimalF Array of mean-centered optimal dB values.
+	 * @param store Store containing the headphones.
+	 * @param indexes Array containing the indexes of the headphones to scan.
+	 * @param count Number of indexes in the array to scan.
+	 * @param closest Heap of the closest headphones.
+	 */
+	static void scan(Headphone base, double[] optimalF, CurveStore store, int[] indexes, int count,
+			TopK closest) {
+		double[] curves = store.getCenteredCurves();
+		int numMF = MEASURED_FREQUENCIES.length;
+		for (int i = 0; i < count; i++) {
+			int index = indexes[i];
+			if (base != null && store.matches(index, base))
+				continue;
+			double totalSD = calculateSquaredDifference(optimalF, curves, index * numMF, closest.worstScore());
+			closest.offer(totalSD, index);
+		}
+	}
+
+	/**
+	 * Returns the headphones kept by the heap from closest to farthest,
+	 * in an array with room for returnAmt headphones.
+	 * @param closest Heap of the closest headphones, keyed by their index in the store.
+	 * @param store Store containing the headphones.
+	 * @param returnAmt Number of headphones to return.
+	 * @return the headphones kept by the heap from closest to farthest.
+	 */
+	static Headphone[] toHeadphones(TopK closest, CurveStore store, int returnAmt) {
+		Headphone[] closestHeadphones = new Headphone[returnAmt];
+		int[] keys = closest.drainKeys();
+		for (int i = 0; i < keys.length; i++) {
+			closestHeadphones[i] = store.get(keys[i]);
+		}
+		return closestHeadphones;
+	}
+
+	/**
+	 * Throws an exception if the arguments of an analysis are invalid.
+	 * @param freqDiff Array of dB differences for each of the measured frequencies.
+	 * @param returnAmt Number of headphones to return.
+	 * @param compareAmt Number of headphones to compare to.
+	 */
+	private static void checkArguments(double[] freqDiff, int returnAmt, int compareAmt) {
+		if (compareAmt < returnAmt) {
 			throw new IndexOutOfBoundsException("Number of headphones to return must be "
 					+ "less than the number of headphones in the list.");
 		}
@@ -32,47 +417,119 @@ public class Analyzer {
 			throw new IndexOutOfBoundsException("Length of the array of frequency differences must"
 					+ " match the total number of measured frequencies.");
 		}
-		// If a base headphone is given, set the array of optimal frequency values.
+	}
+
+	/**
+	 * Returns the optimal dB values for the given base headphone and differences,
+	 * minus their average so they can be compared directly to mean-centered curves.
+	 * @param base Base headphone to compare to, or null to use freqDiff as the optimal values.
+	 * @param freqDiff Array of dB differences for each of the measured frequencies.
+	 * @return the mean-centered optimal dB values for the given base headphone and differences.
+	 */
+	static double[] calculateCenteredOptimal(Headphone base, double[] freqDiff) {
+		return center(calculateOptimal(base, freqDiff));
+	}
+
+	/**
+	 * Returns the optimal dB values for the given base headphone and differences.
+	 * @param base Base headphone to compare to, or null to use freqDiff as the optimal values.
+	 * @param freqDiff Array of dB differences for each of the measured frequencies.
+	 * @return the optimal dB values for the given base headphone and differences.
+	 */
+	static double[] calculateOptimal(Headphone base, double[] freqDiff) {
 		int numMF = MEASURED_FREQUENCIES.length;
-		double[] hpF;
-		double[] optimalF;
+		double[] optimalF = new double[numMF];
+		// If a base headphone is given, set the array of optimal frequency values.
 		if (base != null) {
-			hpF = base.getDBVals();
-			optimalF = new double[numMF];
+			double[] hpF = base.getDBVals();
 			for (int i = 0; i < numMF; i++) {
 				optimalF[i] = hpF[i] + freqDiff[i];
 			}
 		}
 		else {
-			optimalF = freqDiff;
+			System.arraycopy(freqDiff, 0, optimalF, 0, numMF);
 		}
-		double optimalAve = calculateAverage(optimalF);
-		// Make an array to hold the total squared difference of dB values,
-		// and the corresponding array of headphones to return.
-		double[] lSDArr = new double[returnAmt];
-		Arrays.fill(lSDArr, -1);
-		Headphone[] closestHeadphones = new Headphone[returnAmt];
-		// Calculate the squared difference of each headphone in the hpList,
-		// updating the lSDArr and closestHeadphones array as necessary.
-		for (Headphone headphone : compareList) {
-			if (headphone.equals(base))
-				continue;
-			double totalSD = 0;
-			hpF = headphone.getDBVals();
-			double hpAve = calculateAverage(hpF);
-			double aveDiff = optimalAve - hpAve;
-			for (int i = 0; i < numMF; i++) {
-				double difference = optimalF[i] - hpF[i] - aveDiff;
-				totalSD += difference * difference;
-			}
-			for (int i = 0; i < lSDArr.length; i++) {
-				if (lSDArr[i] < 0 || totalSD < lSDArr[i]) {
-					insertHeadphone(i, totalSD, lSDArr, headphone, closestHeadphones);
-					break;
-				}
+		return optimalF;
+	}
+
+	/**
+	 * Returns a copy of the dB values minus their average.
+	 * @param values Array of dB values.
+	 * @return a copy of the dB values minus their average.
+	 */
+	static double[] center(double[] values) {
+		double[] centered = values.clone();
+		double average = calculateAverage(values);
+		for (int i = 0; i < centered.length; i++) {
+			centered[i] -= average;
+		}
+		return centered;
+	}
+
+	/**
+	 * Returns the total squared difference between the centered optimal values and a headphone's
+	 * centered values, which is the squared difference after offsetting the headphone's values
+	 * so both have the same average. Stops early and returns the partial total once it is
+	 * greater than the limit, since the headphone can't be one of the closest at that point.
+	 * @param optimalF Array of mean-centered optimal dB values.
+	 * @param centered Array containing the headphone's mean-centered dB values.
+	 * @param offset Index of the headphone's first dB value in centered.
+	 * @param limit Total to stop at, or positive infinity to calculate the whole total.
+	 * @return the total squared difference, or a partial total greater than the limit.
+	 */
+	static double calculateSquaredDifference(double[] optimalF, double[] centered, int offset, double limit) {
+		return KERNEL.squaredDifference(optimalF, centered, offset, limit);
+	}
+
+	/**
+	 * Returns the kind of kernel used to calculate squared differences.
+	 * @return the class name of the kernel used to calculate squared differences.
+	 */
+	public static String getKernelName() {
+		return KERNEL.getClass().getName();
+	}
+
+	/**
+	 * Returns the vectorized kernel if KERNEL_PROPERTY is "vector", the kernel was built, and the JDK's
+	 * Vector API is available, or the scalar kernel otherwise. The scalar kernel is the default since
+	 * every analysis returns exactly the same headphones as the original analyzer with it.
+	 * The vectorized kernel adds the differences in a different order, so its totals can differ from
+	 * the scalar kernel's by rounding, a relative difference of around 1e-15, and headphones that are
+	 * tied or that close can be returned in a different order.
+	 * @return the kernel to calculate squared differences with.
+	 */
+	private static DistanceKernel loadKernel() {
+		if ("vector".equals(System.getProperty(KERNEL_PROPERTY))) {
+			try {
+				DistanceKernel kernel = (DistanceKernel) Class.forName(VECTOR_KERNEL).getDeclaredConstructor()
+						.newInstance();
+				// Make sure the Vector API actually works before relying on it.
+				kernel.squaredDifference(new double[MEASURED_FREQUENCIES.length],
+						new double[MEASURED_FREQUENCIES.length], 0, Double.POSITIVE_INFINITY);
+				return kernel;
+			} catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+				// Not built, or the jdk.incubator.vector module isn't available.
 			}
 		}
-		return closestHeadphones;
+		return new ScalarKernel();
+	}
+
+	/**
+	 * Returns the total squared difference between two mean-centered curves.
+	 * @param centered Array containing the first curve's mean-centered dB values.
+	 * @param offset Index of the first curve's first dB value in centered.
+	 * @param otherCentered Array containing the second curve's mean-centered dB values.
+	 * @param otherOffset Index of the second curve's first dB value in otherCentered.
+	 * @return the total squared difference between the two curves.
+	 */
+	static double calculateSquaredDifference(double[] centered, int offset, double[] otherCentered,
+			int otherOffset) {
+		double totalSD = 0;
+		for (int i = 0; i < MEASURED_FREQUENCIES.length; i++) {
+			double difference = centered[offset + i] - otherCentered[otherOffset + i];
+			totalSD += difference * difference;
+		}
+		return totalSD;
 	}
 
 	/**
@@ -89,23 +546,4 @@ public class Analyzer {
 		return average;
 	}
 
-	/**
-	 * Inserts the given totalLSD and headphone at position index in
-	 * lSDArr and closestHeadphones respectively.
-	 * @param index Index to insert at.
-	 * @param totalSD Value to insert into lSDArr.
-	 * @param lSDArr Array of least squared difference values.
-	 * @param headphone Headphone to insert into closestHeadphones.
-	 * @param closestHeadphones Array of headphones with the least squared difference values.
-	 */
-	private static void insertHeadphone(int index, double totalSD, double[] lSDArr,
-			Headphone headphone, Headphone[] closestHeadphones) {
-		for (int i = lSDArr.length - 1; i > index; i--) {
-			lSDArr[i] = lSDArr[i - 1];
-			closestHeadphones[i] = closestHeadphones[i - 1];
-		}
-		lSDArr[index] = totalSD;
-		closestHeadphones[index] = headphone;
-	}
-
 }
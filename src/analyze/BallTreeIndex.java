@@ -0,0 +1,281 @@
+package analyze;
+
+import java.util.Arrays;
+
+import data.CurveStore;
+import data.Headphone;
+import util.HeadphoneList;
+
+/**
+ * Ball tree over the mean-centered curves of headphones, for finding exactly the same closest
+ * headphones as Analyzer.analyze without comparing to every one of them. Each node has a pivot
+ * curve and the distance from it to the farthest curve below it, so a search can skip any node
+ * whose curves are all farther away than the closest headphones found so far.
+ * Headphones can be inserted at any time without rebuilding the tree; a leaf that gets too
+ * big is split in two around the two curves in it that are farthest apart.
+ *
+ * @author Adam Luck
+ */
+public class BallTreeIndex {
+
+	/** Maximum number of curves in a leaf node before it is split. */
+	private static final int LEAF_SIZE = 16;
+	/** Relative slack added to distance bounds so rounding never prunes a node that should be visited. */
+	private static final double PRUNE_SLACK = 1e-9;
+
+	/** Store containing the indexed headphones, in the order they were inserted. */
+	private CurveStore store;
+	/** Root node of the tree, or null if the index is empty. */
+	private Node root;
+
+	/**
+	 * Constructor for an empty index.
+	 */
+	public BallTreeIndex() {
+		store = new CurveStore();
+	}
+
+	/**
+	 * Constructor that builds the index from the headphones in a list.
+	 * @param list List of headphones to index.
+	 */
+	public BallTreeIndex(HeadphoneList list) {
+		Headphone[] headphones = list.getAll();
+		store = new CurveStore(headphones.length);
+		for (Headphone headphone : headphones) {
+			insert(headphone);
+		}
+	}
+
+	/**
+	 * Adds a copy of a headphone to the index.
+	 * @param headphone Headphone to add.
+	 */
+	public void insert(Headphone headphone) {
+		int index = store.add(headphone);
+		if (root == null) {
+			root = new Node(index);
+			root.add(index);
+			return;
+		}
+		// Follow the closest pivots down to a leaf, growing each node's radius to cover the curve.
+		Node node = root;
+		double distance = distance(node.pivot, index);
+		while (true) {
+			node.radius = Math.max(node.radius, distance);
+			if (node.children == null)
+				break;
+			Node closest = null;
+			double closestDistance = Double.POSITIVE_INFINITY;
+			for (Node child : node.children) {
+				double childDistance = distance(child.pivot, index);
+				if (childDistance < closestDistance) {
+					closest = child;
+					closestDistance = childDistance;
+				}
+			}
+			node = closest;
+			distance = closestDistance;
+		}
+		node.add(index);
+		if (node.size > LEAF_SIZE) {
+			split(node);
+		}
+	}
+
+	/**
+	 * Returns an array of Headphones that most closely match the given parameters.
+	 * Returns the same headphones as Analyzer.analyze(base, freqDiff, returnAmt, list)
+	 * for a list containing the same headphones, including which of any tied headphones are returned.
+	 * @param base Base headphone to compare to.
+	 * @param freqDiff Array of dB differences for each of the measured frequencies.
+	 * @param returnAmt Number of headphones to return.
+	 * @return an array of Headphones that most closely match the given parameters.
+	 */
+	public Headphone[] search(Headphone base, double[] freqDiff, int returnAmt) {
+		// Error checking.
+		if (store.size() < returnAmt) {
+			throw new IndexOutOfBoundsException("Number of headphones to return must be "
+					+ "less than the number of headphones in the list.");
+		}
+		if (freqDiff.length != Analyzer.MEASURED_FREQUENCIES.length) {
+			throw new IndexOutOfBoundsException("Length of the array of frequency differences must"
+					+ " match the total number of measured frequencies.");
+		}
+		// Nothing can be kept, so don't walk the tree.
+		if (returnAmt == 0)
+			return new Headphone[0];
+		double[] optimalF = Analyzer.calculateCenteredOptimal(base, freqDiff);
+		// Break ties the way a sorted HeadphoneList does: by name and type, then by insertion order.
+		TopK closest = new TopK(returnAmt) {
+			@Override
+			boolean keyWorse(int key, int otherKey) {
+				int compare = store.get(key).compareTo(store.get(otherKey));
+				return compare != 0 ? compare > 0 : key > otherKey;
+			}
+		};
+		if (root != null) {
+			search(root, pivotDistance(optimalF, root), base, optimalF, closest);
+		}
+		return Analyzer.toHeadphones(closest, store, returnAmt);
+	}
+
+	/**
+	 * Returns the number of headphones in the index.
+	 * @return the number of headphones in the index.
+	 */
+	public int size() {
+		return store.size();
+	}
+
+	/**
+	 * Offers the curves below a node to the heap, skipping the children whose
+	 * curves are all too far away to be kept.
+	 * @param node Node to search.
+	 * @param distance Distance from the optimal curve to the node's pivot.
+	 * @param base Base headphone to skip, or null.
+	 * @param optimalF Array of mean-centered optimal dB values.
+	 * @param closest Heap of the closest headphones.
+	 */
+	private void search(Node node, double distance, Headphone base, double[] optimalF, TopK closest) {
+		if (distance - node.radius > bound(closest.worstScore()))
+			return;
+		if (node.children == null) {
+			Analyzer.scan(base, optimalF, store, node.entries, node.size, closest);
+			return;
+		}
+		// Visit the children from the closest pivot to the farthest, so the limit drops quickly.
+		int numChildren = node.children.length;
+		double[] distances = new double[numChildren];
+		for (int i = 0; i < numChildren; i++) {
+			distances[i] = pivotDistance(optimalF, node.children[i]);
+		}
+		boolean[] visited = new boolean[numChildren];
+		for (int visit = 0; visit < numChildren; visit++) {
+			int next = -1;
+			for (int i = 0; i < numChildren; i++) {
+				if (!visited[i] && (next < 0 || distances[i] < distances[next]))
+					next = i;
+			}
+			visited[next] = true;
+			search(node.children[next], distances[next], base, optimalF, closest);
+		}
+	}
+
+	/**
+	 * Turns a leaf into a node with two leaves, splitting its curves between the two curves
+	 * in it that are farthest apart.
+	 * @param leaf Leaf to split.
+	 */
+	private void split(Node leaf) {
+		int first = farthest(leaf, leaf.pivot);
+		int second = farthest(leaf, first);
+		Node firstChild = new Node(first);
+		Node secondChild = new Node(second);
+		for (int i = 0; i < leaf.size; i++) {
+			int index = leaf.entries[i];
+			double firstDistance = distance(first, index);
+			double secondDistance = distance(second, index);
+			Node child = firstDistance <= secondDistance ? firstChild : secondChild;
+			child.add(index);
+			child.radius = Math.max(child.radius, Math.min(firstDistance, secondDistance));
+		}
+		// Identical curves can't be split apart, so leave the leaf as it is.
+		if (firstChild.size == 0 || secondChild.size == 0)
+			return;
+		leaf.children = new Node[] {firstChild, secondChild};
+		leaf.entries = null;
+		leaf.size = 0;
+	}
+
+	/**
+	 * Returns the curve in a leaf that is farthest from the given curve.
+	 * @param leaf Leaf to search.
+	 * @param from Store index of the curve to measure from.
+	 * @return the store index of the curve in the leaf that is farthest from the given curve.
+	 */
+	private int farthest(Node leaf, int from) {
+		int farthest = leaf.entries[0];
+		double farthestDistance = -1;
+		for (int i = 0; i < leaf.size; i++) {
+			double distance = distance(from, leaf.entries[i]);
+			if (distance > farthestDistance) {
+				farthest = leaf.entries[i];
+				farthestDistance = distance;
+			}
+		}
+		return farthest;
+	}
+
+	/**
+	 * Returns the distance between two curves in the store.
+	 * @param index Store index of the first curve.
+	 * @param otherIndex Store index of the second curve.
+	 * @return the distance between the two curves.
+	 */
+	private double distance(int index, int otherIndex) {
+		double[] curves = store.getCenteredCurves();
+		return Math.sqrt(Analyzer.calculateSquaredDifference(curves, index * CurveStore.CURVE_LENGTH,
+				curves, otherIndex * CurveStore.CURVE_LENGTH));
+	}
+
+	/**
+	 * Returns the distance between the optimal curve and a node's pivot.
+	 * @param optimalF Array of mean-centered optimal dB values.
+	 * @param node Node to measure to.
+	 * @return the distance between the optimal curve and the node's pivot.
+	 */
+	private double pivotDistance(double[] optimalF, Node node) {
+		return Math.sqrt(Analyzer.calculateSquaredDifference(optimalF, store.getCenteredCurves(),
+				node.pivot * CurveStore.CURVE_LENGTH, Double.POSITIVE_INFINITY));
+	}
+
+	/**
+	 * Returns the distance a node's lower bound has to be greater than for the node to be skipped.
+	 * @param worstScore Worst squared difference currently kept.
+	 * @return the distance a node's lower bound has to be greater than for the node to be skipped.
+	 */
+	private static double bound(double worstScore) {
+		double distance = Math.sqrt(worstScore);
+		return distance + PRUNE_SLACK * (1 + distance);
+	}
+
+	/**
+	 * Node of the tree, which is either a leaf holding curves or has children.
+	 */
+	private static class Node {
+
+		/** Store index of the curve distances in the node are measured from. */
+		private final int pivot;
+		/** Distance from the pivot to the farthest curve below the node. */
+		private double radius;
+		/** Store indexes of the curves in the leaf, or null if the node has children. */
+		private int[] entries;
+		/** Number of curves in the leaf. */
+		private int size;
+		/** Children of the node, or null if it's a leaf. */
+		private Node[] children;
+
+		/**
+		 * Constructor for an empty leaf.
+		 * @param pivot Store index of the curve distances in the node are measured from.
+		 */
+		private Node(int pivot) {
+			this.pivot = pivot;
+			entries = new int[LEAF_SIZE + 1];
+		}
+
+		/**
+		 * Adds a curve to the leaf.
+		 * @param index Store index of the curve.
+		 */
+		private void add(int index) {
+			if (size >= entries.length) {
+				entries = Arrays.copyOf(entries, entries.length * 2);
+			}
+			entries[size++] = index;
+		}
+
+	}
+
+}
@@ -0,0 +1,82 @@
+package analyze;
+
+import data.CurveStore;
+
+/**
+ * Total squared difference between the curves over a band of frequencies, after offsetting
+ * them to the same average over that band. Frequencies outside the band are ignored completely.
+ *
+ * @author Adam Luck
+ */
+public class BandMetric implements DistanceMetric {
+
+	/** Index of the first measured frequency in the band. */
+	private final int from;
+	/** Index after the last measured frequency in the band. */
+	private final int to;
+
+	/**
+	 * Constructor for the metric.
+	 * @param minFrequency Lowest frequency in the band, in Hz.
+	 * @param maxFrequency Highest frequency in the band, in Hz.
+	 */
+	public BandMetric(int minFrequency, int maxFrequency) {
+		int[] frequencies = Analyzer.MEASURED_FREQUENCIES;
+		int start = 0;
+		while (start < frequencies.length && frequencies[start] < minFrequency) {
+			start++;
+		}
+		int end = start;
+		while (end < frequencies.length && frequencies[end] <= maxFrequency) {
+			end++;
+		}
+		if (start == end) {
+			throw new IllegalArgumentException("Band must contain at least one measured frequency.");
+		}
+		from = start;
+		to = end;
+	}
+
+	@Override
+	public double[] prepare(double[] optimal) {
+		double[] prepared = optimal.clone();
+		double average = average(prepared, 0);
+		for (int i = from; i < to; i++) {
+			prepared[i] -= average;
+		}
+		return prepared;
+	}
+
+	@Override
+	public double distance(double[] prepared, CurveStore store, int index, double limit) {
+		double[] curves = store.getCurves();
+		int offset = index * CurveStore.CURVE_LENGTH;
+		double average = average(curves, offset);
+		double total = 0;
+		for (int start = from; start < to; start += Analyzer.CHECK_INTERVAL) {
+			int end = Math.min(start + Analyzer.CHECK_INTERVAL, to);
+			for (int i = start; i < end; i++) {
+				double difference = prepared[i] - (curves[offset + i] - average);
+				total += difference * difference;
+			}
+			if (total > limit)
+				return total;
+		}
+		return total;
+	}
+
+	/**
+	 * Returns the average of a curve's dB values over the band.
+	 * @param values Array containing the curve's dB values.
+	 * @param offset Index of the curve's first dB value in values.
+	 * @return the average of the curve's dB values over the band.
+	 */
+	private double average(double[] values, int offset) {
+		double average = 0;
+		for (int i = from; i < to; i++) {
+			average += values[offset + i];
+		}
+		return average / (to - from);
+	}
+
+}
@@ -0,0 +1,23 @@
+package analyze;
+
+/**
+ * Inner loop of an analysis, which calculates the total squared difference between the centered
+ * optimal values and a headphone's centered values. Analyzer uses a scalar kernel unless a vectorized
+ * kernel is asked for, was built, and is supported by the JDK.
+ *
+ * @author Adam Luck
+ */
+public interface DistanceKernel {
+
+	/**
+	 * Returns the total squared difference between the centered optimal values and a headphone's
+	 * centered values. May stop early and return the partial total once it is greater than the limit.
+	 * @param optimalF Array of mean-centered optimal dB values.
+	 * @param centered Array containing the headphone's mean-centered dB values.
+	 * @param offset Index of the headphone's first dB value in centered.
+	 * @param limit Total to stop at, or positive infinity to calculate the whole total.
+	 * @return the total squared difference, or a partial total greater than the limit.
+	 */
+	double squaredDifference(double[] optimalF, double[] centered, int offset, double limit);
+
+}
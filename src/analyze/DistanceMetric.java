@@ -0,0 +1,33 @@
+package analyze;
+
+import data.CurveStore;
+
+/**
+ * Measure of how far a headphone's curve is from the optimal curve, where lower is closer.
+ * The optimal curve is prepared once per analysis, so distance only has to read the store's
+ * arrays and shouldn't allocate anything.
+ *
+ * @author Adam Luck
+ */
+public interface DistanceMetric {
+
+	/**
+	 * Returns the optimal dB values in the form distance expects, such as with their average subtracted.
+	 * @param optimal Array of optimal dB values for each of the measured frequencies. Must not be modified.
+	 * @return the prepared optimal dB values.
+	 */
+	double[] prepare(double[] optimal);
+
+	/**
+	 * Returns the distance between the optimal curve and the curve of a headphone in the store.
+	 * May stop early and return a partial distance once it is greater than the limit,
+	 * since the headphone can't be one of the closest at that point.
+	 * @param prepared Optimal dB values returned by prepare.
+	 * @param store Store containing the headphone.
+	 * @param index Index of the headphone in the store.
+	 * @param limit Distance to stop at, or positive infinity to calculate the whole distance.
+	 * @return the distance, or a partial distance greater than the limit.
+	 */
+	double distance(double[] prepared, CurveStore store, int index, double limit);
+
+}
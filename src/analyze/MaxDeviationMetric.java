@@ -0,0 +1,31 @@
+package analyze;
+
+import data.CurveStore;
+
+/**
+ * Largest absolute difference at any frequency between the curves after offsetting them
+ * to the same average, for finding headphones that never stray far from the optimal curve.
+ *
+ * @author Adam Luck
+ */
+public class MaxDeviationMetric implements DistanceMetric {
+
+	@Override
+	public double[] prepare(double[] optimal) {
+		return Analyzer.center(optimal);
+	}
+
+	@Override
+	public double distance(double[] prepared, CurveStore store, int index, double limit) {
+		double[] centered = store.getCenteredCurves();
+		int offset = index * CurveStore.CURVE_LENGTH;
+		double max = 0;
+		for (int i = 0; i < prepared.length; i++) {
+			max = Math.max(max, Math.abs(prepared[i] - centered[offset + i]));
+			if (max > limit)
+				return max;
+		}
+		return max;
+	}
+
+}
@@ -0,0 +1,73 @@
+package analyze;
+
+import java.util.concurrent.RecursiveTask;
+
+import data.CurveStore;
+import data.Headphone;
+
+/**
+ * Fork-join task that finds the closest headphones in a range of a store by splitting the range
+ * in half until it's smaller than the threshold, scanning each partition into its own heap,
+ * and merging the heaps. Since heaps break ties by index, the result doesn't depend on
+ * how the range was split or which partition finished first.
+ *
+ * @author Adam Luck
+ */
+class PartitionSearch extends RecursiveTask<TopK> {
+
+	/** Default serial version UID. */
+	private static final long serialVersionUID = 1L;
+
+	/** Base headphone to skip, or null. */
+	private final Headphone base;
+	/** Array of mean-centered optimal dB values. */
+	private final double[] optimalF;
+	/** Store containing the headphones. */
+	private final CurveStore store;
+	/** Index of the first headphone to scan. */
+	private final int from;
+	/** Index after the last headphone to scan. */
+	private final int to;
+	/** Number of headphones to keep. */
+	private final int returnAmt;
+	/** Size below which a range is scanned instead of split. */
+	private final int threshold;
+
+	/**
+	 * Constructor for the task.
+	 * @param base Base headphone to skip, or null.
+	 * @param optimalF Array of mean-centered optimal dB values.
+	 * @param store Store containing the headphones.
+	 * @param from Index of the first headphone to scan.
+	 * @param to Index after the last headphone to scan.
+	 * @param returnAmt Number of headphones to keep.
+	 * @param threshold Size below which a range is scanned instead of split.
+	 */
+	PartitionSearch(Headphone base, double[] optimalF, CurveStore store, int from, int to,
+			int returnAmt, int threshold) {
+		this.base = base;
+		this.optimalF = optimalF;
+		this.store = store;
+		this.from = from;
+		this.to = to;
+		this.returnAmt = returnAmt;
+		this.threshold = threshold;
+	}
+
+	@Override
+	protected TopK compute() {
+		if (to - from < threshold * 2) {
+			TopK closest = new TopK(returnAmt);
+			Analyzer.scan(base, optimalF, store, from, to, closest);
+			return closest;
+		}
+		int mid = (from + to) >>> 1;
+		PartitionSearch left = new PartitionSearch(base, optimalF, store, from, mid, returnAmt, threshold);
+		PartitionSearch right = new PartitionSearch(base, optimalF, store, mid, to, returnAmt, threshold);
+		left.fork();
+		TopK closest = right.compute();
+		closest.merge(left.join());
+		return closest;
+	}
+
+}
@@ -0,0 +1,56 @@
+package analyze;
+
+import data.Headphone;
+
+/**
+ * Parameters of one analysis: the base headphone, the dB differences from it,
+ * and the number of headphones to return.
+ *
+ * @author Adam Luck
+ */
+public class Query {
+
+	/** Base headphone to compare to, or null. */
+	private Headphone base;
+	/** Array of dB differences for each of the measured frequencies. */
+	private double[] freqDiff;
+	/** Number of headphones to return. */
+	private int returnAmt;
+
+	/**
+	 * Constructor for queries.
+	 * @param base Base headphone to compare to, or null to use freqDiff as the optimal values.
+	 * @param freqDiff Array of dB differences for each of the measured frequencies.
+	 * @param returnAmt Number of headphones to return.
+	 */
+	public Query(Headphone base, double[] freqDiff, int returnAmt) {
+		this.base = base;
+		this.freqDiff = freqDiff;
+		this.returnAmt = returnAmt;
+	}
+
+	/**
+	 * Returns the base headphone to compare to.
+	 * @return the base headphone to compare to, or null.
+	 */
+	public Headphone getBase() {
+		return base;
+	}
+
+	/**
+	 * Returns the array of dB differences for each of the measured frequencies.
+	 * @return the array of dB differences for each of the measured frequencies.
+	 */
+	public double[] getFreqDiff() {
+		return freqDiff;
+	}
+
+	/**
+	 * Returns the number of headphones to return.
+	 * @return the number of headphones to return.
+	 */
+	public int getReturnAmt() {
+		return returnAmt;
+	}
+
+}
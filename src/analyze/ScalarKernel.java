@@ -0,0 +1,27 @@
+package analyze;
+
+/**
+ * Distance kernel that adds up the squared differences one frequency at a time,
+ * checking the total against the limit after each decade of frequencies.
+ *
+ * @author Adam Luck
+ */
+class ScalarKernel implements DistanceKernel {
+
+	@Override
+	public double squaredDifference(double[] optimalF, double[] centered, int offset, double limit) {
+		double totalSD = 0;
+		// Check the limit after each decade of frequencies.
+		for (int start = 0; start < optimalF.length; start += Analyzer.CHECK_INTERVAL) {
+			int end = Math.min(start + Analyzer.CHECK_INTERVAL, optimalF.length);
+			for (int i = start; i < end; i++) {
+				double difference = optimalF[i] - centered[offset + i];
+				totalSD += difference * difference;
+			}
+			if (totalSD > limit)
+				return totalSD;
+		}
+		return totalSD;
+	}
+
+}
@@ -0,0 +1,24 @@
+package analyze;
+
+import data.CurveStore;
+
+/**
+ * Total squared difference between the curves after offsetting them to the same average,
+ * which is the distance Analyzer uses by default.
+ *
+ * @author Adam Luck
+ */
+public class SquaredDifferenceMetric implements DistanceMetric {
+
+	@Override
+	public double[] prepare(double[] optimal) {
+		return Analyzer.center(optimal);
+	}
+
+	@Override
+	public double distance(double[] prepared, CurveStore store, int index, double limit) {
+		return Analyzer.calculateSquaredDifference(prepared, store.getCenteredCurves(),
+				index * CurveStore.CURVE_LENGTH, limit);
+	}
+
+}
@@ -0,0 +1,150 @@
+package analyze;
+
+/**
+ * Keeps the K best scores offered to it, along with an int key for each, in a bounded max-heap
+ * on primitive arrays. Lower scores are better, and ties are broken by the lower key, so the
+ * kept keys only depend on what was offered and not on the order it was offered in.
+ * Subclasses can order the keys of tied scores differently by overriding keyWorse.
+ *
+ * @author Adam Luck
+ */
+class TopK {
+
+	/** Scores in the heap, with the worst kept score at index 0. */
+	private double[] scores;
+	/** Keys of the scores in the heap. */
+	private int[] keys;
+	/** Number of scores in the heap. */
+	private int size;
+
+	/**
+	 * Constructor for an empty heap.
+	 * @param capacity Number of scores to keep.
+	 */
+	TopK(int capacity) {
+		scores = new double[capacity];
+		keys = new int[capacity];
+		size = 0;
+	}
+
+	/**
+	 * Returns the score a new score has to be at most to be kept, which is positive
+	 * infinity until the heap is full. A score equal to it is only kept if its key is lower.
+	 * A heap with no capacity keeps nothing, so its worst score is negative infinity.
+	 * @return the worst score currently kept, positive infinity if the heap isn't full,
+	 * or negative infinity if the heap has no capacity.
+	 */
+	double worstScore() {
+		if (size < scores.length)
+			return Double.POSITIVE_INFINITY;
+		return size > 0 ? scores[0] : Double.NEGATIVE_INFINITY;
+	}
+
+	/**
+	 * Offers a score to the heap, keeping it if it's one of the best offered so far.
+	 * Does nothing if the heap has no capacity.
+	 * @param score Score to offer.
+	 * @param key Key of the score.
+	 */
+	void offer(double score, int key) {
+		if (size < scores.length) {
+			// Add the score to the end of the heap and sift it up.
+			int i = size++;
+			while (i > 0) {
+				int parent = (i - 1) / 2;
+				if (!worse(score, key, scores[parent], keys[parent]))
+					break;
+				scores[i] = scores[parent];
+				keys[i] = keys[parent];
+				i = parent;
+			}
+			scores[i] = score;
+			keys[i] = key;
+		}
+		else if (size > 0 && worse(scores[0], keys[0], score, key)) {
+			// Replace the worst score and sift the new one down.
+			siftDown(score, key, size);
+		}
+	}
+
+	/**
+	 * Offers all of the scores kept by another heap to this one.
+	 * @param other Heap to merge into this one.
+	 */
+	void merge(TopK other) {
+		for (int i = 0; i < other.size; i++) {
+			offer(other.scores[i], other.keys[i]);
+		}
+	}
+
+	/**
+	 * Returns the number of scores in the heap.
+	 * @return the number of scores in the heap.
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the keys of the kept scores from best to worst. Empties the heap.
+	 * @return the keys of the kept scores from best to worst.
+	 */
+	int[] drainKeys() {
+		int[] sorted = new int[size];
+		// Repeatedly move the worst score to the end of the heap.
+		while (size > 0) {
+			int last = --size;
+			sorted[last] = keys[0];
+			if (last > 0)
+				siftDown(scores[last], keys[last], last);
+		}
+		return sorted;
+	}
+
+	/**
+	 * Puts the given score at the root of the first heapSize entries and sifts it down.
+	 * @param score Score to put at the root.
+	 * @param key Key of the score.
+	 * @param heapSize Number of entries in the heap.
+	 */
+	private void siftDown(double score, int key, int heapSize) {
+		int i = 0;
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= heapSize)
+				break;
+			if (child + 1 < heapSize && worse(scores[child + 1], keys[child + 1], scores[child], keys[child]))
+				child++;
+			if (!worse(scores[child], keys[child], score, key))
+				break;
+			scores[i] = scores[child];
+			keys[i] = keys[child];
+			i = child;
+		}
+		scores[i] = score;
+		keys[i] = key;
+	}
+
+	/**
+	 * Returns whether the first score is worse than the second.
+	 * @param score Score to check.
+	 * @param key Key of the score to check.
+	 * @param otherScore Score to compare to.
+	 * @param otherKey Key of the score to compare to.
+	 * @return whether the first score is worse than the second.
+	 */
+	private boolean worse(double score, int key, double otherScore, int otherKey) {
+		return score > otherScore || (score == otherScore && keyWorse(key, otherKey));
+	}
+
+	/**
+	 * Returns whether a score with the first key is worse than an equal score with the second key.
+	 * @param key Key of the score to check.
+	 * @param otherKey Key of the score to compare to.
+	 * @return whether the first key loses a tie with the second key.
+	 */
+	boolean keyWorse(int key, int otherKey) {
+		return key > otherKey;
+	}
+
+}
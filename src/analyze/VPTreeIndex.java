@@ -0,0 +1,228 @@
+package analyze;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import data.CurveStore;
+import data.Headphone;
+import util.HeadphoneList;
+
+/**
+ * Vantage-point tree over the mean-centered curves of a headphone list, for finding the closest
+ * headphones without comparing to every one of them. Each node picks a vantage curve and splits
+ * the rest at the median distance from it, and a search visits the nodes closest to the optimal
+ * curve first. Limiting the number of curves a search checks trades recall for speed; with no
+ * limit the search returns the same headphones as Analyzer.analyze.
+ * The index reflects the list at the time it was built.
+ *
+ * @author Adam Luck
+ */
+public class VPTreeIndex {
+
+	/** Maximum number of curves in a leaf node. */
+	private static final int LEAF_SIZE = 8;
+	/** Relative slack added to distance bounds so rounding never prunes a node that should be visited. */
+	private static final double PRUNE_SLACK = 1e-9;
+	/** Seed for choosing vantage curves, so the same list always builds the same tree. */
+	private static final long SEED = 0x5EED;
+
+	/** Store containing the indexed headphones. */
+	private CurveStore store;
+	/** Store indexes of the curves, grouped by node. */
+	private int[] order;
+	/** Position in order of each node's vantage curve, or its first curve if it's a leaf. */
+	private int[] nodeFrom;
+	/** Position in order after each node's last curve. */
+	private int[] nodeTo;
+	/** Median distance from each node's vantage curve to its other curves. */
+	private double[] radius;
+	/** Child node with the curves within the radius, or -1 if the node is a leaf. */
+	private int[] inner;
+	/** Child node with the curves outside the radius, or -1 if the node is a leaf. */
+	private int[] outer;
+	/** Number of nodes in the tree. */
+	private int numNodes;
+
+	/**
+	 * Constructor that builds the index from the headphones in a list.
+	 * @param list List of headphones to index.
+	 */
+	public VPTreeIndex(HeadphoneList list) {
+		store = list.getStore();
+		int size = store.size();
+		order = new int[size];
+		for (int i = 0; i < size; i++) {
+			order[i] = i;
+		}
+		int capacity = Math.max(1, 2 * size / LEAF_SIZE + 1);
+		nodeFrom = new int[capacity];
+		nodeTo = new int[capacity];
+		radius = new double[capacity];
+		inner = new int[capacity];
+		outer = new int[capacity];
+		numNodes = 0;
+		build(0, size, new Random(SEED), new double[size]);
+	}
+
+	/**
+	 * Returns an array of Headphones that most closely match the given parameters,
+	 * checking every curve the tree can't rule out.
+	 * Returns the same headphones as Analyzer.analyze(base, freqDiff, returnAmt, list).
+	 * @param base Base headphone to compare to.
+	 * @param freqDiff Array of dB differences for each of the measured frequencies.
+	 * @param returnAmt Number of headphones to return.
+	 * @return an array of Headphones that most closely match the given parameters.
+	 */
+	public Headphone[] search(Headphone base, double[] freqDiff, int returnAmt) {
+		return search(base, freqDiff, returnAmt, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Returns an array of Headphones that approximately match the given parameters,
+	 * stopping once the given number of curves have been compared to the optimal curve.
+	 * Higher limits return more of the exact closest headphones at the cost of speed.
+	 * @param base Base headphone to compare to.
+	 * @param freqDiff Array of dB differences for each of the measured frequencies.
+	 * @param returnAmt Number of headphones to return.
+	 * @param maxChecks Maximum number of curves to compare to the optimal curve.
+	 * @return an array of Headphones that approximately match the given parameters.
+	 */
+	public Headphone[] search(Headphone base, double[] freqDiff, int returnAmt, int maxChecks) {
+		// Error checking.
+		if (store.size() < returnAmt) {
+			throw new IndexOutOfBoundsException("Number of headphones to return must be "
+					+ "less than the number of headphones in the list.");
+		}
+		if (freqDiff.length != Analyzer.MEASURED_FREQUENCIES.length) {
+			throw new IndexOutOfBoundsException("Length of the array of frequency differences must"
+					+ " match the total number of measured frequencies.");
+		}
+		if (maxChecks < 1) {
+			throw new IllegalArgumentException("Maximum number of checks must be positive.");
+		}
+		// Nothing can be kept, so don't walk the tree.
+		if (returnAmt == 0)
+			return new Headphone[0];
+		double[] optimalF = Analyzer.calculateCenteredOptimal(base, freqDiff);
+		double[] curves = store.getCenteredCurves();
+		int numMF = CurveStore.CURVE_LENGTH;
+		TopK closest = new TopK(returnAmt);
+		int checks = 0;
+		// Visit nodes in order of the lowest distance any of their curves could have.
+		PriorityQueue<double[]> queue = new PriorityQueue<double[]>(Comparator.comparingDouble(c -> c[0]));
+		if (numNodes > 0)
+			queue.add(new double[] {0, 0});
+		while (!queue.isEmpty() && checks < maxChecks) {
+			double[] candidate = queue.poll();
+			if (candidate[0] > bound(closest.worstScore()))
+				break;
+			int node = (int) candidate[1];
+			if (inner[node] < 0) {
+				// Check every curve in the leaf.
+				for (int i = nodeFrom[node]; i < nodeTo[node] && checks < maxChecks; i++) {
+					int index = order[i];
+					if (base != null && store.matches(index, base))
+						continue;
+					closest.offer(Analyzer.calculateSquaredDifference(optimalF, curves, index * numMF,
+							closest.worstScore()), index);
+					checks++;
+				}
+				continue;
+			}
+			// The vantage curve's full distance is needed to bound its children.
+			int vantage = order[nodeFrom[node]];
+			double squared = Analyzer.calculateSquaredDifference(optimalF, curves, vantage * numMF,
+					Double.POSITIVE_INFINITY);
+			if (base == null || !store.matches(vantage, base)) {
+				closest.offer(squared, vantage);
+				checks++;
+			}
+			double distance = Math.sqrt(squared);
+			queue.add(new double[] {Math.max(candidate[0], distance - radius[node]), inner[node]});
+			queue.add(new double[] {Math.max(candidate[0], radius[node] - distance), outer[node]});
+		}
+		return Analyzer.toHeadphones(closest, store, returnAmt);
+	}
+
+	/**
+	 * Returns the number of headphones in the index.
+	 * @return the number of headphones in the index.
+	 */
+	public int size() {
+		return store.size();
+	}
+
+	/**
+	 * Builds the node for the curves between the given positions in order,
+	 * along with all of the nodes below it.
+	 * @param from Position in order of the node's first curve.
+	 * @param to Position in order after the node's last curve.
+	 * @param random Random number generator for choosing vantage curves.
+	 * @param distances Array to hold the distance of each curve from the vantage curve, by store index.
+	 * @return the index of the node.
+	 */
+	private int build(int from, int to, Random random, double[] distances) {
+		int node = numNodes++;
+		if (node >= nodeFrom.length) {
+			int capacity = nodeFrom.length * 2;
+			nodeFrom = Arrays.copyOf(nodeFrom, capacity);
+			nodeTo = Arrays.copyOf(nodeTo, capacity);
+			radius = Arrays.copyOf(radius, capacity);
+			inner = Arrays.copyOf(inner, capacity);
+			outer = Arrays.copyOf(outer, capacity);
+		}
+		nodeFrom[node] = from;
+		nodeTo[node] = to;
+		inner[node] = -1;
+		outer[node] = -1;
+		if (to - from <= LEAF_SIZE)
+			return node;
+		// Move a random vantage curve to the front and sort the rest by their distance from it.
+		swap(from, from + random.nextInt(to - from));
+		double[] curves = store.getCenteredCurves();
+		int vantageOffset = order[from] * CurveStore.CURVE_LENGTH;
+		Integer[] rest = new Integer[to - from - 1];
+		for (int i = 0; i < rest.length; i++) {
+			int index = order[from + 1 + i];
+			rest[i] = index;
+			distances[index] = Math.sqrt(Analyzer.calculateSquaredDifference(curves, vantageOffset, curves,
+					index * CurveStore.CURVE_LENGTH));
+		}
+		Arrays.sort(rest, Comparator.comparingDouble(index -> distances[index]));
+		for (int i = 0; i < rest.length; i++) {
+			order[from + 1 + i] = rest[i];
+		}
+		// Split at the median, so the inner curves are at most the radius away and the outer at least.
+		int mid = (from + 1 + to) >>> 1;
+		radius[node] = distances[order[mid]];
+		int innerNode = build(from + 1, mid, random, distances);
+		int outerNode = build(mid, to, random, distances);
+		inner[node] = innerNode;
+		outer[node] = outerNode;
+		return node;
+	}
+
+	/**
+	 * Returns the distance a node's lower bound has to be greater than for the node to be skipped.
+	 * @param worstScore Worst squared difference currently kept.
+	 * @return the distance a node's lower bound has to be greater than for the node to be skipped.
+	 */
+	private static double bound(double worstScore) {
+		double distance = Math.sqrt(worstScore);
+		return distance + PRUNE_SLACK * (1 + distance);
+	}
+
+	/**
+	 * Swaps two positions in order.
+	 * @param i First position.
+	 * @param j Second position.
+	 */
+	private void swap(int i, int j) {
+		int temp = order[i];
+		order[i] = order[j];
+		order[j] = temp;
+	}
+
+}
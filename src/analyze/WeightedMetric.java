@@ -0,0 +1,84 @@
+package analyze;
+
+import data.CurveStore;
+
+/**
+ * Total squared difference between the curves after offsetting them to the same weighted average,
+ * with the squared difference at each frequency multiplied by that frequency's weight.
+ * Since the averages are weighted too, frequencies with no weight are ignored completely.
+ *
+ * @author Adam Luck
+ */
+public class WeightedMetric implements DistanceMetric {
+
+	/** Weight of each of the measured frequencies. */
+	private final double[] weights;
+	/** Total of the weights. */
+	private final double totalWeight;
+
+	/**
+	 * Constructor for the metric.
+	 * @param weights Weight of each of the measured frequencies.
+	 */
+	public WeightedMetric(double[] weights) {
+		if (weights.length != CurveStore.CURVE_LENGTH) {
+			throw new IndexOutOfBoundsException("Length of the array of weights must"
+					+ " match the total number of measured frequencies.");
+		}
+		double total = 0;
+		for (double weight : weights) {
+			if (!(weight >= 0) || Double.isInfinite(weight)) {
+				throw new IllegalArgumentException("Weights must be finite and not negative.");
+			}
+			total += weight;
+		}
+		if (total == 0) {
+			throw new IllegalArgumentException("At least one weight must be positive.");
+		}
+		this.weights = weights.clone();
+		this.totalWeight = total;
+	}
+
+	@Override
+	public double[] prepare(double[] optimal) {
+		double[] prepared = optimal.clone();
+		double average = average(prepared, 0);
+		for (int i = 0; i < prepared.length; i++) {
+			prepared[i] -= average;
+		}
+		return prepared;
+	}
+
+	@Override
+	public double distance(double[] prepared, CurveStore store, int index, double limit) {
+		double[] curves = store.getCurves();
+		int offset = index * CurveStore.CURVE_LENGTH;
+		double average = average(curves, offset);
+		double total = 0;
+		for (int start = 0; start < prepared.length; start += Analyzer.CHECK_INTERVAL) {
+			int end = Math.min(start + Analyzer.CHECK_INTERVAL, prepared.length);
+			for (int i = start; i < end; i++) {
+				double difference = prepared[i] - (curves[offset + i] - average);
+				total += weights[i] * difference * difference;
+			}
+			if (total > limit)
+				return total;
+		}
+		return total;
+	}
+
+	/**
+	 * Returns the weighted average of a curve's dB values.
+	 * @param values Array containing the curve's dB values.
+	 * @param offset Index of the curve's first dB value in values.
+	 * @return the weighted average of the curve's dB values.
+	 */
+	private double average(double[] values, int offset) {
+		double average = 0;
+		for (int i = 0; i < weights.length; i++) {
+			average += weights[i] * values[offset + i];
+		}
+		return average / totalWeight;
+	}
+
+}
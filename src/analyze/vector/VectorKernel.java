@@ -0,0 +1,41 @@
+package analyze.vector;
+
+import analyze.DistanceKernel;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Distance kernel that calculates the squared differences several frequencies at a time
+ * with the JDK's Vector API. Only built by the vector profile, and only used when the
+ * jdk.incubator.vector module is available at runtime.
+ * Curves are short enough that the whole total is always calculated instead of stopping early.
+ *
+ * @author Adam Luck
+ */
+public class VectorKernel implements DistanceKernel {
+
+	/** Widest vector shape the CPU supports. */
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	@Override
+	public double squaredDifference(double[] optimalF, double[] centered, int offset, double limit) {
+		int length = optimalF.length;
+		int bound = SPECIES.loopBound(length);
+		DoubleVector sums = DoubleVector.zero(SPECIES);
+		int i = 0;
+		for (; i < bound; i += SPECIES.length()) {
+			DoubleVector difference = DoubleVector.fromArray(SPECIES, optimalF, i)
+					.sub(DoubleVector.fromArray(SPECIES, centered, offset + i));
+			sums = difference.fma(difference, sums);
+		}
+		double totalSD = sums.reduceLanes(VectorOperators.ADD);
+		// Add the frequencies left over after the last full vector.
+		for (; i < length; i++) {
+			double difference = optimalF[i] - centered[offset + i];
+			totalSD += difference * difference;
+		}
+		return totalSD;
+	}
+
+}
@@ -0,0 +1,197 @@
+package data;
+
+import java.util.Arrays;
+
+/**
+ * Compact store of headphone information, which keeps each decibel value as a short number
+ * of hundredths of a decibel instead of a double. Measurements are parsed to the nearest 0.01 dB,
+ * so they are stored exactly in an eighth of the memory a CurveStore uses for its curves and
+ * mean-centered curves. Values that aren't a whole number of hundredths are rounded to the nearest one.
+ * Headphones in the store are only ever appended, so an index always refers to the same headphone.
+ *
+ * @author Adam Luck
+ */
+public class CompactCurveStore {
+
+	/** Number of decibel values in each curve. */
+	public static final int CURVE_LENGTH = CurveStore.CURVE_LENGTH;
+	/** Number of stored units in a decibel. */
+	public static final int UNITS_PER_DB = 100;
+	/** Initial store capacity. */
+	private static final int INIT_SIZE = 2;
+
+	/** Decibel values of every headphone in hundredths of a decibel, CURVE_LENGTH values per headphone. */
+	private short[] curves;
+	/** Names of the headphones. */
+	private String[] names;
+	/** Types of the headphones. */
+	private String[] types;
+	/** URLs of the headphones. */
+	private String[] urls;
+	/** Number of headphones in the store. */
+	private int size;
+
+	/**
+	 * Constructor for an empty store.
+	 */
+	public CompactCurveStore() {
+		this(INIT_SIZE);
+	}
+
+	/**
+	 * Constructor for an empty store with room for the given number of headphones.
+	 * @param capacity Number of headphones the store has room for before growing.
+	 */
+	public CompactCurveStore(int capacity) {
+		capacity = Math.max(capacity, 1);
+		curves = new short[capacity * CURVE_LENGTH];
+		names = new String[capacity];
+		types = new String[capacity];
+		urls = new String[capacity];
+		size = 0;
+	}
+
+	/**
+	 * Constructor for a store containing all of the headphones in another store, in the same order.
+	 * @param store Store to copy.
+	 */
+	public CompactCurveStore(CurveStore store) {
+		this(store.size());
+		for (int i = 0; i < store.size(); i++) {
+			add(store.getName(i), store.getType(i), store.getURL(i), store.getDBVals(i));
+		}
+	}
+
+	/**
+	 * Adds a headphone to the end of the store.
+	 * @param name Name of the headphone.
+	 * @param type Type of headphone.
+	 * @param url URL of headphone measurements.
+	 * @param dBVals Array of measured decibel values.
+	 * @return the index of the headphone in the store.
+	 */
+	public int add(String name, String type, String url, double[] dBVals) {
+		if (dBVals.length != CURVE_LENGTH) {
+			throw new IllegalArgumentException("Length of the array of decibel values must"
+					+ " match the total number of measured frequencies.");
+		}
+		// Check the whole curve before changing anything.
+		for (double dBVal : dBVals) {
+			long units = Math.round(dBVal * UNITS_PER_DB);
+			if (units < Short.MIN_VALUE || units > Short.MAX_VALUE) {
+				throw new IllegalArgumentException("Decibel value " + dBVal + " is too large to store compactly.");
+			}
+		}
+		if (size >= names.length) {
+			int capacity = names.length * 2;
+			curves = Arrays.copyOf(curves, capacity * CURVE_LENGTH);
+			names = Arrays.copyOf(names, capacity);
+			types = Arrays.copyOf(types, capacity);
+			urls = Arrays.copyOf(urls, capacity);
+		}
+		int offset = size * CURVE_LENGTH;
+		for (int i = 0; i < CURVE_LENGTH; i++) {
+			curves[offset + i] = (short) Math.round(dBVals[i] * UNITS_PER_DB);
+		}
+		names[size] = name;
+		types[size] = type;
+		urls[size] = url;
+		return size++;
+	}
+
+	/**
+	 * Returns a new headphone with the information of the headphone at the given index.
+	 * @param index Index of the headphone.
+	 * @return a new headphone with the information of the headphone at the given index.
+	 */
+	public Headphone get(int index) {
+		return new Headphone(getName(index), getType(index), getURL(index), getDBVals(index));
+	}
+
+	/**
+	 * Returns the name of the headphone at the given index.
+	 * @param index Index of the headphone.
+	 * @return the name of the headphone at the given index.
+	 */
+	public String getName(int index) {
+		checkIndex(index);
+		return names[index];
+	}
+
+	/**
+	 * Returns the type of the headphone at the given index.
+	 * @param index Index of the headphone.
+	 * @return the type of the headphone at the given index.
+	 */
+	public String getType(int index) {
+		checkIndex(index);
+		return types[index];
+	}
+
+	/**
+	 * Returns the URL of the measurements of the headphone at the given index.
+	 * @param index Index of the headphone.
+	 * @return the URL of the measurements of the headphone at the given index.
+	 */
+	public String getURL(int index) {
+		checkIndex(index);
+		return urls[index];
+	}
+
+	/**
+	 * Returns the decibel values of the headphone at the given index.
+	 * @param index Index of the headphone.
+	 * @return the decibel values of the headphone at the given index.
+	 */
+	public double[] getDBVals(int index) {
+		checkIndex(index);
+		double[] dBVals = new double[CURVE_LENGTH];
+		int offset = index * CURVE_LENGTH;
+		for (int i = 0; i < CURVE_LENGTH; i++) {
+			dBVals[i] = curves[offset + i] / (double) UNITS_PER_DB;
+		}
+		return dBVals;
+	}
+
+	/**
+	 * Returns the array holding the decibel values of every headphone in the store,
+	 * in hundredths of a decibel. The values of the headphone at index i start at i * CURVE_LENGTH.
+	 * The array is shared with the store and must not be modified.
+	 * @return the array holding the decibel values of every headphone in the store.
+	 */
+	public short[] getCurves() {
+		return curves;
+	}
+
+	/**
+	 * Returns whether the headphone at the given index has the same name and type as the given headphone.
+	 * @param index Index of the headphone.
+	 * @param headphone Headphone to compare to.
+	 * @return whether the headphone at the given index equals the given headphone.
+	 */
+	public boolean matches(int index, Headphone headphone) {
+		String name = names[index];
+		String type = types[index];
+		return (name == null ? headphone.getName() == null : name.equals(headphone.getName()))
+				&& (type == null ? headphone.getType() == null : type.equals(headphone.getType()));
+	}
+
+	/**
+	 * Returns the number of headphones in the store.
+	 * @return the number of headphones in the store.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Throws an exception if there is no headphone at the given index.
+	 * @param index Index to check.
+	 */
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("No headphone at index " + index + ".");
+		}
+	}
+
+}
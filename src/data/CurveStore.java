@@ -0,0 +1,270 @@
+package data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Columnar store of headphone information. The decibel values of every headphone are kept
+ * back to back in one array, with the names, types, and URLs in parallel arrays,
+ * so scanning every curve in the store reads memory sequentially.
+ * The average of each curve, and the curve with its average subtracted, are calculated
+ * once when the headphone is added, since every comparison between curves needs them.
+ * Headphones in the store are only ever appended, so an index always refers to the same headphone.
+ *
+ * @author Adam Luck
+ */
+public class CurveStore {
+
+	/** Number of decibel values in each curve. */
+	public static final int CURVE_LENGTH = Headphone.MEASURED_FREQUENCIES.length;
+	/** Initial store capacity. */
+	private static final int INIT_SIZE = 2;
+
+	/** Decibel values of every headphone, CURVE_LENGTH values per headphone. */
+	private double[] curves;
+	/** Decibel values of every headphone minus the headphone's average value. */
+	private double[] centered;
+	/** Average decibel value of each headphone. */
+	private double[] means;
+	/** Names of the headphones. */
+	private String[] names;
+	/** Index of each headphone's type in the types list. */
+	private byte[] typeIds;
+	/** URLs of the headphones. */
+	private String[] urls;
+	/**
+	 * Types of headphones in the store, starting with Headphone.HEADPHONE_TYPES.
+	 * Shared with every store that only has those types, and copied when another type is added.
+	 */
+	private List<String> types;
+	/** Number of headphones in the store. */
+	private int size;
+
+	/**
+	 * Constructor for an empty store.
+	 */
+	public CurveStore() {
+		this(INIT_SIZE);
+	}
+
+	/**
+	 * Constructor for an empty store with room for the given number of headphones.
+	 * @param capacity Number of headphones the store has room for before growing.
+	 */
+	public CurveStore(int capacity) {
+		capacity = Math.max(capacity, 1);
+		curves = new double[capacity * CURVE_LENGTH];
+		centered = new double[capacity * CURVE_LENGTH];
+		means = new double[capacity];
+		names = new String[capacity];
+		typeIds = new byte[capacity];
+		urls = new String[capacity];
+		types = Headphone.HEADPHONE_TYPES;
+		size = 0;
+	}
+
+	/**
+	 * Adds a headphone to the end of the store.
+	 * @param name Name of the headphone.
+	 * @param type Type of headphone.
+	 * @param url URL of headphone measurements.
+	 * @param dBVals Array of measured decibel values.
+	 * @return the index of the headphone in the store.
+	 */
+	public int add(String name, String type, String url, double[] dBVals) {
+		if (dBVals.length != CURVE_LENGTH) {
+			throw new IllegalArgumentException("Length of the array of decibel values must"
+					+ " match the total number of measured frequencies.");
+		}
+		int index = append(name, type, url);
+		System.arraycopy(dBVals, 0, curves, index * CURVE_LENGTH, CURVE_LENGTH);
+		center(index);
+		return index;
+	}
+
+	/**
+	 * Adds a copy of the given headphone to the end of the store.
+	 * @param headphone Headphone to add.
+	 * @return the index of the headphone in the store.
+	 */
+	public int add(Headphone headphone) {
+		return headphone.copyTo(this);
+	}
+
+	/**
+	 * Adds a copy of the headphone at the given index of another store to the end of this store,
+	 * copying its average and mean-centered values instead of calculating them again.
+	 * @param other Store containing the headphone.
+	 * @param otherIndex Index of the headphone in the other store.
+	 * @return the index of the headphone in this store.
+	 */
+	int copy(CurveStore other, int otherIndex) {
+		int index = append(other.names[otherIndex], other.getType(otherIndex), other.urls[otherIndex]);
+		System.arraycopy(other.curves, otherIndex * CURVE_LENGTH, curves, index * CURVE_LENGTH, CURVE_LENGTH);
+		System.arraycopy(other.centered, otherIndex * CURVE_LENGTH, centered, index * CURVE_LENGTH, CURVE_LENGTH);
+		means[index] = other.means[otherIndex];
+		return index;
+	}
+
+	/**
+	 * Returns a view of the headphone at the given index.
+	 * @param index Index of the headphone.
+	 * @return a view of the headphone at the given index.
+	 */
+	public Headphone get(int index) {
+		checkIndex(index);
+		return new Headphone(this, index);
+	}
+
+	/**
+	 * Returns the name of the headphone at the given index.
+	 * @param index Index of the headphone.
+	 * @return the name of the headphone at the given index.
+	 */
+	public String getName(int index) {
+		checkIndex(index);
+		return names[index];
+	}
+
+	/**
+	 * Returns the type of the headphone at the given index.
+	 * @param index Index of the headphone.
+	 * @return the type of the headphone at the given index.
+	 */
+	public String getType(int index) {
+		checkIndex(index);
+		return types.get(typeIds[index]);
+	}
+
+	/**
+	 * Returns the URL of the measurements of the headphone at the given index.
+	 * @param index Index of the headphone.
+	 * @return the URL of the measurements of the headphone at the given index.
+	 */
+	public String getURL(int index) {
+		checkIndex(index);
+		return urls[index];
+	}
+
+	/**
+	 * Returns a copy of the decibel values of the headphone at the given index.
+	 * @param index Index of the headphone.
+	 * @return a copy of the decibel values of the headphone at the given index.
+	 */
+	public double[] getDBVals(int index) {
+		checkIndex(index);
+		return Arrays.copyOfRange(curves, index * CURVE_LENGTH, (index + 1) * CURVE_LENGTH);
+	}
+
+	/**
+	 * Returns the array holding the decibel values of every headphone in the store.
+	 * The values of the headphone at index i start at i * CURVE_LENGTH.
+	 * The array is shared with the store and must not be modified.
+	 * @return the array holding the decibel values of every headphone in the store.
+	 */
+	public double[] getCurves() {
+		return curves;
+	}
+
+	/**
+	 * Returns the array holding the decibel values of every headphone in the store minus the
+	 * headphone's average value, laid out the same way as getCurves().
+	 * The array is shared with the store and must not be modified.
+	 * @return the array holding the mean-centered decibel values of every headphone in the store.
+	 */
+	public double[] getCenteredCurves() {
+		return centered;
+	}
+
+	/**
+	 * Returns the average decibel value of the headphone at the given index.
+	 * @param index Index of the headphone.
+	 * @return the average decibel value of the headphone at the given index.
+	 */
+	public double getMean(int index) {
+		checkIndex(index);
+		return means[index];
+	}
+
+	/**
+	 * Returns whether the headphone at the given index has the same name and type as the given headphone.
+	 * @param index Index of the headphone.
+	 * @param headphone Headphone to compare to.
+	 * @return whether the headphone at the given index equals the given headphone.
+	 */
+	public boolean matches(int index, Headphone headphone) {
+		String name = names[index];
+		String type = getType(index);
+		return (name == null ? headphone.getName() == null : name.equals(headphone.getName()))
+				&& (type == null ? headphone.getType() == null : type.equals(headphone.getType()));
+	}
+
+	/**
+	 * Returns the number of headphones in the store.
+	 * @return the number of headphones in the store.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Adds the name, type, and URL of a headphone to the end of the store, growing it if necessary.
+	 * @param name Name of the headphone.
+	 * @param type Type of headphone.
+	 * @param url URL of headphone measurements.
+	 * @return the index of the headphone in the store.
+	 */
+	private int append(String name, String type, String url) {
+		if (size >= names.length) {
+			int capacity = names.length * 2;
+			curves = Arrays.copyOf(curves, capacity * CURVE_LENGTH);
+			centered = Arrays.copyOf(centered, capacity * CURVE_LENGTH);
+			means = Arrays.copyOf(means, capacity);
+			names = Arrays.copyOf(names, capacity);
+			typeIds = Arrays.copyOf(typeIds, capacity);
+			urls = Arrays.copyOf(urls, capacity);
+		}
+		int typeId = types.indexOf(type);
+		if (typeId < 0) {
+			if (types.size() > Byte.MAX_VALUE)
+				throw new IllegalStateException("Too many types of headphones.");
+			if (types == Headphone.HEADPHONE_TYPES)
+				types = new ArrayList<String>(types);
+			types.add(type);
+			typeId = types.size() - 1;
+		}
+		names[size] = name;
+		typeIds[size] = (byte) typeId;
+		urls[size] = url;
+		return size++;
+	}
+
+	/**
+	 * Calculates the average and mean-centered values of the curve at the given index.
+	 * @param index Index of the curve.
+	 */
+	private void center(int index) {
+		int offset = index * CURVE_LENGTH;
+		double mean = 0;
+		for (int i = offset; i < offset + CURVE_LENGTH; i++) {
+			mean += curves[i];
+		}
+		mean /= CURVE_LENGTH;
+		for (int i = offset; i < offset + CURVE_LENGTH; i++) {
+			centered[i] = curves[i] - mean;
+		}
+		means[index] = mean;
+	}
+
+	/**
+	 * Throws an exception if there is no headphone at the given index.
+	 * @param index Index to check.
+	 */
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("No headphone at index " + index + ".");
+		}
+	}
+
+}
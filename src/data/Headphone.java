@@ -7,19 +7,28 @@ import java.util.List;
  * Object containing information about a headphone.
  * Includes name, type, associated image, and an
  * array of values corresponding to frequency values (20-10k).
+ * The information itself is kept in a CurveStore; a headphone is a view of one entry in it.
+ * A standalone headphone, made with the public constructor, keeps its own information instead,
+ * and only makes a store for itself if one is asked for.
  * 
  * @author Adam Luck
  */
 public class Headphone implements Comparable<Headphone> {
 
-	/** Name of the headphone. */
-	private String name;
-	/** Type of headphone. */
-	private String type;
-	/** URL of headphone measurements. */
-	private String url;
-	/** Array of this headphone's decibel values at selected frequencies. */
-	private double[] dBVals;
+	/** Store containing this headphone's information, or null if it's standalone. */
+	private final CurveStore store;
+	/** Index of this headphone in the store. */
+	private final int index;
+	/** Name of a standalone headphone. */
+	private final String name;
+	/** Type of a standalone headphone. */
+	private final String type;
+	/** URL of a standalone headphone's measurements. */
+	private final String url;
+	/** Decibel values of a standalone headphone. */
+	private final double[] dBVals;
+	/** Store made for a standalone headphone by getStore, or null if one hasn't been asked for. */
+	private CurveStore ownStore;
 	/** Array of types of headphones. */
 	public static final List<String> HEADPHONE_TYPES = Arrays.asList(
 			"Full-Size Open", "Full-Size Sealed", "Earpad Open", "Earpad Sealed",
@@ -40,10 +49,30 @@ public class Headphone implements Comparable<Headphone> {
 	 * @param dBVals Array of measured decibel values.
 	 */
 	public Headphone(String name, String type, String url, double[] dBVals) {
+		if (dBVals.length != CurveStore.CURVE_LENGTH) {
+			throw new IllegalArgumentException("Length of the array of decibel values must"
+					+ " match the total number of measured frequencies.");
+		}
+		this.store = null;
+		this.index = 0;
 		this.name = name;
 		this.type = type;
 		this.url = url;
-		this.dBVals = dBVals;
+		this.dBVals = dBVals.clone();
+	}
+	
+	/**
+	 * Constructor for a view of a headphone in a store.
+	 * @param store Store containing the headphone's information.
+	 * @param index Index of the headphone in the store.
+	 */
+	Headphone(CurveStore store, int index) {
+		this.store = store;
+		this.index = index;
+		this.name = null;
+		this.type = null;
+		this.url = null;
+		this.dBVals = null;
 	}
 	
 	/**
@@ -51,7 +80,7 @@ public class Headphone implements Comparable<Headphone> {
 	 * @return the name of this headphone.
 	 */
 	public String getName() {
-		return name;
+		return store == null ? name : store.getName(index);
 	}
 
 	/**
@@ -59,7 +88,7 @@ public class Headphone implements Comparable<Headphone> {
 	 * @return the type of this headphone.
 	 */
 	public String getType() {
-		return type;
+		return store == null ? type : store.getType(index);
 	}
 
 	/**
@@ -67,15 +96,52 @@ public class Headphone implements Comparable<Headphone> {
 	 * @return the URL of this headphone's measurements.
 	 */
 	public String getURL() {
-		return url;
+		return store == null ? url : store.getURL(index);
 	}
 	
 	/**
-	 * Returns this headphone's decibel values.
-	 * @return this headphone's decibel values.
+	 * Returns a copy of this headphone's decibel values.
+	 * @return a copy of this headphone's decibel values.
 	 */
 	public double[] getDBVals() {
-		return dBVals;
+		return store == null ? dBVals.clone() : store.getDBVals(index);
+	}
+	
+	/**
+	 * Returns the store containing this headphone's information.
+	 * A standalone headphone makes a store of its own the first time it's asked for.
+	 * @return the store containing this headphone's information.
+	 */
+	public CurveStore getStore() {
+		if (store != null)
+			return store;
+		synchronized (this) {
+			if (ownStore == null) {
+				CurveStore newStore = new CurveStore(1);
+				newStore.add(name, type, url, dBVals);
+				ownStore = newStore;
+			}
+			return ownStore;
+		}
+	}
+
+	/**
+	 * Adds a copy of this headphone to the end of the given store, without making a store for a standalone headphone.
+	 * @param target Store to add the copy to.
+	 * @return the index of the copy in the store.
+	 */
+	int copyTo(CurveStore target) {
+		if (store == null)
+			return target.add(name, type, url, dBVals);
+		return target.copy(store, index);
+	}
+	
+	/**
+	 * Returns the index of this headphone in its store.
+	 * @return the index of this headphone in its store.
+	 */
+	public int getIndex() {
+		return index;
 	}
 
 	/**
@@ -84,6 +150,8 @@ public class Headphone implements Comparable<Headphone> {
 	 */
 	@Override
 	public int hashCode() {
+		String name = getName();
+		String type = getType();
 		final int prime = 31;
 		int result = 1;
 		result = prime * result + ((name == null) ? 0 : name.hashCode());
@@ -105,17 +173,12 @@ public class Headphone implements Comparable<Headphone> {
 		if (getClass() != obj.getClass())
 			return false;
 		Headphone other = (Headphone) obj;
-		if (name == null) {
-			if (other.name != null)
-				return false;
-		} else if (!name.equals(other.name))
-			return false;
-		if (type == null) {
-			if (other.type != null)
-				return false;
-		} else if (!type.equals(other.type))
-			return false;
-		return true;
+		if (store != null)
+			return store.matches(index, other);
+		String otherName = other.getName();
+		String otherType = other.getType();
+		return (name == null ? otherName == null : name.equals(otherName))
+				&& (type == null ? otherType == null : type.equals(otherType));
 	}
 
 	/**
@@ -127,7 +190,9 @@ public class Headphone implements Comparable<Headphone> {
 	 */
 	@Override
 	public int compareTo(Headphone other) {
-		return name.compareTo(other.name) != 0 ? name.compareTo(other.name) : type.compareTo(other.type);
+		String name = getName();
+		String otherName = other.getName();
+		return name.compareTo(otherName) != 0 ? name.compareTo(otherName) : getType().compareTo(other.getType());
 	}
 	
 }
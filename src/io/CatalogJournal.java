@@ -0,0 +1,271 @@
+package io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import data.CurveStore;
+import data.Headphone;
+import util.HeadphoneList;
+
+/**
+ * Append-only journal of headphones added since the catalog snapshot was last written, so saving
+ * new headphones only writes the new headphones. Each save appends one batch of records and syncs
+ * the file once. Each record is its length, the CRC-32 of its contents, and its contents, so a record
+ * torn by a crash is detected and dropped when the journal is replayed. Compaction writes a new
+ * snapshot containing everything and then drops the journal records it covers.
+ * There is one journal per file, so only one compaction of a file runs at a time, even if the
+ * catalog is loaded again while a compaction from the last load is running.
+ *
+ * @author Adam Luck
+ */
+public class CatalogJournal {
+
+	/** Size in bytes of the length and CRC-32 before each record's contents. */
+	private static final int RECORD_HEADER_SIZE = 8;
+	/** Largest valid record contents in bytes. */
+	private static final int MAX_RECORD_SIZE = 1 << 20;
+	/** Map of the absolute paths of journal files to their journals. */
+	private static final Map<Path, CatalogJournal> journals = new HashMap<Path, CatalogJournal>();
+
+	/** File the journal is stored in. */
+	private File file;
+	/** Number of records in the journal. */
+	private int size;
+	/** Thread doing the last compaction of the journal, or null if it has never been compacted. */
+	private Thread compaction;
+
+	/**
+	 * Constructor for the journal.
+	 * @param file File the journal is stored in.
+	 */
+	private CatalogJournal(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Returns the journal stored in the given file, which is the same journal every time it's asked for.
+	 * @param file File the journal is stored in.
+	 * @return the journal stored in the file.
+	 */
+	public static synchronized CatalogJournal open(File file) {
+		Path path = file.toPath().toAbsolutePath().normalize();
+		CatalogJournal journal = journals.get(path);
+		if (journal == null) {
+			journal = new CatalogJournal(path.toFile());
+			journals.put(path, journal);
+		}
+		return journal;
+	}
+
+	/**
+	 * Returns the headphones in the journal in the order they were appended. Anything after the
+	 * last complete, intact record was left by a crash during an append, and is cut off the file.
+	 * @return the headphones in the journal.
+	 * @throws IOException if the journal can't be read or truncated.
+	 */
+	public synchronized List<Headphone> replay() throws IOException {
+		List<Headphone> headphones = new ArrayList<Headphone>();
+		size = 0;
+		if (!file.exists())
+			return headphones;
+		byte[] journal = Files.readAllBytes(file.toPath());
+		ByteBuffer buffer = ByteBuffer.wrap(journal);
+		int valid = 0;
+		while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+			int length = buffer.getInt();
+			long crc = buffer.getInt() & 0xFFFFFFFFL;
+			if (length < 0 || length > MAX_RECORD_SIZE || length > buffer.remaining())
+				break;
+			CRC32 check = new CRC32();
+			check.update(journal, buffer.position(), length);
+			if (check.getValue() != crc)
+				break;
+			headphones.add(decode(journal, buffer.position(), length));
+			// Positions are set through Buffer so the class also runs on Java 8.
+			((Buffer) buffer).position(buffer.position() + length);
+			valid = buffer.position();
+			size++;
+		}
+		if (valid < journal.length) {
+			System.err.println("Dropping incomplete records at the end of the catalog journal.");
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+				channel.truncate(valid);
+				channel.force(true);
+			}
+		}
+		return headphones;
+	}
+
+	/**
+	 * Appends the headphones to the journal and syncs it to disk once for the whole batch.
+	 * @param headphones Headphones to append.
+	 * @throws IOException if the headphones can't be written.
+	 */
+	public synchronized void append(List<Headphone> headphones) throws IOException {
+		if (headphones.isEmpty())
+			return;
+		ByteArrayOutputStream batch = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(batch);
+		for (Headphone headphone : headphones) {
+			byte[] record = encode(headphone);
+			CRC32 crc = new CRC32();
+			crc.update(record);
+			out.writeInt(record.length);
+			out.writeInt((int) crc.getValue());
+			out.write(record);
+		}
+		out.flush();
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+			ByteBuffer buffer = ByteBuffer.wrap(batch.toByteArray());
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			channel.force(false);
+		}
+		size += headphones.size();
+	}
+
+	/**
+	 * Starts writing a snapshot of the lists in the background, and drops the journal records
+	 * the snapshot covers once it has been written. The lists are copied before this returns,
+	 * so they can keep changing while the snapshot is written. The thread isn't a daemon,
+	 * so the program doesn't exit until compaction is finished. If the snapshot can't be written,
+	 * for example because its previous generation is still mapped on Windows, the journal is kept
+	 * as it was, so nothing is lost and the next compaction tries again.
+	 * Nothing is started if a compaction of the journal is still running, since the records it doesn't
+	 * cover are left for the next one; the running compaction's thread is returned instead.
+	 * @param snapshot File to write the snapshot to.
+	 * @param lists Lists of every headphone in the catalog, including the ones in the journal.
+	 * @return the thread doing the compaction.
+	 */
+	public synchronized Thread compact(File snapshot, List<HeadphoneList> lists) {
+		if (compaction != null && compaction.isAlive())
+			return compaction;
+		final List<HeadphoneList> copies = new ArrayList<HeadphoneList>();
+		for (HeadphoneList list : lists) {
+			HeadphoneList copy = new HeadphoneList(list.getType());
+			copy.addAll(Arrays.asList(list.getAll()));
+			copies.add(copy);
+		}
+		final long covered = file.length();
+		final int coveredRecords = size;
+		compaction = new Thread(() -> {
+			try {
+				CatalogSnapshot.write(snapshot, copies);
+				discard(covered, coveredRecords);
+			} catch (IOException e) {
+				System.err.println("Error compacting catalog journal.");
+				System.err.println(e.getMessage());
+			}
+		}, "catalog-compaction");
+		compaction.start();
+		return compaction;
+	}
+
+	/**
+	 * Returns the number of records in the journal.
+	 * @return the number of records in the journal.
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Drops the given number of bytes from the start of the journal, keeping any records appended after them.
+	 * @param length Number of bytes to drop.
+	 * @param records Number of records in those bytes.
+	 * @throws IOException if the journal can't be rewritten.
+	 */
+	private synchronized void discard(long length, int records) throws IOException {
+		if (!file.exists())
+			return;
+		if (file.length() == length) {
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+				channel.truncate(0);
+				channel.force(true);
+			}
+		}
+		else {
+			// Records were appended during compaction, so move them to a new journal.
+			File temp = new File(file.getPath() + ".tmp");
+			try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+					FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+							StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				long position = length;
+				while (position < in.size()) {
+					position += in.transferTo(position, in.size() - position, out);
+				}
+				out.force(true);
+			}
+			try {
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		size -= records;
+	}
+
+	/**
+	 * Returns the contents of a headphone's record.
+	 * @param headphone Headphone to encode.
+	 * @return the contents of the headphone's record.
+	 * @throws IOException if the headphone can't be encoded.
+	 */
+	private static byte[] encode(Headphone headphone) throws IOException {
+		ByteArrayOutputStream record = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(record);
+		for (String string : new String[] {headphone.getName(), headphone.getType(), headphone.getURL()}) {
+			out.writeBoolean(string != null);
+			if (string != null)
+				out.writeUTF(string);
+		}
+		for (double dBVal : headphone.getDBVals()) {
+			out.writeDouble(dBVal);
+		}
+		out.flush();
+		return record.toByteArray();
+	}
+
+	/**
+	 * Returns the headphone in a record.
+	 * @param journal Array containing the record.
+	 * @param offset Index of the record's contents in the array.
+	 * @param length Length of the record's contents.
+	 * @return the headphone in the record.
+	 * @throws IOException if the record isn't valid.
+	 */
+	private static Headphone decode(byte[] journal, int offset, int length) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(journal, offset, length));
+		String[] strings = new String[3];
+		for (int i = 0; i < strings.length; i++) {
+			strings[i] = in.readBoolean() ? in.readUTF() : null;
+		}
+		double[] dBVals = new double[CurveStore.CURVE_LENGTH];
+		for (int i = 0; i < dBVals.length; i++) {
+			dBVals[i] = in.readDouble();
+		}
+		return new Headphone(strings[0], strings[1], strings[2], dBVals);
+	}
+
+}
@@ -0,0 +1,423 @@
+package io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import data.CurveStore;
+import data.Headphone;
+import util.HeadphoneList;
+
+/**
+ * Reads and writes a binary snapshot of every headphone in the catalog, so the whole catalog
+ * can be loaded by reading one file instead of a text file per headphone, or mapped and read in place.
+ * <p>
+ * The snapshot is little-endian and made of a header, a record of three string table ids
+ * (name, type, and URL) per headphone, the decibel values of every headphone packed back to back,
+ * the average decibel value of every headphone, and a string table of length-prefixed UTF-8 strings.
+ * The header holds the magic number, format version, number of headphones, curve length,
+ * the offsets of the curve, average, and string sections, the file length, and a CRC-32
+ * of everything after the header.
+ *
+ * @author Adam Luck
+ */
+public class CatalogSnapshot {
+
+	/** Number identifying a catalog snapshot file ("HPCS"). */
+	public static final int MAGIC = 0x48504353;
+	/** Version of the snapshot format. */
+	public static final int VERSION = 1;
+	/** Byte order of the snapshot. */
+	public static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+	/** Size of the header in bytes. */
+	public static final int HEADER_SIZE = 56;
+	/** Size of each headphone's record in bytes. */
+	public static final int RECORD_SIZE = 12;
+	/** Position of the number of headphones in the header. */
+	public static final int COUNT_POSITION = 8;
+	/** Position of the curve length in the header. */
+	public static final int CURVE_LENGTH_POSITION = 12;
+	/** Position of the offset of the curve section in the header. */
+	public static final int CURVES_POSITION = 16;
+	/** Position of the offset of the average section in the header. */
+	public static final int MEANS_POSITION = 24;
+	/** Position of the offset of the string table in the header. */
+	public static final int STRINGS_POSITION = 32;
+	/** Position of the file length in the header. */
+	public static final int LENGTH_POSITION = 40;
+	/** Position of the CRC-32 of everything after the header in the header. */
+	public static final int CRC_POSITION = 48;
+	/** String table id written for strings that are null. */
+	public static final int NULL_ID = -1;
+	/** Suffix of the file the previous generation of a snapshot is kept in. */
+	public static final String PREVIOUS_SUFFIX = ".prev";
+	/** Suffix a snapshot that isn't valid is renamed with when the previous generation is loaded instead. */
+	public static final String CORRUPT_SUFFIX = ".corrupt";
+
+	/**
+	 * Writes every headphone in the lists to the snapshot file. The snapshot is written to
+	 * a temporary file first and then moved into place, so a crash never leaves a partial snapshot.
+	 * The old snapshot is kept as the previous generation, which loadLatest falls back to.
+	 * The old snapshot is renamed rather than replaced, which works even if it is still mapped,
+	 * but if the previous generation is itself still mapped on a system that doesn't allow replacing
+	 * mapped files, like Windows, the write fails and leaves both generations as they were.
+	 * @param file File to write the snapshot to.
+	 * @param lists Lists of headphones to write.
+	 * @throws IOException if the snapshot can't be written.
+	 */
+	public static void write(File file, List<HeadphoneList> lists) throws IOException {
+		// Give each distinct string an id in the string table.
+		Map<String, Integer> ids = new HashMap<String, Integer>();
+		int count = 0;
+		int stringBytes = 4;
+		for (HeadphoneList list : lists) {
+			for (Headphone headphone : list.getAll()) {
+				for (String string : new String[] {headphone.getName(), headphone.getType(), headphone.getURL()}) {
+					if (string != null && !ids.containsKey(string)) {
+						ids.put(string, ids.size());
+						stringBytes += 4 + string.getBytes(StandardCharsets.UTF_8).length;
+					}
+				}
+				count++;
+			}
+		}
+		int curveLength = CurveStore.CURVE_LENGTH;
+		long curvesOffset = align(HEADER_SIZE + (long) count * RECORD_SIZE);
+		long meansOffset = curvesOffset + (long) count * curveLength * 8;
+		long stringsOffset = meansOffset + (long) count * 8;
+		long length = stringsOffset + stringBytes;
+		if (length > Integer.MAX_VALUE) {
+			throw new IOException("Catalog is too large for a snapshot.");
+		}
+		ByteBuffer buffer = ByteBuffer.allocate((int) length).order(ORDER);
+		// Write the records, curves, and averages.
+		int index = 0;
+		for (HeadphoneList list : lists) {
+			for (Headphone headphone : list.getAll()) {
+				// Positions are set through Buffer so the class also runs on Java 8.
+				((Buffer) buffer).position(HEADER_SIZE + index * RECORD_SIZE);
+				buffer.putInt(id(ids, headphone.getName()));
+				buffer.putInt(id(ids, headphone.getType()));
+				buffer.putInt(id(ids, headphone.getURL()));
+				((Buffer) buffer).position((int) curvesOffset + index * curveLength * 8);
+				for (double dBVal : headphone.getDBVals()) {
+					buffer.putDouble(dBVal);
+				}
+				buffer.putDouble((int) meansOffset + index * 8, headphone.getStore().getMean(headphone.getIndex()));
+				index++;
+			}
+		}
+		// Write the string table in id order.
+		String[] strings = new String[ids.size()];
+		for (Map.Entry<String, Integer> entry : ids.entrySet()) {
+			strings[entry.getValue()] = entry.getKey();
+		}
+		((Buffer) buffer).position((int) stringsOffset);
+		buffer.putInt(strings.length);
+		for (String string : strings) {
+			byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+			buffer.putInt(bytes.length);
+			buffer.put(bytes);
+		}
+		// Write the header last, once the checksum is known.
+		buffer.putInt(0, MAGIC);
+		buffer.putInt(4, VERSION);
+		buffer.putInt(COUNT_POSITION, count);
+		buffer.putInt(CURVE_LENGTH_POSITION, curveLength);
+		buffer.putLong(CURVES_POSITION, curvesOffset);
+		buffer.putLong(MEANS_POSITION, meansOffset);
+		buffer.putLong(STRINGS_POSITION, stringsOffset);
+		buffer.putLong(LENGTH_POSITION, length);
+		buffer.putLong(CRC_POSITION, checksum(buffer));
+		((Buffer) buffer).clear();
+		// Write the snapshot to a temporary file and move it into place.
+		File temp = new File(file.getPath() + ".tmp");
+		try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			channel.force(true);
+		}
+		// Keep the old snapshot as the previous generation. Renaming works even while the old snapshot
+		// is mapped, where replacing it might not, so a mapped catalog never makes the write fail here.
+		if (file.exists()) {
+			try {
+				move(file, previous(file));
+			} catch (IOException e) {
+				Files.deleteIfExists(temp.toPath());
+				throw new IOException("Couldn't keep the previous catalog snapshot, which may still be mapped: "
+						+ e.getMessage(), e);
+			}
+		}
+		move(temp, file);
+	}
+
+	/**
+	 * Returns the file the previous generation of the given snapshot is kept in.
+	 * @param file Snapshot file.
+	 * @return the file the previous generation of the snapshot is kept in.
+	 */
+	public static File previous(File file) {
+		return new File(file.getPath() + PREVIOUS_SUFFIX);
+	}
+
+	/**
+	 * Loads the newest valid generation of the snapshot file. If the snapshot is missing or isn't valid,
+	 * the previous generation is loaded instead, and a snapshot that isn't valid is renamed with
+	 * CORRUPT_SUFFIX so it can be inspected and isn't kept as the previous generation by the next write.
+	 * Headphones added after the previous generation was written aren't in it, so a warning is printed
+	 * whenever it's loaded.
+	 * @param file Snapshot file to load.
+	 * @return a store containing every headphone in the newest valid generation of the snapshot.
+	 * @throws IOException if neither generation can be read and is valid.
+	 */
+	public static CurveStore loadLatest(File file) throws IOException {
+		IOException error = null;
+		if (file.exists()) {
+			try {
+				return load(file);
+			} catch (IOException e) {
+				error = e;
+			}
+		}
+		File previous = previous(file);
+		if (!previous.exists()) {
+			throw error != null ? error : new IOException("There is no catalog snapshot.");
+		}
+		CurveStore store;
+		try {
+			store = load(previous);
+		} catch (IOException e) {
+			throw new IOException("Neither catalog snapshot generation can be loaded: "
+					+ (error != null ? error.getMessage() : "the snapshot is missing") + " " + e.getMessage(), e);
+		}
+		if (error != null) {
+			System.err.println("Catalog snapshot is corrupt, loading the previous generation instead.");
+			System.err.println(error.getMessage());
+			try {
+				move(file, new File(file.getPath() + CORRUPT_SUFFIX));
+			} catch (IOException e) {
+				System.err.println("Couldn't rename the corrupt catalog snapshot: " + e.getMessage());
+			}
+		}
+		else {
+			System.err.println("Catalog snapshot is missing, loading the previous generation instead.");
+		}
+		System.err.println("Headphones saved after the previous generation was written aren't in it.");
+		return store;
+	}
+
+	/**
+	 * Loads every headphone in the snapshot file into a new store, in the order they were written.
+	 * @param file File to load the snapshot from.
+	 * @return a store containing every headphone in the snapshot.
+	 * @throws IOException if the snapshot can't be read or isn't valid.
+	 */
+	public static CurveStore load(File file) throws IOException {
+		ByteBuffer buffer = read(file);
+		int count = buffer.getInt(COUNT_POSITION);
+		int curveLength = buffer.getInt(CURVE_LENGTH_POSITION);
+		int curvesOffset = (int) buffer.getLong(CURVES_POSITION);
+		String[] strings = readStrings(buffer);
+		CurveStore store = new CurveStore(count);
+		double[] dBVals = new double[curveLength];
+		for (int i = 0; i < count; i++) {
+			int record = HEADER_SIZE + i * RECORD_SIZE;
+			String name = string(strings, buffer.getInt(record));
+			String type = string(strings, buffer.getInt(record + 4));
+			String url = string(strings, buffer.getInt(record + 8));
+			int curve = curvesOffset + i * curveLength * 8;
+			for (int j = 0; j < curveLength; j++) {
+				dBVals[j] = buffer.getDouble(curve + j * 8);
+			}
+			store.add(name, type, url, dBVals);
+		}
+		return store;
+	}
+
+	/**
+	 * Reads the snapshot file onto the heap and checks that it's a valid snapshot of the current version,
+	 * including its checksum. Unlike map, this leaves no mapping of the file open,
+	 * so the file can be replaced as soon as it returns.
+	 * @param file File to read.
+	 * @return a buffer of the whole snapshot.
+	 * @throws IOException if the snapshot can't be read or isn't valid.
+	 */
+	public static ByteBuffer read(File file) throws IOException {
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			checkLength(channel.size());
+			buffer = ByteBuffer.allocate((int) channel.size());
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer) < 0) {
+					throw new IOException("Catalog snapshot ended early.");
+				}
+			}
+		}
+		((Buffer) buffer).clear();
+		buffer.order(ORDER);
+		checkHeader(buffer);
+		verify(buffer);
+		return buffer;
+	}
+
+	/**
+	 * Maps the snapshot file into memory and checks that its header is valid for the current version
+	 * and matches the file's length. The checksum isn't checked, since that would read every page of the file
+	 * when only the pages that are used need to be; call verify to check it.
+	 * @param file File to map.
+	 * @return a read-only buffer of the whole snapshot.
+	 * @throws IOException if the snapshot can't be read or isn't valid.
+	 */
+	public static MappedByteBuffer map(File file) throws IOException {
+		MappedByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			checkLength(channel.size());
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		buffer.order(ORDER);
+		checkHeader(buffer);
+		return buffer;
+	}
+
+	/**
+	 * Reads the string table of a snapshot.
+	 * @param buffer Buffer containing the snapshot.
+	 * @return the strings in the table, indexed by id.
+	 */
+	public static String[] readStrings(ByteBuffer buffer) {
+		ByteBuffer strings = buffer.duplicate().order(ORDER);
+		((Buffer) strings).position((int) buffer.getLong(STRINGS_POSITION));
+		String[] table = new String[strings.getInt()];
+		for (int i = 0; i < table.length; i++) {
+			byte[] bytes = new byte[strings.getInt()];
+			strings.get(bytes);
+			table[i] = new String(bytes, StandardCharsets.UTF_8);
+		}
+		return table;
+	}
+
+	/**
+	 * Returns the string with the given id in the string table.
+	 * @param strings Strings in the table, indexed by id.
+	 * @param id Id of the string.
+	 * @return the string with the given id, or null if the id is the null id.
+	 */
+	public static String string(String[] strings, int id) {
+		return id == NULL_ID ? null : strings[id];
+	}
+
+	/**
+	 * Returns the string table id of a string.
+	 * @param ids Map of strings to their ids.
+	 * @param string String to get the id of.
+	 * @return the id of the string, or the null id if the string is null.
+	 */
+	private static int id(Map<String, Integer> ids, String string) {
+		return string == null ? NULL_ID : ids.get(string);
+	}
+
+	/**
+	 * Throws an exception if a file is too short or too long to be a snapshot.
+	 * @param length Length of the file.
+	 * @throws IOException if the file can't be a snapshot.
+	 */
+	private static void checkLength(long length) throws IOException {
+		if (length < HEADER_SIZE || length > Integer.MAX_VALUE) {
+			throw new IOException("Catalog snapshot has an invalid length.");
+		}
+	}
+
+	/**
+	 * Throws an exception if the checksum of a snapshot doesn't match the one in its header.
+	 * Reads the whole snapshot.
+	 * @param buffer Buffer containing the whole snapshot.
+	 * @throws IOException if the snapshot is corrupt.
+	 */
+	public static void verify(ByteBuffer buffer) throws IOException {
+		if (buffer.getLong(CRC_POSITION) != checksum(buffer)) {
+			throw new IOException("Catalog snapshot is corrupt.");
+		}
+	}
+
+	/**
+	 * Throws an exception if the header of a snapshot isn't valid for the current version,
+	 * or if the sections it describes don't fit in the snapshot.
+	 * @param buffer Buffer containing the whole snapshot.
+	 * @throws IOException if the header isn't valid.
+	 */
+	private static void checkHeader(ByteBuffer buffer) throws IOException {
+		if (buffer.getInt(0) != MAGIC) {
+			throw new IOException("File is not a catalog snapshot.");
+		}
+		if (buffer.getInt(4) != VERSION) {
+			throw new IOException("Catalog snapshot version " + buffer.getInt(4) + " is not supported.");
+		}
+		if (buffer.getInt(CURVE_LENGTH_POSITION) != CurveStore.CURVE_LENGTH) {
+			throw new IOException("Catalog snapshot has the wrong number of measured frequencies.");
+		}
+		long count = buffer.getInt(COUNT_POSITION);
+		long curvesOffset = buffer.getLong(CURVES_POSITION);
+		long meansOffset = buffer.getLong(MEANS_POSITION);
+		long stringsOffset = buffer.getLong(STRINGS_POSITION);
+		if (buffer.getLong(LENGTH_POSITION) != buffer.capacity() || count < 0
+				|| curvesOffset < HEADER_SIZE + count * RECORD_SIZE
+				|| meansOffset != curvesOffset + count * CurveStore.CURVE_LENGTH * 8
+				|| stringsOffset != meansOffset + count * 8 || stringsOffset + 4 > buffer.capacity()) {
+			throw new IOException("Catalog snapshot is corrupt.");
+		}
+	}
+
+	/**
+	 * Returns the CRC-32 of everything in the snapshot after the header.
+	 * @param buffer Buffer containing the snapshot.
+	 * @return the CRC-32 of everything after the header.
+	 */
+	private static long checksum(ByteBuffer buffer) {
+		ByteBuffer body = buffer.duplicate();
+		((Buffer) body).position(HEADER_SIZE);
+		((Buffer) body).limit(body.capacity());
+		CRC32 crc = new CRC32();
+		crc.update(body);
+		return crc.getValue();
+	}
+
+	/**
+	 * Returns the given offset rounded up to a multiple of 8 bytes, so doubles after it are aligned.
+	 * @param offset Offset to align.
+	 * @return the aligned offset.
+	 */
+	private static long align(long offset) {
+		return (offset + 7) & ~7L;
+	}
+
+	/**
+	 * Moves a file over another one, atomically if the file system supports it.
+	 * @param source File to move.
+	 * @param target File to replace.
+	 * @throws IOException if the file can't be moved.
+	 */
+	private static void move(File source, File target) throws IOException {
+		try {
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+}
@@ -0,0 +1,189 @@
+package io;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stores only one copy of saved files with the same contents, like the same PDF linked under several
+ * types or URLs. The store's directory holds a hard link to the first saved file with each hash, named
+ * by the hash, and later files with the same hash are replaced by another hard link to it.
+ * <p>
+ * An index of the hash of each saved file counts the saved files that refer to each stored copy,
+ * and a copy is deleted once none do, like when the only PDF with its contents is downloaded again
+ * with new contents. The index is appended to as files are added, and rewritten with only the
+ * latest line for each file when it's loaded. Copies stored before there was an index aren't counted,
+ * so they are kept.
+ *
+ * @author Adam Luck
+ */
+public class ContentStore {
+
+	/** Name of the index file in the store's directory. */
+	public static final String INDEX_FILE = "index.txt";
+	/** Extension of the stored copies. */
+	private static final String EXTENSION = ".pdf";
+	/** Separator between the fields of each index entry. */
+	private static final String SEPARATOR = "\t";
+
+	/** Directory the copies and index are stored in. */
+	private File dir;
+	/** File the index is stored in. */
+	private File indexFile;
+	/** Map of the paths of saved files to the hashes of their contents. */
+	private Map<String, String> hashes = new HashMap<String, String>();
+	/** Map of hashes to the number of saved files with them. */
+	private Map<String, Integer> references = new HashMap<String, Integer>();
+
+	/**
+	 * Constructor for the store, which loads the index if there is one.
+	 * @param dir Directory to store the copies and index in.
+	 * @throws IOException if the directory can't be made, or the index exists but can't be read or rewritten.
+	 */
+	public ContentStore(File dir) throws IOException {
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Failed to make content directory.");
+		}
+		this.dir = dir;
+		this.indexFile = new File(dir, INDEX_FILE);
+		if (indexFile.exists()) {
+			load();
+		}
+	}
+
+	/**
+	 * Adds a file that was just saved, replacing it with a link to the stored copy of its contents
+	 * if there is one. If the file replaced a saved file with different contents, the old contents
+	 * are released, and their stored copy is deleted if no other saved file has them.
+	 * The file is kept as its own copy if it can't be linked, like on file systems without hard links.
+	 * @param file File that was saved.
+	 * @return the hash of the file's contents.
+	 * @throws IOException if the file can't be hashed.
+	 */
+	public String add(File file) throws IOException {
+		String hash = ParseCache.hash(file);
+		synchronized (this) {
+			try {
+				link(file, hash);
+			} catch (IOException e) {
+				System.err.println("Couldn't deduplicate " + file.getName() + ": " + e.getMessage());
+			}
+			String old = hashes.put(file.getPath(), hash);
+			if (!hash.equals(old)) {
+				references.merge(hash, 1, Integer::sum);
+				append(file.getPath(), hash);
+				if (old != null)
+					release(old);
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * Returns the stored copy of the contents with the given hash, which may not exist.
+	 * @param hash Hash of the contents.
+	 * @return the stored copy of the contents.
+	 */
+	public File getCopy(String hash) {
+		return new File(dir, hash + EXTENSION);
+	}
+
+	/**
+	 * Returns the number of saved files with the contents with the given hash.
+	 * @param hash Hash of the contents.
+	 * @return the number of saved files with the contents.
+	 */
+	public synchronized int getReferences(String hash) {
+		Integer count = references.get(hash);
+		return count == null ? 0 : count;
+	}
+
+	/**
+	 * Replaces the file with a hard link to the stored copy of its contents, or stores it as the copy if there isn't one.
+	 * @param file File to link.
+	 * @param hash Hash of the file's contents.
+	 * @throws IOException if the file can't be linked.
+	 */
+	private void link(File file, String hash) throws IOException {
+		File copy = getCopy(hash);
+		if (!copy.exists()) {
+			Files.createLink(copy.toPath(), file.toPath());
+			return;
+		}
+		if (Files.isSameFile(copy.toPath(), file.toPath()))
+			return;
+		// Link the stored copy next to the file and move the link over it, so the file is never missing.
+		File link = new File(file.getPath() + ".link");
+		Files.deleteIfExists(link.toPath());
+		Files.createLink(link.toPath(), copy.toPath());
+		Files.move(link.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Drops a reference to the contents with the given hash, deleting their stored copy if it was the last one.
+	 * @param hash Hash of the contents.
+	 */
+	private void release(String hash) {
+		int count = getReferences(hash) - 1;
+		if (count > 0) {
+			references.put(hash, count);
+			return;
+		}
+		references.remove(hash);
+		try {
+			Files.deleteIfExists(getCopy(hash).toPath());
+		} catch (IOException e) {
+			System.err.println("Couldn't delete the stored copy " + hash + EXTENSION + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Appends an entry to the index file.
+	 * @param path Path of the saved file.
+	 * @param hash Hash of the file's contents.
+	 */
+	private void append(String path, String hash) {
+		try (BufferedWriter bw = new BufferedWriter(new FileWriter(indexFile, true))) {
+			bw.write(path + SEPARATOR + hash + "\n");
+		} catch (IOException e) {
+			System.err.println("Error saving the content index entry for " + path);
+			System.err.println(e.getMessage());
+		}
+	}
+
+	/**
+	 * Loads the index file, in which later lines for a path replace earlier ones,
+	 * and rewrites it with only the latest line for each path if there were repeats.
+	 * @throws IOException if the index file can't be read or rewritten.
+	 */
+	private void load() throws IOException {
+		List<String> lines = Files.readAllLines(indexFile.toPath());
+		for (String line : lines) {
+			// Lines are path and hash, with the path first since the hash never contains the separator.
+			int separator = line.lastIndexOf(SEPARATOR);
+			if (separator < 0)
+				continue;
+			hashes.put(line.substring(0, separator), line.substring(separator + 1));
+		}
+		for (String hash : hashes.values()) {
+			references.merge(hash, 1, Integer::sum);
+		}
+		if (lines.size() > hashes.size()) {
+			File temp = new File(indexFile.getPath() + ".tmp");
+			try (BufferedWriter bw = new BufferedWriter(new FileWriter(temp))) {
+				for (Map.Entry<String, String> entry : hashes.entrySet()) {
+					bw.write(entry.getKey() + SEPARATOR + entry.getValue() + "\n");
+				}
+			}
+			Files.move(temp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+}
@@ -0,0 +1,90 @@
+package io;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import data.Headphone;
+import util.HeadphoneList;
+
+/**
+ * Adds headphones that are missing from the headphone database. The names already in the
+ * database are read with one query, and the missing headphones are inserted with a prepared
+ * statement in batches, all in one transaction so a failed sync doesn't leave part of it behind.
+ *
+ * @author Adam Luck
+ */
+public class DatabaseSync {
+
+	/** Default number of rows inserted per batch. */
+	public static final int DEFAULT_BATCH_SIZE = 500;
+	/** Query for the names of the headphones already in the database. */
+	private static final String SELECT_NAMES = "SELECT name FROM headphones";
+	/** Statement that inserts a headphone. */
+	private static final String INSERT = "INSERT INTO headphones (name, type, url, dbVals) VALUES (?, ?, ?, ?)";
+
+	/**
+	 * Inserts every headphone in the lists whose name isn't in the database yet.
+	 * @param con Connection to the database.
+	 * @param lists Lists of headphones to sync.
+	 * @param batchSize Number of rows to insert per batch.
+	 * @return the number of headphones inserted.
+	 * @throws SQLException if the database can't be read or updated; nothing is inserted if so.
+	 */
+	public static int sync(Connection con, List<HeadphoneList> lists, int batchSize) throws SQLException {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be positive.");
+		}
+		boolean autoCommit = con.getAutoCommit();
+		con.setAutoCommit(false);
+		try {
+			// Get the names already in the database.
+			Set<String> names = new HashSet<String>();
+			try (Statement stmt = con.createStatement(); ResultSet rs = stmt.executeQuery(SELECT_NAMES)) {
+				while (rs.next()) {
+					names.add(rs.getString(1));
+				}
+			}
+			// Insert the headphones that aren't.
+			int inserted = 0;
+			try (PreparedStatement insert = con.prepareStatement(INSERT)) {
+				int batched = 0;
+				for (HeadphoneList hpList : lists) {
+					for (Headphone hp : hpList.getAll()) {
+						if (!names.add(hp.getName()))
+							continue;
+						insert.setString(1, hp.getName());
+						insert.setString(2, hp.getType());
+						insert.setString(3, hp.getURL());
+						insert.setString(4, Arrays.toString(hp.getDBVals()));
+						insert.addBatch();
+						batched++;
+						if (batched == batchSize) {
+							insert.executeBatch();
+							inserted += batched;
+							batched = 0;
+						}
+					}
+				}
+				if (batched > 0) {
+					insert.executeBatch();
+					inserted += batched;
+				}
+			}
+			con.commit();
+			return inserted;
+		} catch (SQLException | RuntimeException e) {
+			con.rollback();
+			throw e;
+		} finally {
+			con.setAutoCommit(autoCommit);
+		}
+	}
+
+}
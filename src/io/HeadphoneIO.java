@@ -1,21 +1,15 @@
 package io;
 
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.net.URL;
-import java.net.URLConnection;
-import java.nio.channels.Channels;
-import java.nio.channels.ReadableByteChannel;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.Set;
 
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
@@ -23,12 +17,9 @@ import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 
 import java.sql.Connection;
-import java.sql.ResultSet;
-import java.sql.Statement;
 
+import data.CurveStore;
 import data.Headphone;
-import parse.InvalidDocumentException;
-import parse.MeasurementParser;
 import util.HeadphoneList;
 
 /**
@@ -49,6 +40,30 @@ public class HeadphoneIO {
 	private static final List<String> types = Headphone.HEADPHONE_TYPES;
 	/** List containing the HeadphoneLists for each type of headphone */
 	private static List<HeadphoneList> headphones;
+	/** Name of the file in HP_DIR that caches parsed measurement PDFs. */
+	private static final String PARSE_CACHE_FILE = "parse-cache.txt";
+	/** Name of the file in HP_DIR that holds the binary snapshot of every headphone. */
+	private static final String SNAPSHOT_FILE = "catalog.snapshot";
+	/** Name of the file in HP_DIR that journals headphones added since the snapshot was written. */
+	private static final String JOURNAL_FILE = "catalog.journal";
+	/** Number of journal records that triggers compacting the journal into the snapshot. */
+	private static final int COMPACT_THRESHOLD = 256;
+	/** Journal of headphones added since the snapshot was written. */
+	private static CatalogJournal journal;
+	/** Headphones found since the measurements were last saved. */
+	private static List<Headphone> newHeadphones;
+	/** Name of the file in HP_DIR that caches the measurements page. */
+	private static final String INDEX_FILE = "measurements.html";
+	/** Name of the file in HP_DIR that holds the ETag and Last-Modified of each downloaded file. */
+	private static final String VALIDATOR_FILE = "http-validators.txt";
+	/** Name of the directory in HP_DIR that holds the content store, with one hard link to each distinct PDF. */
+	private static final String CONTENT_DIR = "content";
+	/** Fetcher used to download the measurements page and PDFs. */
+	private static HttpFetcher fetcher;
+	/** Store that deduplicates downloaded PDFs, or null if it couldn't be loaded. */
+	private static ContentStore contentStore;
+	/** Whether there has been an attempt to load the content store. */
+	private static boolean contentStoreLoaded;
 	
 	/**
 	 * Gets the measurement PDF and stores all of the headphone measurements.
@@ -58,51 +73,62 @@ public class HeadphoneIO {
 		for (int i = 0; i < types.size(); i++) {
 			headphones.add(new HeadphoneList(types.get(i)));
 		}
+		journal = CatalogJournal.open(new File(HP_DIR + JOURNAL_FILE));
+		newHeadphones = new ArrayList<Headphone>();
+		getFetcher();
 		System.out.println("    Loading current headphones...");
 		loadCurrentHeadphones();
+		replayJournal(journal, headphones);
 		System.out.println("    Getting new headphones...");
 		getNewHeadphones();
 		System.out.println("    Updating headphone database...");
 		updateDatabase();
 	}
 
+	/**
+	 * Creates the fetcher used to download files, which remembers the validators of files it has downloaded.
+	 * @return the fetcher used to download files.
+	 */
+	private static HttpFetcher createFetcher() {
+		try {
+			return new HttpFetcher(new File(HP_DIR + VALIDATOR_FILE));
+		} catch (IOException e) {
+			System.err.println("Error loading HTTP validators; downloading every file in full.");
+			System.err.println(e.getMessage());
+		}
+		try {
+			return new HttpFetcher(null);
+		} catch (IOException e) {
+			// The fetcher only reads the validator file if there is one.
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Maps the saved catalog snapshot for read-only analysis, without loading any headphones onto the heap.
+	 * @return the mapped catalog.
+	 * @throws IOException if there is no valid snapshot to map.
+	 */
+	public static MappedCatalog mapHeadphoneMeasurements() throws IOException {
+		return new MappedCatalog(new File(HP_DIR + SNAPSHOT_FILE));
+	}
+
 	/**
 	 * Updates the SQL database with any new headphones.
 	 */
 	private static void updateDatabase() {
 		Connection con = null;
-		Statement stmt = null;
-	    ResultSet rs = null;
 		try {
 			// Make the connection.
 			con = HPDBConnection.getConnection();
-			stmt = con.createStatement();
 		    // Assert that all of the headphones are in the database, and if they aren't, add them.
-			for (HeadphoneList hpList : headphones) {
-				for (Headphone hp : hpList.getAll()) {
-					String sql = "SELECT * FROM headphones WHERE name = '" + hp.getName() + "';";
-					rs = stmt.executeQuery(sql);
-					if (!rs.first()) {
-						sql = "INSERT INTO headphones (name, type, url, dbVals) " +
-							"VALUES ('" + hp.getName() + "', '" + hp.getType() + "', '" +
-								hp.getURL() + "', '" + Arrays.toString(hp.getDBVals()) + "');";
-						stmt.execute(sql);
-					}
-				}
-			}
-		    rs.close();
-		    stmt.close();
-		    con.close();
+			DatabaseSync.sync(con, headphones, DatabaseSync.DEFAULT_BATCH_SIZE);
 		} catch (Exception ex) {
 			ex.printStackTrace();
 		} finally {
 			try {
-				if (stmt != null)
-					stmt.close();
 			    if (con != null)
 			    	con.close();
-				if (rs != null)
-					rs.close();
 			} catch (Exception ex) {
 				ex.printStackTrace();
 			}
@@ -111,9 +137,24 @@ public class HeadphoneIO {
 
 	/**
 	 * Loads the headphone information for all measurements that have already been parsed.
-	 * Also ensures the Headphone SQL Database contains all of the 
+	 * Loads the newest valid generation of the catalog snapshot if there is a snapshot, and the measurement
+	 * text files written before there were snapshots otherwise. Headphones saved after the generation that
+	 * was loaded aren't in the lists, so they are downloaded and parsed again.
+	 * @throws IllegalStateException if there is a snapshot but no generation of it can be loaded,
+	 * since the text files don't have the headphones saved since snapshots replaced them.
 	 */
 	private static void loadCurrentHeadphones() {
+		File snapshot = new File(HP_DIR + SNAPSHOT_FILE);
+		if (snapshot.exists() || CatalogSnapshot.previous(snapshot).exists()) {
+			try {
+				loadSnapshot(snapshot, headphones);
+				return;
+			} catch (IOException e) {
+				throw new IllegalStateException("Error loading catalog snapshot. Restore " + snapshot.getPath()
+						+ ", or delete it and its previous generation to load the measurement files instead. "
+						+ e.getMessage(), e);
+			}
+		}
 		try {
 			File root = new File(HP_DIR);
 			if (!root.isDirectory() && !root.mkdirs()) {
@@ -121,6 +162,9 @@ public class HeadphoneIO {
 			}
 			// Add headphones to each list from each corresponding directory.
 			for (File typeDir : root.listFiles()) {
+				// Skip files kept alongside the type directories, like the parse cache, and the content directory.
+				if (typeDir.isFile() || typeDir.getName().equals(CONTENT_DIR))
+					continue;
 				if (!typeDir.isDirectory() && !typeDir.mkdirs()) {
 					throw new IOException("Failed to make " + typeDir.getName() + " directory.");
 				}
@@ -136,6 +180,7 @@ public class HeadphoneIO {
 				if (headphoneList == null)
 					throw new IOException("Directory structure invalid.");
 				// Add each headphone in the directory to the list.
+				List<Headphone> loaded = new ArrayList<Headphone>();
 				for (File headphoneDir : typeDir.listFiles()) {
 					for (File file : headphoneDir.listFiles()) {
 						if (file.getName().endsWith(".txt")) {
@@ -143,10 +188,11 @@ public class HeadphoneIO {
 				            if (headphone == null) {
 				            	throw new IOException(file.getName() + " couldn't be loaded.");
 				            }
-				            headphoneList.add(headphone);
+				            loaded.add(headphone);
 						}
 					}
 				}
+				headphoneList.addAll(loaded);
 	
 			}
 		} catch (IOException e) {
@@ -155,6 +201,68 @@ public class HeadphoneIO {
 
 	}
 	
+	/**
+	 * Adds the headphones in the journal that aren't already in their lists, which are the ones
+	 * saved since the snapshot was last compacted. Headphones already in the lists were journaled
+	 * before a compaction that didn't get to drop them from the journal.
+	 * A headphone is only skipped if one with the same name and type is already in the lists
+	 * or earlier in the journal.
+	 * @param journal Journal to replay.
+	 * @param lists Lists of every type of headphone, which already contain the loaded headphones.
+	 */
+	static void replayJournal(CatalogJournal journal, List<HeadphoneList> lists) {
+		try {
+			Map<HeadphoneList, List<Headphone>> replayed = new HashMap<HeadphoneList, List<Headphone>>();
+			Set<Headphone> seen = new HashSet<Headphone>();
+			for (Headphone headphone : journal.replay()) {
+				HeadphoneList headphoneList = getHeadphoneList(lists, headphone.getType());
+				if (headphoneList == null)
+					continue;
+				Headphone existing = headphoneList.getByName(headphone.getName());
+				if ((existing != null && existing.equals(headphone)) || !seen.add(headphone))
+					continue;
+				List<Headphone> list = replayed.get(headphoneList);
+				if (list == null) {
+					list = new ArrayList<Headphone>();
+					replayed.put(headphoneList, list);
+				}
+				list.add(headphone);
+			}
+			for (Map.Entry<HeadphoneList, List<Headphone>> entry : replayed.entrySet()) {
+				entry.getKey().addAll(entry.getValue());
+			}
+		} catch (IOException e) {
+			System.err.println("Error replaying catalog journal.");
+			System.err.println(e.getMessage());
+		}
+	}
+
+	/**
+	 * Loads every headphone in the newest valid generation of the catalog snapshot into the list of its type.
+	 * Nothing is added to the lists if no generation is valid.
+	 * @param snapshot Snapshot file to load.
+	 * @param lists Lists of every type of headphone.
+	 * @throws IOException if no generation of the snapshot can be read and is valid.
+	 */
+	static void loadSnapshot(File snapshot, List<HeadphoneList> lists) throws IOException {
+		CurveStore store = CatalogSnapshot.loadLatest(snapshot);
+		Map<HeadphoneList, List<Headphone>> loaded = new HashMap<HeadphoneList, List<Headphone>>();
+		for (int i = 0; i < store.size(); i++) {
+			HeadphoneList headphoneList = getHeadphoneList(lists, store.getType(i));
+			if (headphoneList == null)
+				throw new IOException("Catalog snapshot contains unknown type " + store.getType(i) + ".");
+			List<Headphone> list = loaded.get(headphoneList);
+			if (list == null) {
+				list = new ArrayList<Headphone>();
+				loaded.put(headphoneList, list);
+			}
+			list.add(store.get(i));
+		}
+		for (Map.Entry<HeadphoneList, List<Headphone>> entry : loaded.entrySet()) {
+			entry.getKey().addAll(entry.getValue());
+		}
+	}
+
 	/**
 	 * Loads a headphone object using the information in the given file.
 	 * @param measurementFile File to get information from.
@@ -189,16 +297,23 @@ public class HeadphoneIO {
 	 * Checks Innerfidelity for any new measurement sheets that have been uploaded.
 	 */
 	private static void getNewHeadphones() {
-		// Connect to the page containing all of the measurement PDFs.
+		// Get the page containing all of the measurement PDFs, which is only downloaded if it has changed.
 		Document doc = null;
+		File index = new File(HP_DIR + INDEX_FILE);
+		try {
+			getFetcher().fetch(MEASUREMENT_URL, index);
+		} catch (IOException e) {
+			System.err.println("Error getting the measurements page; using the saved copy.");
+			System.err.println(e.getMessage());
+		}
 		try {
-			doc = Jsoup.connect(MEASUREMENT_URL).get();
-			if (doc == null)
-				throw new IOException("URL of the measurements page is broken.");
+			doc = Jsoup.parse(index, "UTF-8", MEASUREMENT_URL);
 		} catch (IOException e) {
 			e.printStackTrace();
+			return;
 		}
-		// Add all new headphones of each type to their respective lists.
+		// Find the links to all new measurement PDFs of each type.
+		List<MeasurementLink> links = new ArrayList<MeasurementLink>();
 		for (HeadphoneList headphoneList : headphones) {
 			String type = headphoneList.getType();
 			// Get the specific element containing the correct type of headphones.
@@ -212,7 +327,9 @@ public class HeadphoneIO {
 			Element section = doc.getElementsContainingOwnText(typeSearch).parents().first();
 			// Select all links to measurement PDFs in the selected section.
 			Elements elements = section.select("a");
-			// Make a new directory and Headphone object for each new measurement PDF.
+			// URLs already queued for this type, so duplicate links are only ingested once.
+			Set<String> queued = new HashSet<String>();
+			// Make a new directory for each new measurement PDF.
 			for (Element element : elements) {
 				// Name to be used for storage purposes.
 				String directoryName = "";
@@ -222,7 +339,7 @@ public class HeadphoneIO {
 					url = url.replaceFirst("http", "https");
 					url = url.substring(0, url.indexOf(".pdf")) + ".pdf";
 					// If the headphone is already in the list, skip and continue to the next one.
-					if (headphoneList.getByURL(url) != null)
+					if (headphoneList.getByURL(url) != null || !queued.add(url))
 						continue;
 					// Make a directory (if necessary) to store associated documents in.
 					directoryName = url.substring(url.lastIndexOf("/") + 1, url.length() - 4);
@@ -230,76 +347,105 @@ public class HeadphoneIO {
 					File directory = new File(directoryPath);
 					if (!directory.isDirectory() && !directory.mkdirs())
 						throw new IOException("Failed to make headphone directory.");
-					// Connect to the URL, download the PDF, and save it in the directory.
 					String filePath = directoryPath + "/" + directoryName + ".pdf";
-					if (!new File(filePath).exists()) {
-						downloadFile(url, filePath);
-					}
-		            // Make a new Headphone object, parse its measurements, and add it to the list.
-		            Headphone headphone = MeasurementParser.parseMeasurements(filePath, type, url);
-		            headphoneList.add(headphone);
-				} catch (IOException | InvalidDocumentException e) {
+					links.add(new MeasurementLink(type, url, directoryName, filePath));
+				} catch (IOException | RuntimeException e) {
 					System.err.println("Error getting headphone: " + directoryName);
 					System.err.println(e.getMessage());
 					continue;
 				}
 			}
 		}
+		// Download and parse the new PDFs, adding each new headphone to its list.
+		ParseCache cache = null;
+		try {
+			cache = new ParseCache(new File(HP_DIR + PARSE_CACHE_FILE));
+		} catch (IOException e) {
+			System.err.println("Error loading parse cache; parsing all new PDFs.");
+			System.err.println(e.getMessage());
+		}
+		try {
+			new IngestPipeline(cache).run(links, headphone -> {
+				getHeadphoneList(headphone.getType()).add(headphone);
+				newHeadphones.add(headphone);
+			});
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			System.err.println("Interrupted while getting new headphones.");
+		}
 	}
 
 	/**
-	 * Saves the file at the given downloadLink at the given filePath.
+	 * Saves the file at the given downloadLink at the given filePath, unless the saved file is
+	 * already up to date. Each newly downloaded file is deduplicated by its contents.
 	 * @param downloadLink Link to the file to download.
 	 * @param filePath Path to save the file to.
+	 * @return the hash of the file's contents if it was downloaded and deduplicated, or null otherwise.
 	 * @throws IOException If the program is unable to download or save the file.
 	 */
-	private static void downloadFile(String downloadLink, String filePath) throws IOException {
-        URL docLink = new URL(downloadLink);
-        URLConnection connection = docLink.openConnection();
-        connection.setRequestProperty("User-Agent", "Mozilla/5.0"); 
-        ReadableByteChannel rbc = Channels.newChannel(connection.getInputStream());
-        FileOutputStream fos = new FileOutputStream(filePath);
-        fos.getChannel().transferFrom(rbc, 0, Long.MAX_VALUE);
-        rbc.close();
-        fos.close();
+	static String downloadFile(String downloadLink, String filePath) throws IOException {
+		File file = new File(filePath);
+		try {
+			if (getFetcher().fetch(downloadLink, file)) {
+				ContentStore store = getContentStore();
+				if (store != null)
+					return store.add(file);
+			}
+		} catch (IOException e) {
+			// Use the saved copy if the server can't be reached.
+			if (!file.exists())
+				throw e;
+			System.err.println("Error checking " + file.getName() + " for changes; using the saved copy.");
+			System.err.println(e.getMessage());
+		}
+		return null;
 	}
-	
+
 	/**
-	 * Saves all headphone measurements that don't already exist.
+	 * Returns the fetcher used to download files, creating it the first time it's needed.
+	 * The fetcher holds no threads or connections, so it's never closed, and every load shares it.
+	 * @return the fetcher used to download files.
 	 */
-	public static void saveHeadphoneMeasurements() {
-		for (HeadphoneList list : headphones) {
-			String type = list.getType();
-			for (Headphone headphone : list.getAll()) {
-				String url = headphone.getURL();
-				String directoryName = url.substring(url.lastIndexOf("/") + 1, url.length() - 4);
-				Path filePath = Paths.get(HP_DIR + type + "/" + directoryName + "/" + directoryName + ".txt");
-				File measurementFile = filePath.toFile();
-				if (!measurementFile.exists()) {
-					saveHeadphone(headphone, filePath);
-				}
+	private static synchronized HttpFetcher getFetcher() {
+		if (fetcher == null)
+			fetcher = createFetcher();
+		return fetcher;
+	}
+
+	/**
+	 * Returns the store that deduplicates downloaded PDFs, loading it the first time it's needed.
+	 * @return the store that deduplicates downloaded PDFs, or null if it couldn't be loaded.
+	 */
+	private static synchronized ContentStore getContentStore() {
+		if (!contentStoreLoaded) {
+			contentStoreLoaded = true;
+			try {
+				contentStore = new ContentStore(new File(HP_DIR + CONTENT_DIR));
+			} catch (IOException e) {
+				System.err.println("Error loading the content store; downloaded PDFs won't be deduplicated.");
+				System.err.println(e.getMessage());
 			}
 		}
+		return contentStore;
 	}
-
+	
 	/**
-	 * Saves the measurement information of the given headphone in a text file.
-	 * @param headphone Headphone with measurements to save.
-	 * @param filePath Path of the file to save the information in.
+	 * Saves the measurements of the headphones found since the last save by appending them to the journal.
+	 * Compacts the journal into the catalog snapshot in the background once it gets long,
+	 * or if there is no snapshot yet.
 	 */
-	private static void saveHeadphone(Headphone headphone, Path filePath) {
+	public static void saveHeadphoneMeasurements() {
 		try {
-			FileWriter fw = new FileWriter(filePath.toString());
-			BufferedWriter bw = new BufferedWriter(fw);
-			bw.write(headphone.getName() + "\n");
-			bw.write(headphone.getType() + "\n");
-			bw.write(headphone.getURL() + "\n");
-			bw.write(Arrays.toString(headphone.getDBVals()) + "\n");
-			bw.close();
-			fw.close();
+			journal.append(newHeadphones);
+			newHeadphones.clear();
 		} catch (IOException e) {
-			System.err.println("Error with headphone: " + headphone.getName());
+			System.err.println("Error saving new headphones.");
 			System.err.println(e.getMessage());
+			return;
+		}
+		File snapshot = new File(HP_DIR + SNAPSHOT_FILE);
+		if (!snapshot.exists() || journal.size() >= COMPACT_THRESHOLD) {
+			journal.compact(snapshot, headphones);
 		}
 	}
 	
@@ -309,7 +455,17 @@ public class HeadphoneIO {
 	 * @return the HeadphoneList with type matching the given type.
 	 */
 	public static HeadphoneList getHeadphoneList(String type) {
-		for (HeadphoneList list : headphones) {
+		return getHeadphoneList(headphones, type);
+	}
+
+	/**
+	 * Returns the HeadphoneList in the given lists with type matching the given type.
+	 * @param lists Lists of every type of headphone.
+	 * @param type Type of HeadphoneList to get.
+	 * @return the HeadphoneList with type matching the given type, or null if there isn't one.
+	 */
+	private static HeadphoneList getHeadphoneList(List<HeadphoneList> lists, String type) {
+		for (HeadphoneList list : lists) {
 			if (type.equals(list.getType()))
 				return list;
 		}
@@ -0,0 +1,474 @@
+package io;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Fetches files over HTTP, limiting the number of concurrent requests to each host.
+ * Connections are kept alive and reused between requests to the same host, which only happens
+ * when each response is read to the end, so every response body is drained before it's closed.
+ * Requests that time out, fail to connect, or get a 5xx or 429 response are retried with
+ * exponential backoff. The ETag and Last-Modified of each fetched file are saved, and sent back
+ * with the next request for it, so a file that hasn't changed on the server isn't downloaded again.
+ * <p>
+ * Files are downloaded to a .part file next to the target, which is checked against the
+ * length the server gave and then atomically renamed to the target, so the target is only
+ * ever missing or complete. A download that is cut off keeps its .part file, and the next
+ * attempt asks for just the rest of the file with a Range request, as long as the server
+ * says the file hasn't changed since the .part file was started.
+ * <p>
+ * Fetchers are thread-safe and hold no threads or connections of their own, so one can be shared
+ * and used for as long as needed. The JDK keeps idle connections alive in a cache shared by the
+ * whole JVM, which holds up to http.maxConnections (5 by default) per host. Run with a larger
+ * http.maxConnections to keep every connection alive when allowing more concurrent requests per host.
+ *
+ * @author Adam Luck
+ */
+public class HttpFetcher {
+
+	/** Default number of concurrent requests to each host. */
+	public static final int DEFAULT_MAX_PER_HOST = 4;
+	/** Default number of milliseconds to wait for a connection. */
+	public static final int DEFAULT_CONNECT_TIMEOUT_MS = 10000;
+	/** Default number of milliseconds to wait for data from a connection. */
+	public static final int DEFAULT_READ_TIMEOUT_MS = 30000;
+	/** Default number of times a request is attempted before giving up. */
+	public static final int DEFAULT_MAX_ATTEMPTS = 4;
+	/** Default number of milliseconds to wait before the first retry, doubled for each retry after it. */
+	public static final long DEFAULT_BACKOFF_MS = 500;
+	/** Longest number of milliseconds to wait before a retry. */
+	private static final long MAX_BACKOFF_MS = 30000;
+	/** User agent sent with each request. */
+	private static final String USER_AGENT = "Mozilla/5.0";
+	/** Separator between the fields of each validator entry. */
+	private static final String SEPARATOR = "\t";
+	/** Extension of files that are still being downloaded. */
+	public static final String PART_EXTENSION = ".part";
+	/** Prefix of the validator keys of files that are still being downloaded. */
+	private static final String PART_PREFIX = "part:";
+	/** System property the JDK reads the number of idle connections it keeps alive to each host from. */
+	public static final String KEEP_ALIVE_PROPERTY = "http.maxConnections";
+	/** Number of idle connections the JDK keeps alive to each host if KEEP_ALIVE_PROPERTY isn't set. */
+	private static final int DEFAULT_KEEP_ALIVE = 5;
+
+	/** File the validators of fetched files are stored in, or null if they aren't saved. */
+	private File validatorFile;
+	/** Map of URLs to the ETag and Last-Modified of the file last fetched from them. */
+	private Map<String, String[]> validators = new ConcurrentHashMap<String, String[]>();
+	/** Map of hosts to the permits for requests to them. */
+	private Map<String, Semaphore> hosts = new ConcurrentHashMap<String, Semaphore>();
+	/** Number of concurrent requests to each host. */
+	private int maxPerHost;
+	/** Number of milliseconds to wait for a connection. */
+	private int connectTimeout;
+	/** Number of milliseconds to wait for data from a connection. */
+	private int readTimeout;
+	/** Number of times a request is attempted before giving up. */
+	private int maxAttempts;
+	/** Number of milliseconds to wait before the first retry. */
+	private long backoff;
+
+	/**
+	 * Constructor for fetchers using the default limits.
+	 * @param validatorFile File to store the validators of fetched files in, or null if they shouldn't be saved.
+	 * @throws IOException if the validator file exists but can't be read.
+	 */
+	public HttpFetcher(File validatorFile) throws IOException {
+		this(validatorFile, DEFAULT_MAX_PER_HOST, DEFAULT_CONNECT_TIMEOUT_MS, DEFAULT_READ_TIMEOUT_MS,
+				DEFAULT_MAX_ATTEMPTS, DEFAULT_BACKOFF_MS);
+	}
+
+	/**
+	 * Constructor for fetchers. Warns if more concurrent requests are allowed to each host
+	 * than the JDK keeps connections alive for, since the extra connections are closed after each request.
+	 * @param validatorFile File to store the validators of fetched files in, or null if they shouldn't be saved.
+	 * @param maxPerHost Number of concurrent requests to each host.
+	 * @param connectTimeout Number of milliseconds to wait for a connection.
+	 * @param readTimeout Number of milliseconds to wait for data from a connection.
+	 * @param maxAttempts Number of times a request is attempted before giving up.
+	 * @param backoff Number of milliseconds to wait before the first retry.
+	 * @throws IOException if the validator file exists but can't be read.
+	 */
+	public HttpFetcher(File validatorFile, int maxPerHost, int connectTimeout, int readTimeout,
+			int maxAttempts, long backoff) throws IOException {
+		if (maxPerHost < 1 || connectTimeout < 0 || readTimeout < 0 || maxAttempts < 1 || backoff < 0) {
+			throw new IllegalArgumentException("Fetcher limits must be positive.");
+		}
+		this.validatorFile = validatorFile;
+		this.maxPerHost = maxPerHost;
+		this.connectTimeout = connectTimeout;
+		this.readTimeout = readTimeout;
+		this.maxAttempts = maxAttempts;
+		this.backoff = backoff;
+		int keepAlive = Integer.getInteger(KEEP_ALIVE_PROPERTY, DEFAULT_KEEP_ALIVE);
+		if (maxPerHost > keepAlive) {
+			System.err.println("Fetching up to " + maxPerHost + " files per host, but only " + keepAlive
+					+ " connections per host are kept alive; run with -D" + KEEP_ALIVE_PROPERTY + "=" + maxPerHost
+					+ " to reuse them all.");
+		}
+		if (validatorFile != null && validatorFile.exists()) {
+			loadValidators();
+		}
+	}
+
+	/**
+	 * Fetches the file at the given URL, saving it to the target file if it has changed since
+	 * it was last fetched. The target file is only checked against the server if it exists.
+	 * @param url URL of the file to fetch.
+	 * @param target File to save the fetched file to.
+	 * @return whether the file was downloaded, which is false if the saved file hasn't changed on the server.
+	 * @throws IOException if the file can't be fetched after every attempt, or can't be saved.
+	 */
+	public boolean fetch(String url, File target) throws IOException {
+		IOException failure = null;
+		for (int attempt = 0; attempt < maxAttempts; attempt++) {
+			long retryAfter = -1;
+			try {
+				Response response = request(url, target);
+				if (response.status < 0)
+					return response.status == Response.DOWNLOADED;
+				failure = new IOException("Server returned HTTP " + response.status + " for " + url);
+				// Only server errors, rate limiting, and bad resumes are worth retrying.
+				if (response.status / 100 != 5 && response.status != 429
+						&& response.status != Response.RANGE_NOT_SATISFIABLE)
+					throw failure;
+				retryAfter = response.retryAfter;
+			} catch (IOException e) {
+				// Timeouts are retried, but not interruptions.
+				if (e == failure || Thread.currentThread().isInterrupted())
+					throw e;
+				failure = e;
+			}
+			if (attempt + 1 < maxAttempts) {
+				sleep(retryAfter >= 0 ? retryAfter : delay(attempt));
+			}
+		}
+		throw failure;
+	}
+
+	/**
+	 * Makes one request for the file at the given URL, holding one of its host's permits for the whole request.
+	 * @param url URL of the file to fetch.
+	 * @param target File to save the fetched file to.
+	 * @return the outcome of the request.
+	 * @throws IOException if the request fails or the file can't be saved.
+	 */
+	private Response request(String url, File target) throws IOException {
+		URL link = new URL(url);
+		Semaphore permits = hosts.computeIfAbsent(link.getHost(), host -> new Semaphore(maxPerHost, true));
+		try {
+			permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting to fetch " + url);
+		}
+		HttpURLConnection connection = null;
+		try {
+			connection = (HttpURLConnection) link.openConnection();
+			connection.setConnectTimeout(connectTimeout);
+			connection.setReadTimeout(readTimeout);
+			connection.setRequestProperty("User-Agent", USER_AGENT);
+			String[] validator = validators.get(url);
+			if (validator != null && target.exists()) {
+				if (validator[0] != null)
+					connection.setRequestProperty("If-None-Match", validator[0]);
+				if (validator[1] != null)
+					connection.setRequestProperty("If-Modified-Since", validator[1]);
+			}
+			// Resume a cut off download, but only if the file is still the one it was started from.
+			File part = new File(target.getPath() + PART_EXTENSION);
+			String[] partValidator = validators.get(PART_PREFIX + url);
+			long resumeFrom = part.length();
+			if (resumeFrom > 0 && partValidator != null) {
+				connection.setRequestProperty("Range", "bytes=" + resumeFrom + "-");
+				connection.setRequestProperty("If-Range", partValidator[0] != null ? partValidator[0] : partValidator[1]);
+			}
+			else {
+				resumeFrom = 0;
+			}
+			int status = connection.getResponseCode();
+			if (status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+				drain(connection.getInputStream());
+				discardPart(url, part);
+				return new Response(Response.NOT_MODIFIED, -1);
+			}
+			if (status == Response.RANGE_NOT_SATISFIABLE) {
+				// The .part file doesn't match the file on the server, so start over.
+				drain(connection.getErrorStream());
+				discardPart(url, part);
+				return new Response(status, 0);
+			}
+			if (status / 100 != 2) {
+				drain(connection.getErrorStream());
+				return new Response(status, retryAfter(connection.getHeaderField("Retry-After")));
+			}
+			String eTag = connection.getHeaderField("ETag");
+			String lastModified = connection.getHeaderField("Last-Modified");
+			long length;
+			if (status == HttpURLConnection.HTTP_PARTIAL && resumeFrom > 0) {
+				length = resumedLength(connection.getHeaderField("Content-Range"), resumeFrom);
+			}
+			else {
+				// The server sent the whole file, so anything already downloaded is out of date.
+				resumeFrom = 0;
+				length = connection.getContentLengthLong();
+			}
+			putValidator(PART_PREFIX + url, eTag, lastModified);
+			save(connection.getInputStream(), part, resumeFrom);
+			if (length >= 0 && part.length() != length) {
+				if (part.length() > length)
+					discardPart(url, part);
+				throw new IOException("Download of " + url + " has " + part.length() + " of " + length + " bytes.");
+			}
+			move(part, target);
+			putValidator(PART_PREFIX + url, null, null);
+			putValidator(url, eTag, lastModified);
+			return new Response(Response.DOWNLOADED, -1);
+		} catch (IOException e) {
+			// Closing a drained stream returns the connection to the keep-alive cache,
+			// so the connection is only disconnected if the response couldn't be read.
+			if (connection != null)
+				connection.disconnect();
+			throw e;
+		} finally {
+			permits.release();
+		}
+	}
+
+	/**
+	 * Writes the response body to the .part file, after the part already downloaded.
+	 * Everything read before a failure stays in the file, so it can be resumed.
+	 * @param in Stream of the response body.
+	 * @param part File to write the response body to.
+	 * @param offset Number of bytes of the .part file to keep before the response body.
+	 * @throws IOException if the response body can't be read or saved.
+	 */
+	private static void save(InputStream in, File part, long offset) throws IOException {
+		try (InputStream body = in; RandomAccessFile out = new RandomAccessFile(part, "rw")) {
+			out.setLength(offset);
+			out.seek(offset);
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = body.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+			out.getFD().sync();
+		}
+	}
+
+	/**
+	 * Moves a finished download over the target file in one step, so the target is never partial.
+	 * @param part File that was downloaded.
+	 * @param target File to move it to.
+	 * @throws IOException if the file can't be moved.
+	 */
+	private static void move(File part, File target) throws IOException {
+		try {
+			Files.move(part.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(part.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Deletes a .part file and forgets its validators, so the next download starts from the beginning.
+	 * @param url URL the file was being downloaded from.
+	 * @param part File being downloaded.
+	 * @throws IOException if the file can't be deleted.
+	 */
+	private void discardPart(String url, File part) throws IOException {
+		Files.deleteIfExists(part.toPath());
+		putValidator(PART_PREFIX + url, null, null);
+	}
+
+	/**
+	 * Returns the length of the whole file given in the Content-Range of a resumed download.
+	 * @param contentRange Value of the Content-Range header, or null if there wasn't one.
+	 * @param resumeFrom Position the download was resumed from.
+	 * @return the length of the whole file, or -1 if the server didn't give it.
+	 * @throws IOException if the range doesn't start where the download was resumed from.
+	 */
+	private static long resumedLength(String contentRange, long resumeFrom) throws IOException {
+		// Content-Range looks like "bytes 1000-1999/2000", with "*" if the length isn't known.
+		String expected = "bytes " + resumeFrom + "-";
+		if (contentRange == null || !contentRange.startsWith(expected)) {
+			throw new IOException("Server resumed the download at the wrong position: " + contentRange);
+		}
+		String total = contentRange.substring(contentRange.indexOf('/') + 1).trim();
+		try {
+			return total.equals("*") ? -1 : Long.parseLong(total);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Reads a response body to the end and closes it, so its connection can be reused.
+	 * @param in Stream of the response body, or null if there isn't one.
+	 */
+	private static void drain(InputStream in) {
+		if (in == null)
+			return;
+		try (InputStream body = in) {
+			byte[] buffer = new byte[8192];
+			while (body.read(buffer) != -1) {
+				continue;
+			}
+		} catch (IOException e) {
+			// The connection is dropped instead of reused.
+		}
+	}
+
+	/**
+	 * Returns the number of milliseconds to wait before the retry after the given attempt,
+	 * which doubles after each attempt and is jittered so concurrent retries spread out.
+	 * @param attempt Number of the attempt that failed, starting from 0.
+	 * @return the number of milliseconds to wait before retrying.
+	 */
+	private long delay(int attempt) {
+		long delay = Math.min(MAX_BACKOFF_MS, backoff << Math.min(attempt, 16));
+		return delay / 2 + (delay > 1 ? ThreadLocalRandom.current().nextLong(delay / 2) : 0);
+	}
+
+	/**
+	 * Returns the number of milliseconds a Retry-After header asks to wait.
+	 * @param header Value of the Retry-After header, or null if there wasn't one.
+	 * @return the number of milliseconds to wait, or -1 if the header doesn't give a number of seconds.
+	 */
+	private static long retryAfter(String header) {
+		if (header == null)
+			return -1;
+		try {
+			return Math.min(MAX_BACKOFF_MS, Long.parseLong(header.trim()) * 1000);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Waits before retrying a request.
+	 * @param millis Number of milliseconds to wait.
+	 * @throws InterruptedIOException if the thread is interrupted while waiting.
+	 */
+	private static void sleep(long millis) throws InterruptedIOException {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting to retry.");
+		}
+	}
+
+	/**
+	 * Saves the validators of the file fetched from the given URL.
+	 * @param url URL the file was fetched from.
+	 * @param eTag ETag of the file, or null if the server didn't send one.
+	 * @param lastModified Last-Modified date of the file, or null if the server didn't send one.
+	 */
+	private void putValidator(String url, String eTag, String lastModified) {
+		if (eTag == null && lastModified == null) {
+			// A line with no validators marks the URL as forgotten in the validator file.
+			if (validators.remove(url) == null)
+				return;
+		}
+		else {
+			validators.put(url, new String[] {eTag, lastModified});
+		}
+		if (validatorFile == null)
+			return;
+		synchronized (this) {
+			try (BufferedWriter bw = new BufferedWriter(new FileWriter(validatorFile, true))) {
+				bw.write(url + SEPARATOR + field(eTag) + SEPARATOR + field(lastModified) + "\n");
+			} catch (IOException e) {
+				System.err.println("Error saving validators for " + url);
+				System.err.println(e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Loads the validators from the validator file. Later lines for a URL replace earlier ones,
+	 * and the file is rewritten with only the latest line for each URL if there were repeats.
+	 * @throws IOException if the validator file can't be read or rewritten.
+	 */
+	private void loadValidators() throws IOException {
+		List<String> lines = Files.readAllLines(validatorFile.toPath());
+		for (String line : lines) {
+			// Lines are URL, ETag, and Last-Modified, with empty fields for missing validators.
+			String[] fields = line.split(SEPARATOR, -1);
+			if (fields.length != 3)
+				continue;
+			if (fields[1].isEmpty() && fields[2].isEmpty()) {
+				validators.remove(fields[0]);
+				continue;
+			}
+			validators.put(fields[0], new String[] {
+					fields[1].isEmpty() ? null : fields[1], fields[2].isEmpty() ? null : fields[2]});
+		}
+		if (lines.size() > validators.size()) {
+			File temp = new File(validatorFile.getPath() + ".tmp");
+			try (BufferedWriter bw = new BufferedWriter(new FileWriter(temp))) {
+				for (Map.Entry<String, String[]> entry : validators.entrySet()) {
+					bw.write(entry.getKey() + SEPARATOR + field(entry.getValue()[0])
+							+ SEPARATOR + field(entry.getValue()[1]) + "\n");
+				}
+			}
+			Files.move(temp.toPath(), validatorFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Returns the given validator as a field of the validator file.
+	 * @param validator Validator to write, or null if there isn't one.
+	 * @return the validator with separators removed, or an empty string if it's null.
+	 */
+	private static String field(String validator) {
+		return validator == null ? "" : validator.replace(SEPARATOR, " ");
+	}
+
+	/**
+	 * Outcome of a single request.
+	 */
+	private static class Response {
+
+		/** Status of a request that downloaded the file. */
+		private static final int DOWNLOADED = -1;
+		/** Status of a request for a file that hasn't changed. */
+		private static final int NOT_MODIFIED = -2;
+		/** HTTP status of a request for a range that isn't in the file. */
+		private static final int RANGE_NOT_SATISFIABLE = 416;
+
+		/** DOWNLOADED, NOT_MODIFIED, or the HTTP status of an unsuccessful response. */
+		private final int status;
+		/** Milliseconds the server asked to wait before retrying, or -1 if it didn't say. */
+		private final long retryAfter;
+
+		/**
+		 * Constructor for responses.
+		 * @param status DOWNLOADED, NOT_MODIFIED, or the HTTP status of an unsuccessful response.
+		 * @param retryAfter Milliseconds the server asked to wait before retrying, or -1 if it didn't say.
+		 */
+		private Response(int status, long retryAfter) {
+			this.status = status;
+			this.retryAfter = retryAfter;
+		}
+
+	}
+
+}
@@ -0,0 +1,283 @@
+package io;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import data.Headphone;
+import parse.InvalidDocumentException;
+import parse.MeasurementParser;
+import parse.ParseMode;
+
+/**
+ * Downloads and parses headphone measurement PDFs in three stages:
+ * a bounded download stage, a parse stage sized to the number of cores,
+ * and a single collector stage that hands each parsed headphone to the caller.
+ * Stages are connected by bounded queues, so a fast stage blocks instead of
+ * running ahead of a slow one, and a failed document doesn't stop the batch.
+ * Each queue has its own capacity, since a parsed headphone is much smaller than
+ * the downloaded PDF waiting to be parsed.
+ * <p>
+ * If the THREADS_PROPERTY system property is "virtual", the virtual profile was built, and the JDK
+ * has virtual threads, each download runs on its own virtual thread instead of sharing a fixed pool,
+ * so a link waiting on the network doesn't hold up the links behind it. Requests to each host are
+ * still limited by the fetcher, and parsing, which is CPU-bound, stays on the fixed parse pool.
+ *
+ * @author Adam Luck
+ */
+public class IngestPipeline {
+
+	/** Default number of concurrent downloads. */
+	public static final int DEFAULT_DOWNLOAD_THREADS = 4;
+	/** Default number of concurrent parsers. */
+	public static final int DEFAULT_PARSE_THREADS = Runtime.getRuntime().availableProcessors();
+	/** Default capacity of the queue of downloaded PDFs waiting to be parsed. */
+	public static final int DEFAULT_PARSE_QUEUE_CAPACITY = 16;
+	/** Default capacity of the queue of parsed headphones waiting to be collected. */
+	public static final int DEFAULT_COLLECT_QUEUE_CAPACITY = 16;
+	/** System property that can be set to "virtual" to run each download on its own virtual thread. */
+	public static final String THREADS_PROPERTY = "ingest.threads";
+	/** Name of the executor factory for virtual threads, which is only present if the virtual profile was built. */
+	private static final String VIRTUAL_EXECUTOR = "io.virtual.VirtualDownloadExecutor";
+	/** Milliseconds a stage waits on its queue before checking if the previous stage is done. */
+	private static final long POLL_MS = 100;
+
+	/** Number of concurrent downloads. */
+	private int downloadThreads;
+	/** Number of concurrent parsers. */
+	private int parseThreads;
+	/** Capacity of the queue of downloaded PDFs waiting to be parsed. */
+	private int parseQueueCapacity;
+	/** Capacity of the queue of parsed headphones waiting to be collected. */
+	private int collectQueueCapacity;
+	/** Cache of previously parsed PDFs, or null if PDFs should always be parsed. */
+	private ParseCache cache;
+	/** Step that saves the PDF of each link. */
+	private DownloadStep downloadStep;
+	/** Step that parses each saved PDF that isn't in the cache. */
+	private ParseStep parseStep;
+
+	/**
+	 * Step of the download stage, which saves the PDF of a link.
+	 */
+	public interface DownloadStep {
+
+		/**
+		 * Saves the PDF of the link, unless the saved PDF is already up to date.
+		 * @param link Link of the PDF to save.
+		 * @return the hash of the saved PDF's contents, or null if it wasn't hashed.
+		 * @throws IOException if the PDF can't be downloaded or saved.
+		 */
+		String download(MeasurementLink link) throws IOException;
+
+	}
+
+	/**
+	 * Step of the parse stage, which parses the saved PDF of a link.
+	 */
+	public interface ParseStep {
+
+		/**
+		 * Parses the saved PDF of the link.
+		 * @param link Link of the PDF to parse.
+		 * @return the headphone parsed from the PDF.
+		 * @throws IOException if the program has issues loading the file.
+		 * @throws InvalidDocumentException if the PDF being parsed is invalid.
+		 */
+		Headphone parse(MeasurementLink link) throws IOException, InvalidDocumentException;
+
+	}
+
+	/**
+	 * Constructor for pipelines using the default stage sizes.
+	 * @param cache Cache of previously parsed PDFs, or null if PDFs should always be parsed.
+	 */
+	public IngestPipeline(ParseCache cache) {
+		this(DEFAULT_DOWNLOAD_THREADS, DEFAULT_PARSE_THREADS, DEFAULT_PARSE_QUEUE_CAPACITY,
+				DEFAULT_COLLECT_QUEUE_CAPACITY, cache);
+	}
+
+	/**
+	 * Constructor for pipelines that download PDFs to HP_DIR and parse them with MeasurementParser.
+	 * @param downloadThreads Number of concurrent downloads.
+	 * @param parseThreads Number of concurrent parsers.
+	 * @param parseQueueCapacity Capacity of the queue of downloaded PDFs waiting to be parsed.
+	 * @param collectQueueCapacity Capacity of the queue of parsed headphones waiting to be collected.
+	 * @param cache Cache of previously parsed PDFs, or null if PDFs should always be parsed.
+	 */
+	public IngestPipeline(int downloadThreads, int parseThreads, int parseQueueCapacity, int collectQueueCapacity,
+			ParseCache cache) {
+		this(downloadThreads, parseThreads, parseQueueCapacity, collectQueueCapacity, cache,
+				link -> HeadphoneIO.downloadFile(link.getURL(), link.getFilePath()),
+				link -> MeasurementParser.parseMeasurements(link.getFilePath(), link.getType(), link.getURL()));
+	}
+
+	/**
+	 * Constructor for pipelines.
+	 * @param downloadThreads Number of concurrent downloads.
+	 * @param parseThreads Number of concurrent parsers.
+	 * @param parseQueueCapacity Capacity of the queue of downloaded PDFs waiting to be parsed.
+	 * @param collectQueueCapacity Capacity of the queue of parsed headphones waiting to be collected.
+	 * @param cache Cache of previously parsed PDFs, or null if PDFs should always be parsed.
+	 * @param downloadStep Step that saves the PDF of each link.
+	 * @param parseStep Step that parses each saved PDF that isn't in the cache.
+	 */
+	public IngestPipeline(int downloadThreads, int parseThreads, int parseQueueCapacity, int collectQueueCapacity,
+			ParseCache cache, DownloadStep downloadStep, ParseStep parseStep) {
+		if (downloadThreads < 1 || parseThreads < 1 || parseQueueCapacity < 1 || collectQueueCapacity < 1) {
+			throw new IllegalArgumentException("Stage sizes must be positive.");
+		}
+		this.downloadThreads = downloadThreads;
+		this.parseThreads = parseThreads;
+		this.parseQueueCapacity = parseQueueCapacity;
+		this.collectQueueCapacity = collectQueueCapacity;
+		this.cache = cache;
+		this.downloadStep = downloadStep;
+		this.parseStep = parseStep;
+	}
+
+	/**
+	 * Downloads (if necessary) and parses the PDF of each link, passing each
+	 * parsed headphone to the collector. The collector is only ever called from
+	 * the calling thread, so it doesn't need to be thread-safe.
+	 * @param links Links to the measurement PDFs to ingest.
+	 * @param collector Consumer to pass each parsed headphone to.
+	 * @throws InterruptedException if the calling thread is interrupted while collecting.
+	 */
+	public void run(List<MeasurementLink> links, Consumer<Headphone> collector) throws InterruptedException {
+		BlockingQueue<MeasurementLink> parseQueue = new ArrayBlockingQueue<MeasurementLink>(parseQueueCapacity);
+		BlockingQueue<Headphone> collectQueue = new ArrayBlockingQueue<Headphone>(collectQueueCapacity);
+		CountDownLatch downloadsLeft = new CountDownLatch(links.size());
+		CountDownLatch parsersLeft = new CountDownLatch(parseThreads);
+		ExecutorService downloaders = newDownloadExecutor(System.getProperty(THREADS_PROPERTY), downloadThreads);
+		ExecutorService parsers = Executors.newFixedThreadPool(parseThreads);
+		try {
+			// Download stage: fetch each PDF that isn't saved or has changed and queue it for parsing.
+			// Saved PDFs are checked too, since older versions could leave them truncated. Once a PDF
+			// has been downloaded with validators, checking it is a conditional request.
+			for (MeasurementLink link : links) {
+				downloaders.execute(() -> {
+					try {
+						link.setHash(downloadStep.download(link));
+						parseQueue.put(link);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} catch (Exception e) {
+						reportError(link, e);
+					} finally {
+						downloadsLeft.countDown();
+					}
+				});
+			}
+			// Parse stage: parse queued PDFs until every download has been handled.
+			for (int i = 0; i < parseThreads; i++) {
+				parsers.execute(() -> {
+					try {
+						while (true) {
+							MeasurementLink link = parseQueue.poll(POLL_MS, TimeUnit.MILLISECONDS);
+							if (link == null) {
+								if (downloadsLeft.getCount() == 0 && parseQueue.isEmpty())
+									break;
+								continue;
+							}
+							try {
+								collectQueue.put(parse(link));
+							} catch (InterruptedException e) {
+								throw e;
+							} catch (Exception e) {
+								reportError(link, e);
+							}
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} finally {
+						parsersLeft.countDown();
+					}
+				});
+			}
+			// Collector stage: hand parsed headphones to the collector until every parser is done.
+			while (true) {
+				Headphone headphone = collectQueue.poll(POLL_MS, TimeUnit.MILLISECONDS);
+				if (headphone == null) {
+					if (parsersLeft.getCount() == 0 && collectQueue.isEmpty())
+						break;
+					continue;
+				}
+				try {
+					collector.accept(headphone);
+				} catch (RuntimeException e) {
+					System.err.println("Error collecting headphone: " + headphone.getName());
+					System.err.println(e.getMessage());
+				}
+			}
+		} finally {
+			downloaders.shutdownNow();
+			parsers.shutdownNow();
+		}
+	}
+
+	/**
+	 * Returns an executor for the download stage, which starts a virtual thread for each download
+	 * if they were asked for, the virtual profile was built, and the JDK has them,
+	 * and is a pool of the given number of threads otherwise.
+	 * @param threads Kind of threads asked for, which is "virtual" for virtual threads.
+	 * @param downloadThreads Number of threads in the pool used if virtual threads aren't.
+	 * @return an executor for the download stage.
+	 */
+	@SuppressWarnings("unchecked")
+	static ExecutorService newDownloadExecutor(String threads, int downloadThreads) {
+		if ("virtual".equals(threads)) {
+			try {
+				return ((Supplier<ExecutorService>) Class.forName(VIRTUAL_EXECUTOR).getDeclaredConstructor()
+						.newInstance()).get();
+			} catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+				// Not built, or the JDK is older than Java 21.
+				System.err.println("Virtual threads aren't available; downloading on platform threads.");
+			}
+		}
+		return Executors.newFixedThreadPool(downloadThreads);
+	}
+
+	/**
+	 * Parses the downloaded PDF of the link, or gets its measurements from the cache
+	 * if a PDF with the same contents has already been parsed.
+	 * @param link Link of the PDF to parse.
+	 * @return the headphone parsed from the PDF.
+	 * @throws IOException if the program has issues loading the file.
+	 * @throws InvalidDocumentException if the PDF being parsed is invalid.
+	 */
+	private Headphone parse(MeasurementLink link) throws IOException, InvalidDocumentException {
+		if (cache == null)
+			return parseStep.parse(link);
+		// Reuse the hash the download stage deduplicated the PDF by, if it was downloaded.
+		String hash = link.getHash() != null ? link.getHash() : ParseCache.hash(new File(link.getFilePath()));
+		String version = MeasurementParser.getVersion();
+		Headphone headphone = cache.get(hash, version, link.getType(), link.getURL());
+		if (headphone == null) {
+			headphone = parseStep.parse(link);
+			// Cache the values under the mode that read them, since vector mode can fall back to raster.
+			ParseMode parsedMode = MeasurementParser.getParsedMode();
+			cache.put(hash, parsedMode != null ? MeasurementParser.getVersion(parsedMode) : version, headphone);
+		}
+		return headphone;
+	}
+
+	/**
+	 * Prints an error for a document that couldn't be ingested.
+	 * @param link Link of the document that couldn't be ingested.
+	 * @param e Exception thrown while ingesting the document.
+	 */
+	private static void reportError(MeasurementLink link, Exception e) {
+		System.err.println("Error getting headphone: " + link.getDirectoryName());
+		System.err.println(e.getMessage());
+	}
+
+}
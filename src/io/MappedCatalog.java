@@ -0,0 +1,262 @@
+package io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.charset.StandardCharsets;
+
+import data.CurveStore;
+import data.Headphone;
+
+/**
+ * Read-only view of a catalog snapshot that is memory-mapped and read in place. Curves are read
+ * straight from the mapped file instead of being copied onto the heap, so the heap used doesn't
+ * grow with the catalog, and several programs reading the same snapshot share its pages.
+ * Strings are only decoded when a headphone's information is asked for.
+ * Only the header is checked when the catalog is opened, so opening it doesn't read every page;
+ * call verify to check the whole snapshot against its checksum.
+ * The file is unmapped when the catalog is garbage collected. Writing a new snapshot renames
+ * the mapped file to the previous generation, which is allowed even on Windows, and the catalog
+ * keeps reading it; but on Windows, the next write fails while the catalog is still mapped,
+ * until it has been garbage collected.
+ *
+ * @author Adam Luck
+ */
+public class MappedCatalog {
+
+	/** String table id returned for strings that aren't in the table. */
+	public static final int MISSING_ID = -2;
+	/** String table id of null strings. */
+	public static final int NULL_ID = CatalogSnapshot.NULL_ID;
+
+	/** Buffer containing the whole snapshot. */
+	private ByteBuffer buffer;
+	/** Number of headphones in the catalog. */
+	private int size;
+	/** Decibel values of every headphone, CURVE_LENGTH values per headphone. */
+	private DoubleBuffer curves;
+	/** Average decibel value of each headphone. */
+	private DoubleBuffer means;
+	/** Position in the buffer of each string in the string table. */
+	private int[] stringPositions;
+
+	/**
+	 * Constructor that maps the snapshot file.
+	 * @param file Snapshot file to map.
+	 * @throws IOException if the snapshot can't be read or its header or string table isn't valid.
+	 */
+	public MappedCatalog(File file) throws IOException {
+		buffer = CatalogSnapshot.map(file);
+		size = buffer.getInt(CatalogSnapshot.COUNT_POSITION);
+		curves = section(CatalogSnapshot.CURVES_POSITION, size * CurveStore.CURVE_LENGTH);
+		means = section(CatalogSnapshot.MEANS_POSITION, size);
+		// Find where each string starts so it can be decoded without reading the ones before it.
+		int position = (int) buffer.getLong(CatalogSnapshot.STRINGS_POSITION);
+		int numStrings = buffer.getInt(position);
+		position += 4;
+		// Each string takes at least its four-byte length.
+		if (numStrings < 0 || numStrings > (buffer.capacity() - position) / 4) {
+			throw new IOException("Catalog snapshot is corrupt.");
+		}
+		stringPositions = new int[numStrings];
+		for (int i = 0; i < stringPositions.length; i++) {
+			if (position > buffer.capacity() - 4) {
+				throw new IOException("Catalog snapshot is corrupt.");
+			}
+			int length = buffer.getInt(position);
+			if (length < 0 || length > buffer.capacity() - position - 4) {
+				throw new IOException("Catalog snapshot is corrupt.");
+			}
+			stringPositions[i] = position;
+			position += 4 + length;
+		}
+	}
+
+	/**
+	 * Checks the whole snapshot against its checksum, which reads every page of it.
+	 * @throws IOException if the snapshot is corrupt.
+	 */
+	public void verify() throws IOException {
+		CatalogSnapshot.verify(buffer);
+	}
+
+	/**
+	 * Returns a new headphone with the information of the headphone at the given index.
+	 * @param index Index of the headphone.
+	 * @return a new headphone with the information of the headphone at the given index.
+	 */
+	public Headphone get(int index) {
+		return new Headphone(getName(index), getType(index), getURL(index), getDBVals(index));
+	}
+
+	/**
+	 * Returns the name of the headphone at the given index.
+	 * @param index Index of the headphone.
+	 * @return the name of the headphone at the given index.
+	 */
+	public String getName(int index) {
+		return getString(getNameId(index));
+	}
+
+	/**
+	 * Returns the type of the headphone at the given index.
+	 * @param index Index of the headphone.
+	 * @return the type of the headphone at the given index.
+	 */
+	public String getType(int index) {
+		return getString(getTypeId(index));
+	}
+
+	/**
+	 * Returns the URL of the measurements of the headphone at the given index.
+	 * @param index Index of the headphone.
+	 * @return the URL of the measurements of the headphone at the given index.
+	 */
+	public String getURL(int index) {
+		checkIndex(index);
+		return getString(buffer.getInt(CatalogSnapshot.HEADER_SIZE + index * CatalogSnapshot.RECORD_SIZE + 8));
+	}
+
+	/**
+	 * Returns a copy of the decibel values of the headphone at the given index.
+	 * @param index Index of the headphone.
+	 * @return a copy of the decibel values of the headphone at the given index.
+	 */
+	public double[] getDBVals(int index) {
+		checkIndex(index);
+		double[] dBVals = new double[CurveStore.CURVE_LENGTH];
+		int offset = index * CurveStore.CURVE_LENGTH;
+		for (int i = 0; i < dBVals.length; i++) {
+			dBVals[i] = curves.get(offset + i);
+		}
+		return dBVals;
+	}
+
+	/**
+	 * Returns the string table id of the name of the headphone at the given index.
+	 * @param index Index of the headphone.
+	 * @return the string table id of the headphone's name.
+	 */
+	public int getNameId(int index) {
+		checkIndex(index);
+		return buffer.getInt(CatalogSnapshot.HEADER_SIZE + index * CatalogSnapshot.RECORD_SIZE);
+	}
+
+	/**
+	 * Returns the string table id of the type of the headphone at the given index.
+	 * @param index Index of the headphone.
+	 * @return the string table id of the headphone's type.
+	 */
+	public int getTypeId(int index) {
+		checkIndex(index);
+		return buffer.getInt(CatalogSnapshot.HEADER_SIZE + index * CatalogSnapshot.RECORD_SIZE + 4);
+	}
+
+	/**
+	 * Returns the string table id of the given string, comparing its UTF-8 bytes to the mapped table.
+	 * @param string String to find.
+	 * @return the id of the string, NULL_ID if the string is null, or MISSING_ID if it isn't in the table.
+	 */
+	public int getStringId(String string) {
+		if (string == null)
+			return NULL_ID;
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		for (int id = 0; id < stringPositions.length; id++) {
+			int position = stringPositions[id];
+			if (buffer.getInt(position) != bytes.length)
+				continue;
+			int i = 0;
+			while (i < bytes.length && buffer.get(position + 4 + i) == bytes[i]) {
+				i++;
+			}
+			if (i == bytes.length)
+				return id;
+		}
+		return MISSING_ID;
+	}
+
+	/**
+	 * Returns the read-only decibel values of every headphone in the catalog.
+	 * The values of the headphone at index i start at i * CURVE_LENGTH.
+	 * @return the decibel values of every headphone in the catalog.
+	 */
+	public DoubleBuffer getCurves() {
+		return curves;
+	}
+
+	/**
+	 * Returns the read-only average decibel value of each headphone in the catalog.
+	 * @return the average decibel value of each headphone in the catalog.
+	 */
+	public DoubleBuffer getMeans() {
+		return means;
+	}
+
+	/**
+	 * Returns the number of headphones in the catalog.
+	 * @return the number of headphones in the catalog.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of headphones of the given type in the catalog.
+	 * @param type Type of headphones to count.
+	 * @return the number of headphones of the given type in the catalog.
+	 */
+	public int count(String type) {
+		int typeId = getStringId(type);
+		if (typeId == MISSING_ID)
+			return 0;
+		int count = 0;
+		for (int index = 0; index < size; index++) {
+			if (getTypeId(index) == typeId)
+				count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the string with the given id in the string table.
+	 * @param id Id of the string.
+	 * @return the string with the given id, or null if the id is the null id.
+	 */
+	private String getString(int id) {
+		if (id == NULL_ID)
+			return null;
+		int position = stringPositions[id];
+		byte[] bytes = new byte[buffer.getInt(position)];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(position + 4 + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Returns a read-only view of a section of doubles in the snapshot.
+	 * @param offsetPosition Position in the header of the section's offset.
+	 * @param length Number of doubles in the section.
+	 * @return a read-only view of the section.
+	 */
+	private DoubleBuffer section(int offsetPosition, int length) {
+		ByteBuffer section = buffer.duplicate();
+		// Positions are set through Buffer so the class also runs on Java 8.
+		((Buffer) section).position((int) buffer.getLong(offsetPosition));
+		((Buffer) section).limit(section.position() + length * 8);
+		return section.slice().order(CatalogSnapshot.ORDER).asDoubleBuffer().asReadOnlyBuffer();
+	}
+
+	/**
+	 * Throws an exception if there is no headphone at the given index.
+	 * @param index Index to check.
+	 */
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("No headphone at index " + index + ".");
+		}
+	}
+
+}
@@ -0,0 +1,84 @@
+package io;
+
+/**
+ * Link to a headphone measurement PDF found on the measurements page,
+ * along with the locations it should be stored at.
+ *
+ * @author Adam Luck
+ */
+public class MeasurementLink {
+
+	/** Type of headphone the measurements are for. */
+	private String type;
+	/** URL of the measurement PDF. */
+	private String url;
+	/** Name used for the directory and files of the headphone. */
+	private String directoryName;
+	/** Path the measurement PDF is saved at. */
+	private String filePath;
+	/** Hash of the contents of the saved measurement PDF, or null if it hasn't been hashed. */
+	private String hash;
+
+	/**
+	 * Constructor for measurement links.
+	 * @param type Type of headphone the measurements are for.
+	 * @param url URL of the measurement PDF.
+	 * @param directoryName Name used for the directory and files of the headphone.
+	 * @param filePath Path the measurement PDF is saved at.
+	 */
+	public MeasurementLink(String type, String url, String directoryName, String filePath) {
+		this.type = type;
+		this.url = url;
+		this.directoryName = directoryName;
+		this.filePath = filePath;
+	}
+
+	/**
+	 * Returns the type of headphone the measurements are for.
+	 * @return the type of headphone the measurements are for.
+	 */
+	public String getType() {
+		return type;
+	}
+
+	/**
+	 * Returns the URL of the measurement PDF.
+	 * @return the URL of the measurement PDF.
+	 */
+	public String getURL() {
+		return url;
+	}
+
+	/**
+	 * Returns the name used for the directory and files of the headphone.
+	 * @return the name used for the directory and files of the headphone.
+	 */
+	public String getDirectoryName() {
+		return directoryName;
+	}
+
+	/**
+	 * Returns the path the measurement PDF is saved at.
+	 * @return the path the measurement PDF is saved at.
+	 */
+	public String getFilePath() {
+		return filePath;
+	}
+
+	/**
+	 * Returns the hash of the contents of the saved measurement PDF.
+	 * @return the hash of the contents of the saved PDF, or null if it hasn't been hashed.
+	 */
+	public String getHash() {
+		return hash;
+	}
+
+	/**
+	 * Sets the hash of the contents of the saved measurement PDF, so it doesn't have to be hashed again.
+	 * @param hash Hash of the contents of the saved PDF, or null if it hasn't been hashed.
+	 */
+	public void setHash(String hash) {
+		this.hash = hash;
+	}
+
+}
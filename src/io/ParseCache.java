@@ -0,0 +1,227 @@
+package io;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import data.Headphone;
+import parse.MeasurementParser;
+import parse.ParseMode;
+
+/**
+ * Persistent cache of parsed measurement PDFs, keyed by the SHA-256 hash of each PDF's contents
+ * and the version of the parser that read it. A PDF that has already been parsed can be
+ * recognized by its hash even if its URL changed or its measurement file was lost, and entries
+ * from other parser versions are dropped when the cache is loaded. Entries read in each parse mode
+ * are kept apart, since the version includes the mode, so changing the mode doesn't reuse values
+ * read the other way.
+ *
+ * @author Adam Luck
+ */
+public class ParseCache {
+
+	/** Separator between the fields of each cache entry. */
+	private static final String SEPARATOR = "\t";
+
+	/** File the cache is stored in. */
+	private File file;
+	/** Map of PDF hashes and parser versions to the name and dBVals parsed from the PDF. */
+	private Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+	/**
+	 * Constructor for the cache, which loads any entries already stored in the file
+	 * that were made by the current parser version in any mode.
+	 * @param file File the cache is stored in.
+	 * @throws IOException if the cache file exists but can't be read or rewritten.
+	 */
+	public ParseCache(File file) throws IOException {
+		this.file = file;
+		if (file.exists()) {
+			load();
+		}
+	}
+
+	/**
+	 * Returns the SHA-256 hash of the contents of the given file as a hex string.
+	 * @param pdf File to hash.
+	 * @return the SHA-256 hash of the contents of the file.
+	 * @throws IOException if the file can't be read.
+	 */
+	public static String hash(File pdf) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		byte[] buffer = new byte[8192];
+		try (InputStream in = new FileInputStream(pdf)) {
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				digest.update(buffer, 0, read);
+			}
+		}
+		StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest()) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * Returns a new headphone with the given type and url and the name and dBVals cached
+	 * for the given hash and parser version, or null if they aren't in the cache.
+	 * @param hash Hash of the measurement PDF.
+	 * @param version Version of the parser the measurements have to have been read by.
+	 * @param type Type of headphone to be created.
+	 * @param url URL of the headphone's PDF.
+	 * @return a new headphone with the cached measurements, or null if there aren't any.
+	 */
+	public Headphone get(String hash, String version, String type, String url) {
+		Entry entry = entries.get(key(hash, version));
+		if (entry == null)
+			return null;
+		return new Headphone(entry.name, type, url, entry.dBVals.clone());
+	}
+
+	/**
+	 * Caches the name and dBVals of the headphone parsed from the PDF with the given hash.
+	 * @param hash Hash of the measurement PDF.
+	 * @param version Version of the parser that read the measurements, in the mode that read them.
+	 * @param headphone Headphone parsed from the PDF.
+	 * @throws IOException if the entry can't be written to the cache file.
+	 */
+	public synchronized void put(String hash, String version, Headphone headphone) throws IOException {
+		String key = key(hash, version);
+		if (entries.containsKey(key))
+			return;
+		Entry entry = new Entry(headphone.getName(), headphone.getDBVals().clone());
+		try (BufferedWriter bw = new BufferedWriter(new FileWriter(file, true))) {
+			bw.write(format(key, entry));
+		}
+		entries.put(key, entry);
+	}
+
+	/**
+	 * Returns the number of entries in the cache.
+	 * @return the number of entries in the cache.
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Loads the entries of the current parser version in any mode from the cache file,
+	 * rewriting the file without the stale ones if there were any.
+	 * @throws IOException if the cache file can't be read or rewritten.
+	 */
+	private void load() throws IOException {
+		List<String> lines = Files.readAllLines(file.toPath());
+		boolean stale = false;
+		for (String line : lines) {
+			// Lines are hash, version, dBVals, and name, with the name last since it's free text.
+			String[] fields = line.split(SEPARATOR, 4);
+			if (fields.length != 4 || !isCurrent(fields[1])) {
+				stale = true;
+				continue;
+			}
+			String[] split = fields[2].replace("[", "").replace("]", "").split(", ");
+			double[] dBVals = new double[split.length];
+			try {
+				for (int i = 0; i < dBVals.length; i++) {
+					dBVals[i] = Double.parseDouble(split[i]);
+				}
+			} catch (NumberFormatException e) {
+				stale = true;
+				continue;
+			}
+			entries.put(key(fields[0], fields[1]), new Entry(fields[3], dBVals));
+		}
+		if (stale) {
+			rewrite();
+		}
+	}
+
+	/**
+	 * Replaces the cache file with one containing only the loaded entries.
+	 * @throws IOException if the cache file can't be written.
+	 */
+	private void rewrite() throws IOException {
+		File temp = new File(file.getPath() + ".tmp");
+		try (BufferedWriter bw = new BufferedWriter(new FileWriter(temp))) {
+			for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+				bw.write(format(entry.getKey(), entry.getValue()));
+			}
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Returns whether the given version is the current parser version in one of its modes.
+	 * @param version Version of the parser.
+	 * @return whether the version is the current parser version.
+	 */
+	private static boolean isCurrent(String version) {
+		for (ParseMode parseMode : ParseMode.values()) {
+			if (MeasurementParser.getVersion(parseMode).equals(version))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the key of the entry for the given hash and parser version, which is also
+	 * how the two start each line of the cache file.
+	 * @param hash Hash of the measurement PDF.
+	 * @param version Version of the parser that read the measurements.
+	 * @return the key of the entry.
+	 */
+	private static String key(String hash, String version) {
+		return hash + SEPARATOR + version;
+	}
+
+	/**
+	 * Returns the line of the cache file for the given key and entry.
+	 * @param key Key of the entry, which is the hash of the measurement PDF and the parser version.
+	 * @param entry Measurements parsed from the PDF.
+	 * @return the line of the cache file for the given key and entry.
+	 */
+	private static String format(String key, Entry entry) {
+		return key + SEPARATOR + Arrays.toString(entry.dBVals)
+				+ SEPARATOR + entry.name.replace(SEPARATOR, " ") + "\n";
+	}
+
+	/**
+	 * Name and dBVals parsed from a measurement PDF.
+	 */
+	private static class Entry {
+
+		/** Name parsed from the PDF. */
+		private final String name;
+		/** Decibel values parsed from the PDF. */
+		private final double[] dBVals;
+
+		/**
+		 * Constructor for entries.
+		 * @param name Name parsed from the PDF.
+		 * @param dBVals Decibel values parsed from the PDF.
+		 */
+		private Entry(String name, double[] dBVals) {
+			this.name = name;
+			this.dBVals = dBVals;
+		}
+
+	}
+
+}
@@ -0,0 +1,24 @@
+package io.virtual;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Creates executors that run each download on its own virtual thread, named after the download stage.
+ * Only built by the virtual profile, and only used by IngestPipeline when virtual threads are asked for.
+ *
+ * @author Adam Luck
+ */
+public class VirtualDownloadExecutor implements Supplier<ExecutorService> {
+
+	/**
+	 * Returns a new executor that starts a virtual thread for each task.
+	 * @return a new executor that starts a virtual thread for each task.
+	 */
+	@Override
+	public ExecutorService get() {
+		return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("ingest-download-", 0).factory());
+	}
+
+}
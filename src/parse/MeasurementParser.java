@@ -1,15 +1,22 @@
 package parse;
 import java.awt.Color;
+import java.awt.Graphics2D;
 import java.awt.Point;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.io.File;
 import java.io.IOException;
 import java.text.DecimalFormat;
+import java.util.concurrent.Semaphore;
 
+import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.encryption.InvalidPasswordException;
 import org.apache.pdfbox.rendering.PDFRenderer;
 import org.apache.pdfbox.text.PDFTextStripper;
+import org.apache.pdfbox.text.PDFTextStripperByArea;
 
 import data.Headphone;
 
@@ -47,9 +54,42 @@ public class MeasurementParser {
 			991, 1037, 1068, 1093, 1114, 1131, 1145, 1159, 1171
 	};
 	
+	/** Version of the parser. Increase it whenever a change alters the values parsed from a PDF. */
+	public static final int PARSER_VERSION = 1;
+	/** DPI the coordinates above are measured at. */
+	static final float RENDER_DPI = 350;
+	/** X-value of the left edge of the region rendered when parsing as an image. */
+	static final int GRAPH_LEFT = Math.min(STRETCH_CHECK.x, Math.min(NS_FR_X_VALS[0], S_FR_X_VALS[0]));
+	/** Y-value of the top edge of the region rendered when parsing as an image. */
+	static final int GRAPH_TOP = Math.min(STRETCH_CHECK.y, Math.min(NS_FR_TOP, S_FR_TOP));
+	/** Width of the region rendered when parsing as an image. */
+	static final int GRAPH_WIDTH = Math.max(NS_FR_X_VALS[NS_FR_X_VALS.length - 1],
+			S_FR_X_VALS[S_FR_X_VALS.length - 1]) + 1 - GRAPH_LEFT;
+	/** Height of the region rendered when parsing as an image. */
+	static final int GRAPH_HEIGHT = Math.max(NS_FR_BOT, S_FR_BOT) - GRAPH_TOP;
+	/** Image each thread renders graphs into, reused between documents. */
+	private static final ThreadLocal<BufferedImage> GRAPH_IMAGE = ThreadLocal.withInitial(
+			() -> new BufferedImage(GRAPH_WIDTH, GRAPH_HEIGHT, BufferedImage.TYPE_INT_RGB));
+	/** Name of the region of the first page that the headphone's name is read from. */
+	private static final String NAME_REGION = "name";
+	/** Height in points of the header above the graph, which contains the headphone's name. */
+	static final float NAME_REGION_HEIGHT = GRAPH_TOP * 72 / RENDER_DPI;
+	/** Way decibel values are read from measurement PDFs. Raster until vector parsing matches it on real PDFs. */
+	private static volatile ParseMode mode = ParseMode.RASTER;
+	/** Way the decibel values of the last PDF parsed on each thread were read. */
+	private static final ThreadLocal<ParseMode> PARSED_MODE = new ThreadLocal<ParseMode>();
+	/** Default number of PDFs that can be open at once. */
+	public static final int DEFAULT_MAX_OPEN_DOCUMENTS = Runtime.getRuntime().availableProcessors();
+	/** Default number of bytes of each open PDF kept in memory before the rest goes to a scratch file. */
+	public static final long DEFAULT_MAIN_MEMORY_BYTES = 16L * 1024 * 1024;
+	/** Permits for the PDFs that can be open at once. */
+	private static volatile Semaphore openDocuments = new Semaphore(DEFAULT_MAX_OPEN_DOCUMENTS, true);
+	/** Number of bytes of each open PDF kept in memory before the rest goes to a scratch file. */
+	private static volatile long mainMemoryBytes = DEFAULT_MAIN_MEMORY_BYTES;
+	
 	/**
-	 * Renders a PDF file as an image, which is then passed to and parsed by
-	 * parseImage to get an array of decibel values.
+	 * Reads the frequency response graph of a PDF file, either from its path
+	 * operators or by rendering it as an image, to get an array of decibel values.
 	 * Creates and returns a new Headphone object.
 	 * @param path Path to the PDF to parse.
 	 * @param type Type of headphone to be created.
@@ -61,22 +101,63 @@ public class MeasurementParser {
 	public static Headphone parseMeasurements(String path, String type, String url)
 			throws InvalidPasswordException, IOException, InvalidDocumentException {
 		File file = new File(path);
-		PDDocument document = PDDocument.load(file);
-		String name = parseName(document);
-		double[] dBVals = parseDBVals(document);
-		document.close();
-		return new Headphone(name, type, url, dBVals);
+		// Wait for one of the other open PDFs to be closed if too many are open.
+		Semaphore permits = openDocuments;
+		try {
+			permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting to open " + file.getName() + ".");
+		}
+		try (PDDocument document = PDDocument.load(file, MemoryUsageSetting.setupMixed(mainMemoryBytes))) {
+			String name = parseName(document);
+			double[] dBVals = parseDBVals(document);
+			return new Headphone(name, type, url, dBVals);
+		} finally {
+			permits.release();
+		}
+	}
+
+	/**
+	 * Sets how much memory parsing PDFs can use: how many PDFs can be open at once, and how many
+	 * bytes of each are kept in memory before the rest is buffered in a scratch file. Graph images
+	 * are already reused by each thread, so these bound the rest of the memory used by parsing.
+	 * Should be set before parsing starts; PDFs already open keep the old limits.
+	 * @param maxOpenDocuments Number of PDFs that can be open at once.
+	 * @param maxMainMemoryBytes Number of bytes of each open PDF kept in memory.
+	 */
+	public static void setMemoryBudget(int maxOpenDocuments, long maxMainMemoryBytes) {
+		if (maxOpenDocuments < 1 || maxMainMemoryBytes < 0) {
+			throw new IllegalArgumentException("Memory budget must allow at least one open document.");
+		}
+		openDocuments = new Semaphore(maxOpenDocuments, true);
+		mainMemoryBytes = maxMainMemoryBytes;
 	}
 
 	/**
 	 * Parses the name from a headphone measurement PDF.
+	 * Only the text in the header above the graph on the first page is read,
+	 * unless the name isn't there, in which case the text of the whole first page is read.
+	 * Either way, the text is read in the order it's drawn rather than sorted by position.
 	 * @param document PDDocument to parse.
 	 * @return the name of the headphone parsed from the document.
 	 * @throws IOException if the program has issues loading the file.
 	 */
-	private static String parseName(PDDocument document) throws IOException {
-		PDFTextStripper stripper = new PDFTextStripper();
-		String text = stripper.getText(document);
+	static String parseName(PDDocument document) throws IOException {
+		PDPage page = document.getPage(0);
+		PDFTextStripperByArea regionStripper = new PDFTextStripperByArea();
+		// Read the text in the order it's drawn, like the whole-page stripper the name was originally read with.
+		regionStripper.setSortByPosition(false);
+		regionStripper.addRegion(NAME_REGION,
+				new Rectangle2D.Float(0, 0, page.getCropBox().getWidth(), NAME_REGION_HEIGHT));
+		regionStripper.extractRegions(page);
+		String text = regionStripper.getTextForRegion(NAME_REGION);
+		if (!containsName(text)) {
+			PDFTextStripper stripper = new PDFTextStripper();
+			stripper.setStartPage(1);
+			stripper.setEndPage(1);
+			text = stripper.getText(document);
+		}
 		String name = text.substring(text.indexOf("reserved.") + 11, text.indexOf("%") - 2);
 		name = name.replaceAll("w/", "with");
 		name = name.replaceAll("[\\/:*?'\"<>|]", " ");
@@ -85,7 +166,62 @@ public class MeasurementParser {
 	}
 
 	/**
-	 * Parses the decibel values from a headphone measurement PDF.
+	 * Returns whether the text contains the markers the name is read from between.
+	 * @param text Text to check.
+	 * @return whether the name can be read from the text.
+	 */
+	private static boolean containsName(String text) {
+		int start = text.indexOf("reserved.");
+		return start >= 0 && text.indexOf("%") - 2 >= start + 11;
+	}
+
+	/**
+	 * Sets the way decibel values are read from measurement PDFs.
+	 * @param parseMode Way to read decibel values from measurement PDFs.
+	 */
+	public static void setMode(ParseMode parseMode) {
+		mode = parseMode;
+	}
+
+	/**
+	 * Returns the way decibel values are read from measurement PDFs.
+	 * @return the way decibel values are read from measurement PDFs.
+	 */
+	public static ParseMode getMode() {
+		return mode;
+	}
+
+	/**
+	 * Returns the version of the parser in its current mode, which identifies
+	 * the values it would parse from a PDF.
+	 * @return the version of the parser in its current mode.
+	 */
+	public static String getVersion() {
+		return getVersion(mode);
+	}
+
+	/**
+	 * Returns the version of the parser in the given mode, which identifies
+	 * the values it reads from a PDF in that mode.
+	 * @param parseMode Way decibel values are read.
+	 * @return the version of the parser in the given mode.
+	 */
+	public static String getVersion(ParseMode parseMode) {
+		return PARSER_VERSION + "-" + parseMode;
+	}
+
+	/**
+	 * Returns the way the decibel values of the last PDF parsed on the calling thread were read,
+	 * which is RASTER if vector mode fell back to it.
+	 * @return the way the last PDF parsed on the calling thread was read, or null if none has been.
+	 */
+	public static ParseMode getParsedMode() {
+		return PARSED_MODE.get();
+	}
+
+	/**
+	 * Parses the decibel values from a headphone measurement PDF using the current mode.
+	 * In vector mode, the document is parsed as an image if its curves can't be read directly.
 	 * @param document PDDocument to parse.
 	 * @throws InvalidDocumentException if the PDF being parsed is invalid.
 	 * @throws IOException if the program has issues loading the file.
@@ -93,10 +229,77 @@ public class MeasurementParser {
 	 */
 	private static double[] parseDBVals(PDDocument document)
 			throws InvalidDocumentException, IOException {
+		if (mode == ParseMode.VECTOR) {
+			try {
+				double[] dBVals = parseVectorDBVals(document);
+				PARSED_MODE.set(ParseMode.VECTOR);
+				return dBVals;
+			} catch (InvalidDocumentException | IOException e) {
+				// Fall back to parsing the rendered page.
+			}
+		}
+		double[] dBVals = parseRasterDBVals(document);
+		PARSED_MODE.set(ParseMode.RASTER);
+		return dBVals;
+	}
+
+	/**
+	 * Parses the decibel values from the path operators of a headphone measurement PDF.
+	 * @param document PDDocument to parse.
+	 * @throws InvalidDocumentException if the curves couldn't be found in the document.
+	 * @throws IOException if the program has issues reading the document.
+	 * @return the array of decibel values parsed from the document.
+	 */
+	private static double[] parseVectorDBVals(PDDocument document)
+			throws InvalidDocumentException, IOException {
 		
-		// Render the document/image.
-		PDFRenderer renderer = new PDFRenderer(document);
-		BufferedImage image = renderer.renderImageWithDPI(0, 350);
+		// Read the curves from the page.
+		VectorCurveExtractor extractor = new VectorCurveExtractor(document.getPage(0), RENDER_DPI);
+		extractor.extract();
+		
+		// Determine whether the graph is stretched or not.
+		boolean stretched = !extractor.isPainted(STRETCH_CHECK);
+		int top = stretched ? S_FR_TOP : NS_FR_TOP;
+		int bot = stretched ? S_FR_BOT : NS_FR_BOT;
+		int[] xVals = stretched ? S_FR_X_VALS : NS_FR_X_VALS;
+		
+		// Calculate decibel values for each frequency in xVals.
+		double[] dBVals = new double[xVals.length];
+		for (int i = 0; i < xVals.length; i++) {
+			int redY = extractor.findRedY(xVals[i], top, bot);
+			int blueY = extractor.findBlueY(xVals[i], top, bot);
+			// A rendered column is only scanned down to the first curve, so ignore the lower curve
+			// unless the two overlap.
+			if (redY >= 0 && blueY > redY + 1)
+				blueY = -1;
+			else if (blueY >= 0 && redY > blueY + 1)
+				redY = -1;
+			dBVals[i] = calculateDBVal(redY >= 0, redY, blueY >= 0, blueY, top, bot);
+		}
+		return dBVals;
+	}
+
+	/**
+	 * Parses the decibel values from the rendered page of a headphone measurement PDF.
+	 * @param document PDDocument to parse.
+	 * @throws InvalidDocumentException if the PDF being parsed is invalid.
+	 * @throws IOException if the program has issues loading the file.
+	 * @return the array of decibel values parsed from the document.
+	 */
+	private static double[] parseRasterDBVals(PDDocument document)
+			throws InvalidDocumentException, IOException {
+		
+		// Render the graph area of the document/image.
+		return scanDBVals(renderGraph(document));
+	}
+
+	/**
+	 * Reads the decibel values from a rendered graph area. Nothing is allocated but the returned array.
+	 * @param image Graph area rendered by renderGraph.
+	 * @throws InvalidDocumentException if a column doesn't contain either curve.
+	 * @return the array of decibel values read from the graph.
+	 */
+	static double[] scanDBVals(BufferedImage image) throws InvalidDocumentException {
 		
 		// Determine whether the image is stretched or not.
 		boolean stretched = checkStretch(image);
@@ -115,9 +318,12 @@ public class MeasurementParser {
 			xVals = NS_FR_X_VALS;
 		}
 		
+		// Read the pixels straight from the image's backing array.
+		int[] pixels = getPixels(image);
+		int stride = image.getWidth();
+		
 		// Calculate decibel values for each frequency in xVals.
 		double[] dBVals = new double[xVals.length];
-		int botTopRange = bot - top;
 		for (int i = 0; i < xVals.length; i++) {
 			boolean foundRed = false;
 			boolean foundBlue = false;
@@ -126,66 +332,116 @@ public class MeasurementParser {
 			// Get most red/blue pixel at the given x-coordinate between top and bottom
 			int mostRed = 0;
 			int mostBlue = 0;
-			// Start at the top of the graph and work down.
-			for (int yVal = top; yVal < bot; yVal++) {
-				Color color = new Color(image.getRGB(xVals[i], yVal));
-				int red = color.getRed();
-				int blue = color.getBlue();
+			// Start at the top of the graph and work down the column.
+			int index = (top - GRAPH_TOP) * stride + xVals[i] - GRAPH_LEFT;
+			for (int yVal = top; yVal < bot; yVal++, index += stride) {
+				int pixel = pixels[index];
+				int red = (pixel >> 16) & 0xFF;
+				int green = (pixel >> 8) & 0xFF;
+				int blue = pixel & 0xFF;
 				// Don't count grayscale pixels.
-				if (red == blue && red == color.getGreen()) {
+				if (red == blue && red == green) {
 					continue;
 				}
 				else if (red > mostRed && red > blue) {
 					foundRed = true;
 					mostRed = red;
 					finalRedY = yVal;
-					if (mostRed == Color.RED.getRed())
+					if (mostRed == 0xFF)
 						break;
 				}
 				else if (blue > mostBlue && blue > red) {
 					foundBlue = true;
 					mostBlue = blue;
 					finalBlueY = yVal;
-					if (mostBlue == Color.BLUE.getBlue())
+					if (mostBlue == 0xFF)
 						break;
 				}
 			}
-			
-			// Calculate the final Y value based on the red and blue y values found.
-			int finalYVal = 0;
-			if (foundRed && foundBlue) {
-				finalYVal = (finalRedY + finalBlueY) / 2;
-			}
-			else if (foundRed) {
-				finalYVal = finalRedY;
-			}
-			else if (foundBlue) {
-				finalYVal = finalBlueY;
-			} else {
-				throw new InvalidDocumentException("Couldn't parse measurements.");
-			}
-			
-			// Do some math to calculate a rounded decibel value using the graph proportions.
-			int distFromBot = bot - finalYVal;
-			double propDistFromBot = (double) distFromBot / botTopRange;
-			double dBFromBot = propDistFromBot * DB_RANGE;
-			double totalDB = dBFromBot + DB_MIN;
-			totalDB = Math.round(totalDB * 100.0) / 100.0;
-			dBVals[i] = totalDB;
+			dBVals[i] = calculateDBVal(foundRed, finalRedY, foundBlue, finalBlueY, top, bot);
 		}
 		return dBVals;
 	}
 
+	/**
+	 * Calculates the rounded decibel value of a graph column from the
+	 * y-values of the red and blue curves found in it.
+	 * @param foundRed Whether the red curve was found.
+	 * @param finalRedY Y-value of the red curve.
+	 * @param foundBlue Whether the blue curve was found.
+	 * @param finalBlueY Y-value of the blue curve.
+	 * @param top Y-value of the top of the graph.
+	 * @param bot Y-value of the bottom of the graph.
+	 * @return the decibel value of the column.
+	 * @throws InvalidDocumentException if neither curve was found.
+	 */
+	private static double calculateDBVal(boolean foundRed, int finalRedY, boolean foundBlue, int finalBlueY,
+			int top, int bot) throws InvalidDocumentException {
+		// Calculate the final Y value based on the red and blue y values found.
+		int finalYVal = 0;
+		if (foundRed && foundBlue) {
+			finalYVal = (finalRedY + finalBlueY) / 2;
+		}
+		else if (foundRed) {
+			finalYVal = finalRedY;
+		}
+		else if (foundBlue) {
+			finalYVal = finalBlueY;
+		} else {
+			throw new InvalidDocumentException("Couldn't parse measurements.");
+		}
+		
+		// Do some math to calculate a rounded decibel value using the graph proportions.
+		int distFromBot = bot - finalYVal;
+		double propDistFromBot = (double) distFromBot / (bot - top);
+		double dBFromBot = propDistFromBot * DB_RANGE;
+		double totalDB = dBFromBot + DB_MIN;
+		totalDB = Math.round(totalDB * 100.0) / 100.0;
+		return totalDB;
+	}
+
+	/**
+	 * Renders the graph area of the first page of the document into this thread's graph image.
+	 * The image is translated so pixel (x, y) of the full page rendered at RENDER_DPI is pixel
+	 * (x - GRAPH_LEFT, y - GRAPH_TOP) of the returned image.
+	 * @param document PDDocument to render.
+	 * @return this thread's graph image containing the rendered graph area.
+	 * @throws IOException if the program has issues rendering the document.
+	 */
+	static BufferedImage renderGraph(PDDocument document) throws IOException {
+		BufferedImage image = GRAPH_IMAGE.get();
+		Graphics2D graphics = image.createGraphics();
+		try {
+			graphics.setBackground(Color.WHITE);
+			graphics.clearRect(0, 0, GRAPH_WIDTH, GRAPH_HEIGHT);
+			graphics.translate(-GRAPH_LEFT, -GRAPH_TOP);
+			new PDFRenderer(document).renderPageToGraphics(0, graphics, RENDER_DPI / 72f);
+		} finally {
+			graphics.dispose();
+		}
+		return image;
+	}
+
+	/**
+	 * Returns the backing array of a graph image, which holds one RGB int per pixel in rows
+	 * of the image's width. Reading it directly avoids a call and a Color per pixel.
+	 * @param image Graph image to get the pixels of.
+	 * @return the backing array of the graph image.
+	 */
+	private static int[] getPixels(BufferedImage image) {
+		return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+	}
+
 	/**
 	 * Returns whether the image is stretched.
-	 * @param image Image to check.
+	 * @param image Rendered graph area to check.
 	 * @return whether the image is stretched.
 	 */
 	private static boolean checkStretch(BufferedImage image) {
 		// Check where the corner of the frequency response graph should be.
-		Color color = new Color(image.getRGB(STRETCH_CHECK.x, STRETCH_CHECK.y));
+		int pixel = getPixels(image)[(STRETCH_CHECK.y - GRAPH_TOP) * image.getWidth() + STRETCH_CHECK.x - GRAPH_LEFT];
 		// If it's white, the image is stretched.
-		return color.equals(Color.WHITE);
+		return (pixel & 0xFFFFFF) == 0xFFFFFF;
 	}
 	
 	
@@ -0,0 +1,18 @@
+package parse;
+
+/**
+ * Ways of reading the frequency response curves from a measurement PDF.
+ *
+ * @author Adam Luck
+ */
+public enum ParseMode {
+
+	/**
+	 * Reads the curves from the page's path operators, falling back to RASTER if that fails.
+	 * Values can differ from RASTER by a few tenths of a decibel, so it has to be chosen explicitly.
+	 */
+	VECTOR,
+	/** Renders the page and scans the pixel columns of the graph. */
+	RASTER
+
+}
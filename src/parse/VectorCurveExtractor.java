@@ -0,0 +1,330 @@
+package parse;
+
+import java.awt.Point;
+import java.awt.geom.Line2D;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.pdfbox.contentstream.PDFGraphicsStreamEngine;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.graphics.color.PDColor;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImage;
+
+/**
+ * Reads the path operators of a page's content stream and keeps the red and blue
+ * stroked curves, so frequency response graphs can be parsed without rendering the page.
+ * All coordinates are converted to the pixel space of the page rendered at the given DPI,
+ * which lets the same coordinate tables be used as when parsing a rendered image.
+ *
+ * @author Adam Luck
+ */
+class VectorCurveExtractor extends PDFGraphicsStreamEngine {
+
+	/** Number of line segments each bezier curve is flattened into. */
+	private static final int CURVE_STEPS = 8;
+
+	/** Scale from PDF units to pixels. */
+	private float scale;
+	/** Left edge of the page in PDF units. */
+	private float pageLeft;
+	/** Top edge of the page in PDF units. */
+	private float pageTop;
+	/** Segments of the path currently being built, in pixel coordinates. */
+	private List<Line2D.Float> path = new ArrayList<Line2D.Float>();
+	/** Start of the current subpath, in pixel coordinates. */
+	private Point2D.Float subpathStart;
+	/** Current point of the path, in pixel coordinates. */
+	private Point2D.Float current;
+	/** Segments of stroked red paths. */
+	private List<Line2D.Float> redSegments = new ArrayList<Line2D.Float>();
+	/** Half of the line width of each red segment, in pixels. */
+	private List<Float> redWidths = new ArrayList<Float>();
+	/** Segments of stroked blue paths. */
+	private List<Line2D.Float> blueSegments = new ArrayList<Line2D.Float>();
+	/** Half of the line width of each blue segment, in pixels. */
+	private List<Float> blueWidths = new ArrayList<Float>();
+	/** Bounds of non-white fills and of stroked non-white segments widened by their line width. */
+	private List<Rectangle2D.Float> painted = new ArrayList<Rectangle2D.Float>();
+
+	/**
+	 * Constructor for the extractor.
+	 * @param page Page to extract curves from.
+	 * @param dpi DPI of the pixel space the coordinates are converted to.
+	 */
+	VectorCurveExtractor(PDPage page, float dpi) {
+		super(page);
+		PDRectangle cropBox = page.getCropBox();
+		scale = dpi / 72f;
+		pageLeft = cropBox.getLowerLeftX();
+		pageTop = cropBox.getUpperRightY();
+	}
+
+	/**
+	 * Processes the page given to the constructor.
+	 * @throws IOException if the page's content stream can't be read.
+	 */
+	void extract() throws IOException {
+		processPage(getPage());
+	}
+
+	/**
+	 * Returns the y-value of the topmost pixel touched by the red curve at the given
+	 * x-value between top (inclusive) and bot (exclusive), or -1 if there isn't one.
+	 * @param x X-value of the pixel column to check.
+	 * @param top Topmost y-value to check.
+	 * @param bot Bottommost y-value to check.
+	 * @return the y-value of the topmost pixel of the red curve in the column.
+	 */
+	int findRedY(int x, int top, int bot) {
+		return findTopY(redSegments, redWidths, x, top, bot);
+	}
+
+	/**
+	 * Returns the y-value of the topmost pixel touched by the blue curve at the given
+	 * x-value between top (inclusive) and bot (exclusive), or -1 if there isn't one.
+	 * @param x X-value of the pixel column to check.
+	 * @param top Topmost y-value to check.
+	 * @param bot Bottommost y-value to check.
+	 * @return the y-value of the topmost pixel of the blue curve in the column.
+	 */
+	int findBlueY(int x, int top, int bot) {
+		return findTopY(blueSegments, blueWidths, x, top, bot);
+	}
+
+	/**
+	 * Returns whether a non-white line or area is drawn over the given pixel.
+	 * @param pixel Pixel to check.
+	 * @return whether a non-white line or area is drawn over the given pixel.
+	 */
+	boolean isPainted(Point pixel) {
+		for (Rectangle2D.Float bounds : painted) {
+			if (bounds.intersects(pixel.x, pixel.y, 1, 1))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the y-value of the topmost pixel in the given column that any of the segments
+	 * touch, or -1 if none of them cross it. Antialiased red and blue lines keep a full red or
+	 * blue channel at their edges, so this is the pixel a scan of the rendered column stops at.
+	 * @param segments Segments to check.
+	 * @param halfWidths Half of the line width of each segment.
+	 * @param x X-value of the pixel column to check.
+	 * @param top Topmost y-value to check.
+	 * @param bot Bottommost y-value to check.
+	 * @return the topmost y-value at which any of the segments cross the column.
+	 */
+	private static int findTopY(List<Line2D.Float> segments, List<Float> halfWidths, int x, int top, int bot) {
+		int topY = -1;
+		for (int i = 0; i < segments.size(); i++) {
+			Line2D.Float segment = segments.get(i);
+			float halfWidth = halfWidths.get(i);
+			// Clip the segment to the column.
+			float left = Math.max(Math.min(segment.x1, segment.x2), x);
+			float right = Math.min(Math.max(segment.x1, segment.x2), x + 1);
+			if (left > right)
+				continue;
+			float y;
+			float dx = segment.x2 - segment.x1;
+			if (Math.abs(dx) < 1e-6f) {
+				y = Math.min(segment.y1, segment.y2) - halfWidth;
+			}
+			else {
+				// Take the top edge of the line, which is further from the center the steeper it is.
+				float slope = (segment.y2 - segment.y1) / dx;
+				float leftY = segment.y1 + slope * (left - segment.x1);
+				float rightY = segment.y1 + slope * (right - segment.x1);
+				y = Math.min(leftY, rightY) - halfWidth * (float) Math.sqrt(1 + slope * slope);
+			}
+			int yVal = (int) Math.floor(y);
+			if (yVal >= top && yVal < bot && (topY < 0 || yVal < topY))
+				topY = yVal;
+		}
+		return topY;
+	}
+
+	/**
+	 * Converts a point in PDF units to pixel coordinates.
+	 * @param x X-value in PDF units.
+	 * @param y Y-value in PDF units.
+	 * @return the point in pixel coordinates.
+	 */
+	private Point2D.Float toPixel(float x, float y) {
+		return new Point2D.Float((x - pageLeft) * scale, (pageTop - y) * scale);
+	}
+
+	/**
+	 * Adds a line from the current point to the given pixel coordinates to the path.
+	 * @param to End of the line in pixel coordinates.
+	 */
+	private void addLine(Point2D.Float to) {
+		if (current != null)
+			path.add(new Line2D.Float(current, to));
+		current = to;
+	}
+
+	/**
+	 * Returns whether the given color is white.
+	 * @param rgb Color to check, as an RGB int.
+	 * @return whether the given color is white.
+	 */
+	private static boolean isWhite(int rgb) {
+		return (rgb & 0xFFFFFF) == 0xFFFFFF;
+	}
+
+	/**
+	 * Keeps the bounds of the current path if its fill is non-white, then clears the path.
+	 * @throws IOException if the non-stroking color can't be converted to RGB.
+	 */
+	private void keepFill() throws IOException {
+		PDColor color = getGraphicsState().getNonStrokingColor();
+		if (!path.isEmpty() && !isWhite(color.toRGB())) {
+			Rectangle2D.Float bounds = new Rectangle2D.Float();
+			bounds.setRect(path.get(0).getBounds2D());
+			for (Line2D.Float segment : path) {
+				bounds.add(segment.getBounds2D());
+			}
+			painted.add(bounds);
+		}
+		endPath();
+	}
+
+	/**
+	 * Keeps the segments of the current path if its stroke is red, blue, or non-white,
+	 * then clears the path.
+	 * @throws IOException if the stroking color can't be converted to RGB.
+	 */
+	private void keepStroke() throws IOException {
+		PDColor color = getGraphicsState().getStrokingColor();
+		int rgb = color.toRGB();
+		int red = (rgb >> 16) & 0xFF;
+		int green = (rgb >> 8) & 0xFF;
+		int blue = rgb & 0xFF;
+		float halfWidth = getGraphicsState().getLineWidth()
+				* getGraphicsState().getCurrentTransformationMatrix().getScalingFactorX() * scale / 2;
+		float paintedWidth = Math.max(halfWidth, 0.5f);
+		for (Line2D.Float segment : path) {
+			if (!isWhite(rgb)) {
+				Rectangle2D bounds = segment.getBounds2D();
+				painted.add(new Rectangle2D.Float((float) bounds.getX() - paintedWidth,
+						(float) bounds.getY() - paintedWidth, (float) bounds.getWidth() + paintedWidth * 2,
+						(float) bounds.getHeight() + paintedWidth * 2));
+			}
+			// Don't count grayscale strokes.
+			if (red == blue && red == green) {
+				continue;
+			}
+			else if (red > blue) {
+				redSegments.add(segment);
+				redWidths.add(halfWidth);
+			}
+			else if (blue > red) {
+				blueSegments.add(segment);
+				blueWidths.add(halfWidth);
+			}
+		}
+		endPath();
+	}
+
+	@Override
+	public void appendRectangle(Point2D p0, Point2D p1, Point2D p2, Point2D p3) throws IOException {
+		moveTo((float) p0.getX(), (float) p0.getY());
+		lineTo((float) p1.getX(), (float) p1.getY());
+		lineTo((float) p2.getX(), (float) p2.getY());
+		lineTo((float) p3.getX(), (float) p3.getY());
+		closePath();
+	}
+
+	@Override
+	public void drawImage(PDImage pdImage) throws IOException {
+		// Images can't contain the curves.
+	}
+
+	@Override
+	public void clip(int windingRule) throws IOException {
+		// Clipping doesn't change which curves are drawn in the graph.
+	}
+
+	@Override
+	public void moveTo(float x, float y) throws IOException {
+		current = toPixel(x, y);
+		subpathStart = current;
+	}
+
+	@Override
+	public void lineTo(float x, float y) throws IOException {
+		addLine(toPixel(x, y));
+	}
+
+	@Override
+	public void curveTo(float x1, float y1, float x2, float y2, float x3, float y3) throws IOException {
+		if (current == null) {
+			moveTo(x3, y3);
+			return;
+		}
+		// Convert the control points to pixels, like the start point, and flatten the curve into lines.
+		Point2D.Float p0 = current;
+		Point2D.Float p1 = toPixel(x1, y1);
+		Point2D.Float p2 = toPixel(x2, y2);
+		Point2D.Float p3 = toPixel(x3, y3);
+		for (int i = 1; i <= CURVE_STEPS; i++) {
+			float t = (float) i / CURVE_STEPS;
+			float u = 1 - t;
+			float x = u * u * u * p0.x + 3 * u * u * t * p1.x + 3 * u * t * t * p2.x + t * t * t * p3.x;
+			float y = u * u * u * p0.y + 3 * u * u * t * p1.y + 3 * u * t * t * p2.y + t * t * t * p3.y;
+			addLine(i == CURVE_STEPS ? p3 : new Point2D.Float(x, y));
+		}
+	}
+
+	@Override
+	public Point2D getCurrentPoint() throws IOException {
+		if (current == null)
+			return null;
+		// Convert back to PDF units.
+		return new Point2D.Float(current.x / scale + pageLeft, pageTop - current.y / scale);
+	}
+
+	@Override
+	public void closePath() throws IOException {
+		if (subpathStart != null)
+			addLine(subpathStart);
+	}
+
+	@Override
+	public void endPath() throws IOException {
+		path.clear();
+		current = null;
+		subpathStart = null;
+	}
+
+	@Override
+	public void strokePath() throws IOException {
+		keepStroke();
+	}
+
+	@Override
+	public void fillPath(int windingRule) throws IOException {
+		// Filled areas are labels and backgrounds, not curves.
+		keepFill();
+	}
+
+	@Override
+	public void fillAndStrokePath(int windingRule) throws IOException {
+		List<Line2D.Float> stroked = new ArrayList<Line2D.Float>(path);
+		keepFill();
+		path.addAll(stroked);
+		keepStroke();
+	}
+
+	@Override
+	public void shadingFill(COSName shadingName) throws IOException {
+		// Shadings can't contain the curves.
+	}
+
+}
@@ -1,11 +1,19 @@
 package util;
 
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
+import data.CurveStore;
 import data.Headphone;
 
 /**
- * Maintains a sorted list of all headphones of a certain type that have been processed.
+ * Maintains a list of all headphones of a certain type that have been processed.
+ * Headphones are indexed by URL and name for constant time lookups, and their information
+ * is kept in a CurveStore that is rebuilt in sorted order when it's needed after the list changes.
+ * Headphones added after the store has been shared are kept in a store of their own until then,
+ * so the shared store is left as it was without being copied more than once.
  * 
  * @author Adam Luck
  */
@@ -13,12 +21,24 @@ public class HeadphoneList {
 
 	/** Type of headphones contained in the list. */
 	private String type;
-	/** Array containing the headphones in the list. */
+	/** Store containing the headphones in the list. */
+	private CurveStore store;
+	/** Array containing the views of the headphones in the list, in the same order as the store. */
 	private Headphone[] list;
 	/** Initial list capacity. */
 	private final int INIT_SIZE = 2;
 	/** Number of items in the list. */
 	private int size;
+	/** Map of URLs to the headphones with those URLs. */
+	private Map<String, Headphone> urlIndex;
+	/** Map of names to the headphones with those names. */
+	private Map<String, Headphone> nameIndex;
+	/** Whether the list and store are in sorted order. */
+	private boolean sorted;
+	/** Whether the store has been returned by getStore, so it must not be added to. */
+	private boolean shared;
+	/** Store containing the headphones added since the store was shared, or null if there aren't any. */
+	private CurveStore added;
 	
 	/**
 	 * Constructor for the list.
@@ -26,8 +46,13 @@ public class HeadphoneList {
 	 */
 	public HeadphoneList(String type) {
 		this.type = type;
+		store = new CurveStore(INIT_SIZE);
 		list = new Headphone[INIT_SIZE];
 		size = 0;
+		urlIndex = new HashMap<String, Headphone>();
+		nameIndex = new HashMap<String, Headphone>();
+		sorted = true;
+		shared = false;
 	}
 	
 	/**
@@ -39,27 +64,42 @@ public class HeadphoneList {
 	}
 
 	/**
-	 * Adds a headphone to the list in sorted order.
+	 * Adds a copy of a headphone to the list.
 	 * @param headphone headphone to add to the list.
 	 */
 	public void add(Headphone headphone) {
-		// Go backwards through the list until the proper index to add at is found.
-		int index = size;
-		while (index > 0 && list[index - 1] != null
-				&& headphone.compareTo(list[index - 1]) < 0) {
-			index--;
-		}
-		// Shift the list.
-		for (int i = size; i > index; i--) {
-			list[i] = list[i - 1];
-		}
-		// Add the headphone to the list.
-		list[index] = headphone;
-		size++;
 		// Grow the list if necessary.
 		if (size >= list.length) {
 			list = Arrays.copyOf(list, list.length * 2);
 		}
+		// Leave a store returned by getStore as it was by adding to a separate store until the next rebuild.
+		CurveStore target = store;
+		if (shared) {
+			if (added == null)
+				added = new CurveStore(INIT_SIZE);
+			target = added;
+		}
+		// Add the headphone to the end of the store, the list, and the indexes.
+		Headphone view = target.get(target.add(headphone));
+		list[size] = view;
+		size++;
+		index(urlIndex, view.getURL(), view);
+		index(nameIndex, view.getName(), view);
+		sorted = false;
+	}
+	
+	/**
+	 * Adds copies of all of the headphones to the list, sorting the list once afterwards.
+	 * @param headphones headphones to add to the list.
+	 */
+	public void addAll(Collection<Headphone> headphones) {
+		if (size + headphones.size() >= list.length) {
+			list = Arrays.copyOf(list, Math.max(list.length * 2, size + headphones.size() + 1));
+		}
+		for (Headphone headphone : headphones) {
+			add(headphone);
+		}
+		sort();
 	}
 	
 	/**
@@ -69,31 +109,7 @@ public class HeadphoneList {
 	 * @return the headphone with the given name if there is one in the list.
 	 */
 	public Headphone getByName(String name) {
-		// If the list is empty.
-		if (size == 0) {
-			return null;
-		}
-		// Use a binary search to find the headphone with the given name.
-		int lowIdx = 0;
-		int highIdx = size - 1;
-		while (lowIdx <= highIdx) {
-			int midIdx = (lowIdx + highIdx) / 2;
-			if (list[midIdx] == null) {
-				return null;
-			}
-			int comparison = name.compareTo(list[midIdx].getName());
-			if (comparison == 0) {
-				return list[midIdx];
-			}
-			else if (comparison < 0) {
-				highIdx = midIdx - 1;
-			}
-			else {
-				lowIdx = midIdx + 1;
-			}
-		}
-		// Return null if the headphone isn't in the list.
-		return null;
+		return nameIndex.get(name);
 	}
 	
 	/**
@@ -103,24 +119,29 @@ public class HeadphoneList {
 	 * @return the headphone with the given url if there is one in the list.
 	 */
 	public Headphone getByURL(String url) {
-		// Look through the links in linear time (since they aren't ordered).
-		for (int i = 0; i < size; i++) {
-			if (list[i].getURL().equals(url)) {
-				return list[i];
-			}
-		}
-		// Return null if the headphone isn't in the list.
-		return null;
+		return urlIndex.get(url);
 	}
 	
 	/**
-	 * Returns the array of headphones represented by this list.
-	 * @return the array of headphones represented by this list.
+	 * Returns the array of headphones represented by this list in sorted order.
+	 * @return the array of headphones represented by this list in sorted order.
 	 */
 	public Headphone[] getAll() {
+		sort();
 		return Arrays.copyOf(list, size);
 	}
 	
+	/**
+	 * Returns the store containing the headphones in this list, in sorted order.
+	 * The store is never changed afterwards, since headphones added to the list later go to a new store.
+	 * @return the store containing the headphones in this list, in sorted order.
+	 */
+	public CurveStore getStore() {
+		sort();
+		shared = true;
+		return store;
+	}
+	
 	/**
 	 * Returns the number of headphones in the list.
 	 * @return the number of headphones in the list.
@@ -128,4 +149,69 @@ public class HeadphoneList {
 	public int size() {
 		return size;
 	}
+
+	/**
+	 * Indexes a headphone under a key unless a headphone that comes before it in sorted order already is,
+	 * so lookups find the first matching headphone in sorted order like a search of the sorted list would.
+	 * Headphones that compare equal keep the one added first, since the sort is stable.
+	 * @param index Index to add the headphone to.
+	 * @param key URL or name of the headphone.
+	 * @param view Headphone to index.
+	 */
+	private static void index(Map<String, Headphone> index, String key, Headphone view) {
+		Headphone current = index.get(key);
+		if (current == null || view.compareTo(current) < 0) {
+			index.put(key, view);
+		}
+	}
+
+	/**
+	 * Rebuilds the store and list in sorted order if the list has changed since it was last sorted.
+	 * The sort is stable, so headphones that compare equal stay in the order they were added.
+	 * Views returned before the rebuild stay valid, since they refer to the old store.
+	 */
+	private void sort() {
+		if (sorted)
+			return;
+		Headphone[] order = Arrays.copyOf(list, size);
+		Arrays.sort(order);
+		rebuild(order);
+		sorted = true;
+	}
+
+	/**
+	 * Copies the headphones to a new store in the given order, and points the list and indexes at the copies.
+	 * @param order Headphones in the list, in the order to store them in. Replaced with the copies.
+	 */
+	private void rebuild(Headphone[] order) {
+		// Copy the headphones to a new store in order, remembering where each one moved.
+		CurveStore newStore = new CurveStore(list.length);
+		Headphone[] moved = new Headphone[size];
+		for (int i = 0; i < size; i++) {
+			Headphone view = newStore.get(newStore.add(order[i]));
+			moved[slot(order[i])] = view;
+			order[i] = view;
+		}
+		// Point the indexes at the moved headphones, which are still the first of their URL and name in sorted order.
+		for (Map.Entry<String, Headphone> entry : urlIndex.entrySet()) {
+			entry.setValue(moved[slot(entry.getValue())]);
+		}
+		for (Map.Entry<String, Headphone> entry : nameIndex.entrySet()) {
+			entry.setValue(moved[slot(entry.getValue())]);
+		}
+		System.arraycopy(order, 0, list, 0, size);
+		store = newStore;
+		added = null;
+		shared = false;
+	}
+
+	/**
+	 * Returns a distinct number below size for each headphone in the list, from its index in the store
+	 * or, for headphones added since the store was shared, its index after the store's headphones.
+	 * @param view Headphone in the list.
+	 * @return the number of the headphone.
+	 */
+	private int slot(Headphone view) {
+		return view.getStore() == store ? view.getIndex() : store.size() + view.getIndex();
+	}
 }
@@ -0,0 +1,152 @@
+package analyze;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import data.CompactCurveStore;
+import data.Headphone;
+import io.CatalogSnapshot;
+import io.MappedCatalog;
+import util.HeadphoneList;
+
+/**
+ * Checks that every way of analyzing a list returns the same headphones as the original analyzer,
+ * for the smallest and largest numbers of headphones that can be returned.
+ *
+ * @author Adam Luck
+ */
+public class AnalyzerTest {
+
+	/** Folder the snapshot is written to. */
+	@ClassRule
+	public static TemporaryFolder folder = new TemporaryFolder();
+
+	/** Number of headphones in the list. */
+	private static final int COUNT = 200;
+	/** List of headphones to compare to. */
+	private static HeadphoneList list;
+	/** Snapshot of the list, mapped. */
+	private static MappedCatalog catalog;
+	/** Parallel threshold before the test. */
+	private int threshold;
+
+	/**
+	 * Makes the list and maps a snapshot of it.
+	 * @throws IOException if the snapshot can't be written or mapped.
+	 */
+	@BeforeClass
+	public static void setUp() throws IOException {
+		list = Catalogs.list(COUNT, 1);
+		File file = new File(folder.getRoot(), "catalog.snapshot");
+		CatalogSnapshot.write(file, Collections.singletonList(list));
+		catalog = new MappedCatalog(file);
+	}
+
+	/**
+	 * Lowers the parallel threshold, so parallel analyses of the list are split into partitions.
+	 */
+	@Before
+	public void lowerThreshold() {
+		threshold = Analyzer.getParallelThreshold();
+		Analyzer.setParallelThreshold(16);
+	}
+
+	/**
+	 * Restores the parallel threshold from before the test.
+	 */
+	@After
+	public void restoreThreshold() {
+		Analyzer.setParallelThreshold(threshold);
+	}
+
+	/**
+	 * Checks that asking for no headphones returns an empty array, like the original analyzer did.
+	 */
+	@Test
+	public void testReturnNone() {
+		checkEveryOverload(0);
+	}
+
+	/**
+	 * Checks that asking for one headphone returns the closest one.
+	 */
+	@Test
+	public void testReturnOne() {
+		checkEveryOverload(1);
+	}
+
+	/**
+	 * Checks that asking for every headphone returns them all in order, with the last left null
+	 * when the base headphone is in the list.
+	 */
+	@Test
+	public void testReturnAll() {
+		checkEveryOverload(COUNT);
+	}
+
+	/**
+	 * Checks that the scalar kernel is used unless the vectorized one is asked for,
+	 * since only the scalar kernel's totals match the original analyzer's exactly.
+	 */
+	@Test
+	public void testScalarKernelIsDefault() {
+		Assume.assumeTrue(System.getProperty(Analyzer.KERNEL_PROPERTY) == null);
+		assertEquals(ScalarKernel.class.getName(), Analyzer.getKernelName());
+	}
+
+	/**
+	 * Checks that asking for more headphones than the list has is an error.
+	 */
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testReturnTooMany() {
+		Analyzer.analyze(null, new double[Analyzer.MEASURED_FREQUENCIES.length], COUNT + 1, list);
+	}
+
+	/**
+	 * Checks every overload of analyze, and the indexes, against the original analyzer,
+	 * with no base headphone and with a base headphone from the list.
+	 * @param returnAmt Number of headphones to return.
+	 */
+	private static void checkEveryOverload(int returnAmt) {
+		Random random = new Random(returnAmt);
+		Headphone[] all = list.getAll();
+		CompactCurveStore compact = new CompactCurveStore(list.getStore());
+		VPTreeIndex vpTree = new VPTreeIndex(list);
+		BallTreeIndex ballTree = new BallTreeIndex(list);
+		for (Headphone base : new Headphone[] {null, all[random.nextInt(COUNT)]}) {
+			double[] freqDiff = Catalogs.freqDiff(random);
+			String[] expected = Catalogs.urls(Catalogs.original(base, freqDiff, returnAmt, all));
+			assertEquals(returnAmt, expected.length);
+			assertArrayEquals("array", expected, Catalogs.urls(Analyzer.analyze(base, freqDiff, returnAmt, all)));
+			assertArrayEquals("list", expected, Catalogs.urls(Analyzer.analyze(base, freqDiff, returnAmt, list)));
+			assertArrayEquals("metric", expected, Catalogs.urls(
+					Analyzer.analyze(base, freqDiff, returnAmt, list, new SquaredDifferenceMetric())));
+			assertArrayEquals("compact", expected, Catalogs.urls(Analyzer.analyze(base, freqDiff, returnAmt, compact)));
+			assertArrayEquals("mapped", expected, Catalogs.urls(
+					Analyzer.analyze(base, freqDiff, returnAmt, catalog, null)));
+			assertArrayEquals("parallel", expected, Catalogs.urls(
+					Analyzer.analyzeParallel(base, freqDiff, returnAmt, list)));
+			Headphone[][] batch = Analyzer.analyzeBatch(
+					Arrays.asList(new Query(base, freqDiff, returnAmt), new Query(null, freqDiff, 0)), list);
+			assertArrayEquals("batch", expected, Catalogs.urls(batch[0]));
+			assertEquals(0, batch[1].length);
+			assertArrayEquals("vp-tree", expected, Catalogs.urls(vpTree.search(base, freqDiff, returnAmt)));
+			assertArrayEquals("ball tree", expected, Catalogs.urls(ballTree.search(base, freqDiff, returnAmt)));
+		}
+	}
+
+}
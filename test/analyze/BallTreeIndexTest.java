@@ -0,0 +1,95 @@
+package analyze;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import data.Headphone;
+import util.HeadphoneList;
+
+/**
+ * Checks that the ball tree returns exactly what Analyzer.analyze returns for a list of the same
+ * headphones, whether it was built from a list or grown one insert at a time, including which
+ * of any tied headphones are returned.
+ *
+ * @author Adam Luck
+ */
+public class BallTreeIndexTest {
+
+	/**
+	 * Checks an index built from lists of several sizes, including ones smaller than a leaf.
+	 */
+	@Test
+	public void testBuiltMatchesAnalyze() {
+		Random random = new Random(15);
+		for (int count : new int[] {0, 1, 16, 17, 500, 3000}) {
+			HeadphoneList list = Catalogs.list(count, count + 1);
+			checkMatchesAnalyze(new BallTreeIndex(list), list, random);
+		}
+	}
+
+	/**
+	 * Checks an index grown by inserting headphones in random order, checking it against a list
+	 * of the same headphones after each batch of inserts, since inserts split leaves and grow radiuses.
+	 */
+	@Test
+	public void testInsertsMatchAnalyze() {
+		List<Headphone> headphones = new ArrayList<Headphone>(Catalogs.headphones(2000, 16));
+		Random random = new Random(17);
+		Collections.shuffle(headphones, random);
+		BallTreeIndex index = new BallTreeIndex();
+		HeadphoneList list = new HeadphoneList(Catalogs.TYPE);
+		for (int i = 0; i < headphones.size(); i++) {
+			index.insert(headphones.get(i));
+			list.add(headphones.get(i));
+			if (i % 250 == 0 || i == headphones.size() - 1) {
+				checkMatchesAnalyze(index, list, random);
+			}
+		}
+	}
+
+	/**
+	 * Checks an index whose curves are mostly tied, where ties have to be broken by name and type,
+	 * and then by the order they were inserted in, like a sorted list does.
+	 */
+	@Test
+	public void testTiesMatchAnalyze() {
+		List<Headphone> curves = Catalogs.headphones(5, 18);
+		BallTreeIndex index = new BallTreeIndex();
+		HeadphoneList list = new HeadphoneList(Catalogs.TYPE);
+		Random random = new Random(19);
+		for (int i = 0; i < 400; i++) {
+			// Reuse names, so some headphones are equal and only the insertion order tells them apart.
+			Headphone headphone = new Headphone("Headphone " + random.nextInt(100), Catalogs.TYPE, "url" + i,
+					curves.get(random.nextInt(curves.size())).getDBVals());
+			index.insert(headphone);
+			list.add(headphone);
+		}
+		checkMatchesAnalyze(index, list, random);
+	}
+
+	/**
+	 * Checks searches of the index against analyze on the list, with and without a base headphone.
+	 * @param index Index to search.
+	 * @param list List of the same headphones.
+	 * @param random Source of the queries.
+	 */
+	private static void checkMatchesAnalyze(BallTreeIndex index, HeadphoneList list, Random random) {
+		assertEquals(list.size(), index.size());
+		Headphone[] all = list.getAll();
+		for (int q = 0; q < 20; q++) {
+			Headphone base = q % 2 == 1 && all.length > 0 ? all[random.nextInt(all.length)] : null;
+			double[] freqDiff = Catalogs.freqDiff(random);
+			int returnAmt = random.nextInt(Math.min(all.length, 50) + 1);
+			assertArrayEquals("index of " + all.length, Catalogs.urls(Analyzer.analyze(base, freqDiff, returnAmt, list)),
+					Catalogs.urls(index.search(base, freqDiff, returnAmt)));
+		}
+	}
+
+}
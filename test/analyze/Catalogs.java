@@ -0,0 +1,154 @@
+package analyze;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import data.CurveStore;
+import data.Headphone;
+import util.HeadphoneList;
+
+/**
+ * Makes lists of headphones with random curves for the analysis tests, and finds the closest
+ * headphones in them the way the original analyzer did, to check the faster searches against.
+ *
+ * @author Adam Luck
+ */
+public class Catalogs {
+
+	/** Type of the headphones in the lists. */
+	public static final String TYPE = "In-Ear";
+
+	/**
+	 * Returns a list of headphones with random curves in whole hundredths of a decibel, like parsed
+	 * measurements. Every tenth headphone has the same curve as the one before it,
+	 * so they're tied, and every twentieth has the same name as the one before it but a different type.
+	 * @param count Number of headphones in the list.
+	 * @param seed Seed of the random curves.
+	 * @return a list of headphones with random curves.
+	 */
+	public static HeadphoneList list(int count, long seed) {
+		HeadphoneList list = new HeadphoneList(TYPE);
+		list.addAll(headphones(count, seed));
+		return list;
+	}
+
+	/**
+	 * Returns headphones with random curves, in the order they were made. See list(count, seed).
+	 * @param count Number of headphones.
+	 * @param seed Seed of the random curves.
+	 * @return headphones with random curves.
+	 */
+	public static List<Headphone> headphones(int count, long seed) {
+		Random random = new Random(seed);
+		List<Headphone> headphones = new ArrayList<Headphone>(count);
+		double[] dBVals = new double[CurveStore.CURVE_LENGTH];
+		for (int i = 0; i < count; i++) {
+			String name = "Headphone " + random.nextInt(count);
+			String type = TYPE;
+			// Keep the previous curve for every tenth headphone.
+			if (i % 10 != 9) {
+				int units = 8000 + random.nextInt(2000);
+				for (int f = 0; f < dBVals.length; f++) {
+					units += random.nextInt(301) - 150;
+					dBVals[f] = units / 100.0;
+				}
+			}
+			if (i % 20 == 19) {
+				name = headphones.get(i - 1).getName();
+				type = "Earbud";
+			}
+			headphones.add(new Headphone(name, type, "http://example.com/" + i + ".pdf", dBVals));
+		}
+		return headphones;
+	}
+
+	/**
+	 * Returns random frequency differences in whole hundredths of a decibel.
+	 * @param random Source of the differences.
+	 * @return random frequency differences.
+	 */
+	public static double[] freqDiff(Random random) {
+		double[] freqDiff = new double[CurveStore.CURVE_LENGTH];
+		for (int i = 0; i < freqDiff.length; i++) {
+			freqDiff[i] = (random.nextInt(2001) - 1000) / 100.0;
+		}
+		return freqDiff;
+	}
+
+	/**
+	 * Returns the headphones that most closely match the given parameters, found by the original
+	 * analyzer's insertion into a sorted array, with ties going to the headphone that comes first.
+	 * @param base Base headphone to compare to, or null.
+	 * @param freqDiff Array of dB differences for each of the measured frequencies.
+	 * @param returnAmt Number of headphones to return.
+	 * @param compareList Array of headphones to compare to.
+	 * @return the headphones that most closely match the given parameters.
+	 */
+	public static Headphone[] original(Headphone base, double[] freqDiff, int returnAmt, Headphone[] compareList) {
+		int numMF = CurveStore.CURVE_LENGTH;
+		double[] optimalF = freqDiff;
+		if (base != null) {
+			double[] hpF = base.getDBVals();
+			optimalF = new double[numMF];
+			for (int i = 0; i < numMF; i++) {
+				optimalF[i] = hpF[i] + freqDiff[i];
+			}
+		}
+		double optimalAve = average(optimalF);
+		double[] lSDArr = new double[returnAmt];
+		Arrays.fill(lSDArr, -1);
+		Headphone[] closestHeadphones = new Headphone[returnAmt];
+		for (Headphone headphone : compareList) {
+			if (headphone.equals(base))
+				continue;
+			double totalSD = 0;
+			double[] hpF = headphone.getDBVals();
+			double aveDiff = optimalAve - average(hpF);
+			for (int i = 0; i < numMF; i++) {
+				double difference = optimalF[i] - hpF[i] - aveDiff;
+				totalSD += difference * difference;
+			}
+			for (int i = 0; i < lSDArr.length; i++) {
+				if (lSDArr[i] < 0 || totalSD < lSDArr[i]) {
+					for (int j = lSDArr.length - 1; j > i; j--) {
+						lSDArr[j] = lSDArr[j - 1];
+						closestHeadphones[j] = closestHeadphones[j - 1];
+					}
+					lSDArr[i] = totalSD;
+					closestHeadphones[i] = headphone;
+					break;
+				}
+			}
+		}
+		return closestHeadphones;
+	}
+
+	/**
+	 * Returns the URLs of the headphones, with null for missing headphones.
+	 * @param headphones Headphones to get the URLs of.
+	 * @return the URLs of the headphones, in the same order.
+	 */
+	public static String[] urls(Headphone[] headphones) {
+		String[] urls = new String[headphones.length];
+		for (int i = 0; i < urls.length; i++) {
+			urls[i] = headphones[i] == null ? null : headphones[i].getURL();
+		}
+		return urls;
+	}
+
+	/**
+	 * Returns the average of the values.
+	 * @param values Values to average.
+	 * @return the average of the values.
+	 */
+	private static double average(double[] values) {
+		double average = 0;
+		for (double value : values) {
+			average += value;
+		}
+		return average / values.length;
+	}
+
+}
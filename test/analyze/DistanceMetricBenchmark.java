@@ -0,0 +1,96 @@
+package analyze;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import data.CurveStore;
+import data.Headphone;
+import util.HeadphoneList;
+
+/**
+ * Measures an analysis of a list with each of the distance metrics, next to the analysis
+ * without a metric, which uses the distance kernel directly.
+ *
+ * @author Adam Luck
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DistanceMetricBenchmark {
+
+	/** Number of headphones returned. */
+	private static final int RETURN_AMT = 10;
+
+	/** Metric measured, or "kernel" for the analysis without a metric. */
+	@Param({"kernel", "squared", "absolute", "max", "band", "weighted"})
+	public String metric;
+	/** Number of headphones in the list. */
+	@Param({"10000"})
+	public int size;
+
+	/** List of headphones to compare to. */
+	private HeadphoneList list;
+	/** Frequency differences of the query. */
+	private double[] freqDiff;
+	/** Metric to analyze with, or null for the analysis without a metric. */
+	private DistanceMetric distanceMetric;
+
+	/**
+	 * Makes the list, the query, and the metric.
+	 */
+	@Setup
+	public void setUp() {
+		list = Catalogs.list(size, 24);
+		freqDiff = Catalogs.freqDiff(new Random(25));
+		double[] weights = new double[CurveStore.CURVE_LENGTH];
+		Arrays.fill(weights, 1);
+		weights[Arrays.binarySearch(Headphone.MEASURED_FREQUENCIES, 3000)] = 2;
+		switch (metric) {
+		case "squared":
+			distanceMetric = new SquaredDifferenceMetric();
+			break;
+		case "absolute":
+			distanceMetric = new AbsoluteDifferenceMetric();
+			break;
+		case "max":
+			distanceMetric = new MaxDeviationMetric();
+			break;
+		case "band":
+			distanceMetric = new BandMetric(200, 10000);
+			break;
+		case "weighted":
+			distanceMetric = new WeightedMetric(weights);
+			break;
+		default:
+			distanceMetric = null;
+		}
+	}
+
+	/**
+	 * Analyzes the list with the metric.
+	 * @return the closest headphones.
+	 */
+	@Benchmark
+	public Headphone[] analyze() {
+		if (distanceMetric == null)
+			return Analyzer.analyze(null, freqDiff, RETURN_AMT, list);
+		return Analyzer.analyze(null, freqDiff, RETURN_AMT, list, distanceMetric);
+	}
+
+}
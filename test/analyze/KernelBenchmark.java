@@ -0,0 +1,106 @@
+package analyze;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import data.CurveStore;
+
+/**
+ * Compares the scalar and vectorized distance kernels over every curve in a store, both calculating
+ * whole totals and stopping early at the limit an analysis would have. The vectorized kernel is only
+ * there when the vector profile was built, so run it on JDK 17 or later with, for example:
+ * mvn -Pvector,benchmark clean test-compile exec:exec
+ * -Djmh.args="Kernel -jvmArgsAppend --add-modules=jdk.incubator.vector"
+ *
+ * @author Adam Luck
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KernelBenchmark {
+
+	/** Kernel measured. */
+	@Param({"scalar", "vector"})
+	public String kernel;
+	/** Number of curves in the store. */
+	@Param({"10000"})
+	public int size;
+
+	/** Kernel to calculate totals with. */
+	private DistanceKernel distanceKernel;
+	/** Mean-centered curves of the store. */
+	private double[] centered;
+	/** Mean-centered optimal values. */
+	private double[] optimalF;
+	/** Total of a typical tenth closest curve, which analyses stop early at. */
+	private double limit;
+
+	/**
+	 * Makes the store and the optimal values, and loads the kernel.
+	 * @throws ReflectiveOperationException if the vectorized kernel wasn't built.
+	 */
+	@Setup
+	public void setUp() throws ReflectiveOperationException {
+		if (kernel.equals("vector")) {
+			distanceKernel = (DistanceKernel) Class.forName("analyze.vector.VectorKernel").getDeclaredConstructor()
+					.newInstance();
+		}
+		else {
+			distanceKernel = new ScalarKernel();
+		}
+		CurveStore store = Catalogs.list(size, 26).getStore();
+		centered = store.getCenteredCurves();
+		optimalF = Analyzer.center(Catalogs.freqDiff(new Random(27)));
+		TopK closest = new TopK(10);
+		Analyzer.scan(null, optimalF, store, 0, store.size(), closest);
+		limit = closest.worstScore();
+	}
+
+	/**
+	 * Calculates the whole total of every curve.
+	 * @return the sum of the totals.
+	 */
+	@Benchmark
+	public double whole() {
+		return scan(Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * Calculates the total of every curve, stopping at the limit.
+	 * @return the sum of the totals.
+	 */
+	@Benchmark
+	public double limited() {
+		return scan(limit);
+	}
+
+	/**
+	 * Calculates the total of every curve with the kernel.
+	 * @param limit Total to stop at.
+	 * @return the sum of the totals.
+	 */
+	private double scan(double limit) {
+		int numMF = CurveStore.CURVE_LENGTH;
+		double sum = 0;
+		for (int offset = 0; offset < size * numMF; offset += numMF) {
+			sum += distanceKernel.squaredDifference(optimalF, centered, offset, limit);
+		}
+		return sum;
+	}
+
+}
@@ -0,0 +1,75 @@
+package analyze;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import data.Headphone;
+import util.HeadphoneList;
+
+/**
+ * Compares scanning a whole list on one thread with splitting it into partitions that are
+ * scanned in parallel on the common fork-join pool, which only helps with more than one processor.
+ *
+ * @author Adam Luck
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PartitionSearchBenchmark {
+
+	/** Number of headphones in the list. */
+	@Param({"10000", "100000"})
+	public int size;
+	/** Number of headphones returned. */
+	@Param({"10"})
+	public int returnAmt;
+
+	/** List of headphones to compare to. */
+	private HeadphoneList list;
+	/** Frequency differences of the query. */
+	private double[] freqDiff;
+
+	/**
+	 * Makes the list and the query.
+	 */
+	@Setup
+	public void setUp() {
+		list = Catalogs.list(size, 5);
+		freqDiff = Catalogs.freqDiff(new Random(6));
+		Analyzer.setParallelThreshold(Analyzer.DEFAULT_PARALLEL_THRESHOLD);
+	}
+
+	/**
+	 * Scans the whole list on one thread.
+	 * @return the closest headphones.
+	 */
+	@Benchmark
+	public Headphone[] serial() {
+		return Analyzer.analyze(null, freqDiff, returnAmt, list);
+	}
+
+	/**
+	 * Scans partitions of the list in parallel.
+	 * @return the closest headphones.
+	 */
+	@Benchmark
+	public Headphone[] parallel() {
+		return Analyzer.analyzeParallel(null, freqDiff, returnAmt, list);
+	}
+
+}
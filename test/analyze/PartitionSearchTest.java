@@ -0,0 +1,107 @@
+package analyze;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import data.CurveStore;
+import data.Headphone;
+import util.HeadphoneList;
+
+/**
+ * Checks that splitting a list into partitions that are searched in parallel returns exactly
+ * the same headphones, in the same order, as scanning the whole list on one thread,
+ * however the list is split.
+ *
+ * @author Adam Luck
+ */
+public class PartitionSearchTest {
+
+	/** Number of headphones in the list. */
+	private static final int COUNT = 3000;
+	/** Number of queries checked for each way of splitting the list. */
+	private static final int QUERIES = 20;
+	/** List of headphones to compare to. */
+	private static HeadphoneList list;
+	/** Parallel threshold before the test. */
+	private int threshold;
+
+	/**
+	 * Makes the list.
+	 */
+	@BeforeClass
+	public static void setUp() {
+		list = Catalogs.list(COUNT, 2);
+	}
+
+	/**
+	 * Saves the parallel threshold, so tests can change it.
+	 */
+	@Before
+	public void saveThreshold() {
+		threshold = Analyzer.getParallelThreshold();
+	}
+
+	/**
+	 * Restores the parallel threshold from before the test.
+	 */
+	@After
+	public void restoreThreshold() {
+		Analyzer.setParallelThreshold(threshold);
+	}
+
+	/**
+	 * Checks that a parallel analysis matches analyze and the original analyzer for thresholds
+	 * that split the list into single headphones, uneven partitions, and not at all.
+	 */
+	@Test
+	public void testMatchesAnalyze() {
+		Headphone[] all = list.getAll();
+		Random random = new Random(3);
+		for (int threshold : new int[] {1, 7, 64, 1000, COUNT, Analyzer.DEFAULT_PARALLEL_THRESHOLD}) {
+			Analyzer.setParallelThreshold(threshold);
+			for (int q = 0; q < QUERIES; q++) {
+				Headphone base = q % 2 == 0 ? null : all[random.nextInt(COUNT)];
+				double[] freqDiff = Catalogs.freqDiff(random);
+				int returnAmt = random.nextInt(50);
+				String[] expected = Catalogs.urls(Analyzer.analyze(base, freqDiff, returnAmt, list));
+				assertArrayEquals("threshold " + threshold, expected,
+						Catalogs.urls(Analyzer.analyzeParallel(base, freqDiff, returnAmt, list)));
+				assertArrayEquals("threshold " + threshold, Catalogs.urls(Catalogs.original(base, freqDiff, returnAmt, all)),
+						expected);
+			}
+		}
+	}
+
+	/**
+	 * Checks that the partitions are merged into the same heap when they run on several threads
+	 * and finish in any order, even on a machine with one processor.
+	 */
+	@Test
+	public void testMatchesScanOnSeveralThreads() {
+		CurveStore store = list.getStore();
+		Random random = new Random(4);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			for (int q = 0; q < QUERIES; q++) {
+				double[] optimalF = Analyzer.calculateCenteredOptimal(null, Catalogs.freqDiff(random));
+				int returnAmt = 1 + random.nextInt(100);
+				TopK expected = new TopK(returnAmt);
+				Analyzer.scan(null, optimalF, store, 0, store.size(), expected);
+				TopK closest = pool.invoke(new PartitionSearch(null, optimalF, store, 0, store.size(), returnAmt,
+						1 + random.nextInt(200)));
+				assertArrayEquals(expected.drainKeys(), closest.drainKeys());
+			}
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+
+}
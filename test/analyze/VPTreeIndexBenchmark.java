@@ -0,0 +1,117 @@
+package analyze;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import data.Headphone;
+import util.HeadphoneList;
+
+/**
+ * Measures the latency of vantage-point tree searches limited to different numbers of checks,
+ * next to a full scan of the list. The recall of each limit, which is the fraction of the exact
+ * closest headphones it finds, is printed once per trial since it doesn't change between iterations.
+ *
+ * @author Adam Luck
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VPTreeIndexBenchmark {
+
+	/** Number of distinct queries, which are searched in turn. */
+	private static final int QUERIES = 64;
+	/** Number of headphones returned. */
+	private static final int RETURN_AMT = 10;
+
+	/** Number of headphones in the list. */
+	@Param({"10000", "100000"})
+	public int size;
+	/** Maximum number of curves a search compares to the optimal curve, or 0 for no limit. */
+	@Param({"100", "1000", "10000", "0"})
+	public int maxChecks;
+
+	/** List of headphones to compare to. */
+	private HeadphoneList list;
+	/** Index of the list. */
+	private VPTreeIndex index;
+	/** Frequency differences of the queries. */
+	private double[][] freqDiffs;
+	/** Number of the next query. */
+	private int next;
+
+	/**
+	 * Makes the list, its index, and the queries, and prints the recall of the limit.
+	 */
+	@Setup
+	public void setUp() {
+		list = Catalogs.list(size, 13);
+		index = new VPTreeIndex(list);
+		Random random = new Random(14);
+		freqDiffs = new double[QUERIES][];
+		int found = 0;
+		for (int q = 0; q < QUERIES; q++) {
+			freqDiffs[q] = Catalogs.freqDiff(random);
+			Set<String> exact = new HashSet<String>(Arrays.asList(
+					Catalogs.urls(Analyzer.analyze(null, freqDiffs[q], RETURN_AMT, list))));
+			exact.retainAll(Arrays.asList(Catalogs.urls(search(freqDiffs[q]))));
+			found += exact.size();
+		}
+		System.out.printf("%nRecall with %d headphones and maxChecks %d: %.3f%n", size, maxChecks,
+				found / (double) (QUERIES * RETURN_AMT));
+	}
+
+	/**
+	 * Searches the index for the next query.
+	 * @return the closest headphones found.
+	 */
+	@Benchmark
+	public Headphone[] search() {
+		return search(nextQuery());
+	}
+
+	/**
+	 * Scans the whole list for the next query.
+	 * @return the closest headphones.
+	 */
+	@Benchmark
+	public Headphone[] scan() {
+		return Analyzer.analyze(null, nextQuery(), RETURN_AMT, list);
+	}
+
+	/**
+	 * Searches the index with the limit being measured.
+	 * @param freqDiff Frequency differences of the query.
+	 * @return the closest headphones found.
+	 */
+	private Headphone[] search(double[] freqDiff) {
+		return index.search(null, freqDiff, RETURN_AMT, maxChecks == 0 ? Integer.MAX_VALUE : maxChecks);
+	}
+
+	/**
+	 * Returns the frequency differences of the next query.
+	 * @return the frequency differences of the next query.
+	 */
+	private double[] nextQuery() {
+		next = (next + 1) % QUERIES;
+		return freqDiffs[next];
+	}
+
+}
@@ -0,0 +1,115 @@
+package analyze;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import data.CurveStore;
+import data.Headphone;
+import util.HeadphoneList;
+
+/**
+ * Checks that the vantage-point tree returns exactly what Analyzer.analyze does when the
+ * number of checks isn't limited, and that limiting them only ever loses some of the closest headphones.
+ *
+ * @author Adam Luck
+ */
+public class VPTreeIndexTest {
+
+	/**
+	 * Checks that an unlimited search matches analyze for lists of several sizes,
+	 * including ones smaller than a leaf.
+	 */
+	@Test
+	public void testMatchesAnalyze() {
+		Random random = new Random(7);
+		for (int count : new int[] {0, 1, 5, 9, 100, 3000}) {
+			HeadphoneList list = Catalogs.list(count, count);
+			checkMatchesAnalyze(list, random);
+		}
+	}
+
+	/**
+	 * Checks that an unlimited search matches analyze when many curves are tied,
+	 * so pruning has to keep every node a tied curve could be in.
+	 */
+	@Test
+	public void testMatchesAnalyzeWithTies() {
+		HeadphoneList list = new HeadphoneList(Catalogs.TYPE);
+		List<Headphone> headphones = Catalogs.headphones(10, 8);
+		for (int i = 0; i < 500; i++) {
+			Headphone headphone = headphones.get(i % headphones.size());
+			list.add(new Headphone("Headphone " + i, Catalogs.TYPE, "url" + i, headphone.getDBVals()));
+		}
+		checkMatchesAnalyze(list, new Random(9));
+	}
+
+	/**
+	 * Checks that a search limited to fewer checks returns as many distinct headphones as were asked for,
+	 * that its recall of the closest headphones never drops as the limit is raised,
+	 * and that a limit of every curve finds them all.
+	 */
+	@Test
+	public void testRecallGrowsWithChecks() {
+		int count = 3000;
+		HeadphoneList list = Catalogs.list(count, 10);
+		VPTreeIndex index = new VPTreeIndex(list);
+		Random random = new Random(11);
+		int returnAmt = 10;
+		for (int q = 0; q < 20; q++) {
+			double[] freqDiff = Catalogs.freqDiff(random);
+			Set<String> exact = new HashSet<String>(Arrays.asList(
+					Catalogs.urls(Analyzer.analyze(null, freqDiff, returnAmt, list))));
+			int previousRecall = 0;
+			for (int maxChecks : new int[] {returnAmt, 50, 200, 1000, count}) {
+				Headphone[] approximate = index.search(null, freqDiff, returnAmt, maxChecks);
+				Set<String> found = new HashSet<String>();
+				for (Headphone headphone : approximate) {
+					assertNotNull(headphone);
+					found.add(headphone.getURL());
+				}
+				assertEquals(returnAmt, found.size());
+				found.retainAll(exact);
+				assertTrue("recall dropped at " + maxChecks + " checks", found.size() >= previousRecall);
+				previousRecall = found.size();
+			}
+			assertEquals(returnAmt, previousRecall);
+		}
+	}
+
+	/**
+	 * Checks that a search with no checks allowed is an error.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testNoChecks() {
+		new VPTreeIndex(Catalogs.list(10, 12)).search(null, new double[CurveStore.CURVE_LENGTH], 1, 0);
+	}
+
+	/**
+	 * Checks unlimited searches of an index of the list against analyze, with and without a base headphone.
+	 * @param list List to index.
+	 * @param random Source of the queries.
+	 */
+	private static void checkMatchesAnalyze(HeadphoneList list, Random random) {
+		VPTreeIndex index = new VPTreeIndex(list);
+		assertEquals(list.size(), index.size());
+		Headphone[] all = list.getAll();
+		for (int q = 0; q < 20; q++) {
+			Headphone base = q % 2 == 1 && all.length > 0 ? all[random.nextInt(all.length)] : null;
+			double[] freqDiff = Catalogs.freqDiff(random);
+			int returnAmt = random.nextInt(Math.min(all.length, 50) + 1);
+			assertArrayEquals("list of " + all.length, Catalogs.urls(Analyzer.analyze(base, freqDiff, returnAmt, list)),
+					Catalogs.urls(index.search(base, freqDiff, returnAmt)));
+		}
+	}
+
+}
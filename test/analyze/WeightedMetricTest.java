@@ -0,0 +1,89 @@
+package analyze;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import data.CurveStore;
+import data.Headphone;
+import util.HeadphoneList;
+
+/**
+ * Checks that the weighted metric offsets curves by their weighted averages,
+ * so frequencies with no weight don't change distances at all.
+ *
+ * @author Adam Luck
+ */
+public class WeightedMetricTest {
+
+	/**
+	 * Checks that equal weights give exactly the same distances, and so the same headphones, as the squared difference.
+	 */
+	@Test
+	public void testEqualWeightsMatchSquaredDifference() {
+		HeadphoneList list = Catalogs.list(500, 20);
+		double[] weights = new double[CurveStore.CURVE_LENGTH];
+		Arrays.fill(weights, 1);
+		Random random = new Random(21);
+		for (int q = 0; q < 10; q++) {
+			double[] freqDiff = Catalogs.freqDiff(random);
+			assertArrayEquals(Catalogs.urls(Analyzer.analyze(null, freqDiff, 20, list)),
+					Catalogs.urls(Analyzer.analyze(null, freqDiff, 20, list, new WeightedMetric(weights))));
+		}
+	}
+
+	/**
+	 * Checks that weighting only the frequencies in a band gives exactly the same distances as the band metric,
+	 * and that changing a curve outside the band doesn't change its distance.
+	 */
+	@Test
+	public void testZeroWeightsAreIgnored() {
+		double[] weights = new double[CurveStore.CURVE_LENGTH];
+		for (int i = 0; i < weights.length; i++) {
+			weights[i] = Headphone.MEASURED_FREQUENCIES[i] >= 200 ? 1 : 0;
+		}
+		WeightedMetric weighted = new WeightedMetric(weights);
+		BandMetric band = new BandMetric(200, 10000);
+		Random random = new Random(22);
+		CurveStore store = new CurveStore();
+		for (Headphone headphone : Catalogs.headphones(50, 23)) {
+			double[] dBVals = headphone.getDBVals();
+			int index = store.add(headphone);
+			// Move the bass of a copy of the curve around.
+			for (int i = 0; i < weights.length; i++) {
+				if (weights[i] == 0)
+					dBVals[i] += random.nextInt(4001) - 2000;
+			}
+			int moved = store.add(headphone.getName(), headphone.getType(), headphone.getURL(), dBVals);
+			double[] optimal = Catalogs.freqDiff(random);
+			double[] prepared = weighted.prepare(optimal);
+			double distance = weighted.distance(prepared, store, index, Double.POSITIVE_INFINITY);
+			assertEquals(band.distance(band.prepare(optimal), store, index, Double.POSITIVE_INFINITY), distance, 0);
+			assertEquals(distance, weighted.distance(prepared, store, moved, Double.POSITIVE_INFINITY), 0);
+		}
+	}
+
+	/**
+	 * Checks that weights that are all zero are rejected, since they give no average to offset by.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testAllZeroWeights() {
+		new WeightedMetric(new double[CurveStore.CURVE_LENGTH]);
+	}
+
+	/**
+	 * Checks that negative weights are rejected.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeWeight() {
+		double[] weights = new double[CurveStore.CURVE_LENGTH];
+		Arrays.fill(weights, 1);
+		weights[3] = -1;
+		new WeightedMetric(weights);
+	}
+
+}
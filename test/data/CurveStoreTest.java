@@ -0,0 +1,87 @@
+package data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Checks the columnar store's handling of types, and the memory a standalone headphone takes.
+ *
+ * @author Adam Luck
+ */
+public class CurveStoreTest {
+
+	/**
+	 * Checks that a type that isn't one of the standard types is kept by the store it was added to only.
+	 */
+	@Test
+	public void testOtherType() {
+		CurveStore store = new CurveStore();
+		store.add("Standard", "Earbud", "a", new double[CurveStore.CURVE_LENGTH]);
+		store.add("Other", "Bone Conduction", "b", new double[CurveStore.CURVE_LENGTH]);
+		assertEquals("Earbud", store.getType(0));
+		assertEquals("Bone Conduction", store.getType(1));
+		CurveStore copy = new CurveStore();
+		assertEquals(0, copy.add(store.get(1)));
+		assertEquals("Bone Conduction", copy.getType(0));
+		Headphone standalone = new Headphone("Standard", "Earbud", "a", new double[CurveStore.CURVE_LENGTH]);
+		assertEquals("Earbud", standalone.getType());
+		assertEquals(8, Headphone.HEADPHONE_TYPES.size());
+	}
+
+	/**
+	 * Checks that a standalone headphone keeps its values and their average, and makes only one store for itself.
+	 */
+	@Test
+	public void testStandalone() {
+		double[] dBVals = new double[CurveStore.CURVE_LENGTH];
+		for (int i = 0; i < dBVals.length; i++) {
+			dBVals[i] = i;
+		}
+		Headphone headphone = new Headphone("Name", "In-Ear", "url", dBVals);
+		assertArrayEquals(dBVals, headphone.getDBVals(), 0);
+		assertEquals(13, headphone.getStore().getMean(headphone.getIndex()), 0);
+		assertEquals(-13, headphone.getStore().getCenteredCurves()[0], 0);
+		assertSame(headphone.getStore(), headphone.getStore());
+		CurveStore copy = new CurveStore();
+		copy.add(new Headphone("Name", "In-Ear", "url", dBVals));
+		assertEquals(13, copy.getMean(0), 0);
+		assertEquals(headphone, copy.get(0));
+		assertEquals(copy.get(0), headphone);
+	}
+
+	/**
+	 * Checks that a standalone headphone takes no more than a copy of its curve and the object itself,
+	 * rather than a store of its own.
+	 * Skipped on JVMs that can't count the bytes a thread allocates.
+	 */
+	@Test
+	public void testStandaloneAllocation() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+		Assume.assumeTrue(allocations.isThreadAllocatedMemorySupported());
+		allocations.setThreadAllocatedMemoryEnabled(true);
+		double[] dBVals = new double[CurveStore.CURVE_LENGTH];
+		Headphone[] headphones = new Headphone[1000];
+		long thread = Thread.currentThread().getId();
+		long before = allocations.getThreadAllocatedBytes(thread);
+		for (int i = 0; i < headphones.length; i++) {
+			headphones[i] = new Headphone("Name", "In-Ear", "url", dBVals);
+		}
+		long allocated = allocations.getThreadAllocatedBytes(thread) - before;
+		// A double[27] of 232 bytes and an object of up to 64 bytes,
+		// with a little left over since reading the allocation counter can allocate itself.
+		long headphoneBytes = 232 + 64;
+		assertTrue("Allocated " + allocated + " bytes for " + headphones.length + " headphones",
+				allocated <= headphones.length * headphoneBytes + 1024);
+	}
+
+}
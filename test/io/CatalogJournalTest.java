@@ -0,0 +1,252 @@
+package io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import data.CurveStore;
+import data.Headphone;
+import util.HeadphoneList;
+
+/**
+ * Checks that the journal recovers from crashes: torn and corrupt records are dropped and cut off,
+ * records appended during a compaction are kept, and headphones left in the journal by a compaction
+ * that didn't get to drop them are only loaded once.
+ *
+ * @author Adam Luck
+ */
+public class CatalogJournalTest {
+
+	/** Folder the journal and snapshot are written to. */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/** Journal file. */
+	private File file;
+	/** Snapshot file. */
+	private File snapshot;
+	/** Journal stored in the journal file. */
+	private CatalogJournal journal;
+
+	/**
+	 * Names the journal and snapshot files and opens the journal.
+	 */
+	@Before
+	public void setUp() {
+		file = new File(folder.getRoot(), "catalog.journal");
+		snapshot = new File(folder.getRoot(), "catalog.snapshot");
+		journal = CatalogJournal.open(file);
+	}
+
+	/**
+	 * Checks that replay returns the appended headphones in order, with their values.
+	 * @throws IOException if the journal can't be written or read.
+	 */
+	@Test
+	public void testReplay() throws IOException {
+		journal.append(Arrays.asList(headphone("Alpha", "In-Ear", 1), headphone("Bravo", "Earbud", 2)));
+		journal.append(Arrays.asList(headphone("Charlie", "In-Ear", 3)));
+		List<Headphone> replayed = journal.replay();
+		assertEquals(Arrays.asList("Alpha", "Bravo", "Charlie"), names(replayed));
+		assertEquals("Earbud", replayed.get(1).getType());
+		assertArrayEquals(headphone("Bravo", "Earbud", 2).getDBVals(), replayed.get(1).getDBVals(), 0);
+		assertEquals(3, journal.size());
+	}
+
+	/**
+	 * Checks that a record torn by a crash, and a header torn before its record, are dropped
+	 * and cut off the file, keeping the records before them.
+	 * @throws IOException if the journal can't be written, changed, or read.
+	 */
+	@Test
+	public void testTornTail() throws IOException {
+		journal.append(Arrays.asList(headphone("Alpha", "In-Ear", 1)));
+		journal.append(Arrays.asList(headphone("Bravo", "In-Ear", 2)));
+		long intact = file.length();
+		journal.append(Arrays.asList(headphone("Charlie", "In-Ear", 3)));
+		truncate(file.length() - 5);
+		assertEquals(Arrays.asList("Alpha", "Bravo"), names(journal.replay()));
+		assertEquals(intact, file.length());
+		assertEquals(2, journal.size());
+		truncate(intact + 3);
+		assertEquals(Arrays.asList("Alpha", "Bravo"), names(journal.replay()));
+		assertEquals(intact, file.length());
+	}
+
+	/**
+	 * Checks that a record whose contents don't match its CRC-32 is dropped along with everything after it,
+	 * that the file is cut off before it, and that appending afterwards works.
+	 * @throws IOException if the journal can't be written, changed, or read.
+	 */
+	@Test
+	public void testCorruptRecord() throws IOException {
+		journal.append(Arrays.asList(headphone("Alpha", "In-Ear", 1)));
+		long intact = file.length();
+		journal.append(Arrays.asList(headphone("Bravo", "In-Ear", 2), headphone("Charlie", "In-Ear", 3)));
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			// Flip a byte in the contents of the second record, after its length and CRC-32.
+			raf.seek(intact + 10);
+			int b = raf.read();
+			raf.seek(intact + 10);
+			raf.write(b ^ 0x01);
+		}
+		assertEquals(Arrays.asList("Alpha"), names(journal.replay()));
+		assertEquals(intact, file.length());
+		assertEquals(1, journal.size());
+		journal.append(Arrays.asList(headphone("Delta", "In-Ear", 4)));
+		assertEquals(Arrays.asList("Alpha", "Delta"), names(journal.replay()));
+	}
+
+	/**
+	 * Checks that opening the same file twice gives the same journal, so a second load of the catalog
+	 * shares the first load's compaction.
+	 */
+	@Test
+	public void testOneJournalPerFile() {
+		assertSame(journal, CatalogJournal.open(new File(folder.getRoot(), "other/../catalog.journal")));
+		assertNotSame(journal, CatalogJournal.open(new File(folder.getRoot(), "other.journal")));
+	}
+
+	/**
+	 * Checks that records appended while a compaction is running survive its discard, that a second
+	 * compaction isn't started while the first is running, and that the next compaction covers them.
+	 * @throws Exception if the journal or snapshot can't be written or read.
+	 */
+	@Test
+	public void testAppendDuringCompaction() throws Exception {
+		List<Headphone> compacted = Arrays.asList(headphone("Alpha", "In-Ear", 1), headphone("Bravo", "Earbud", 2));
+		journal.append(compacted);
+		Headphone late = headphone("Charlie", "In-Ear", 3);
+		Thread compaction;
+		// Hold the journal, so the compaction writes its snapshot but can't drop any records until it's released.
+		synchronized (journal) {
+			compaction = journal.compact(snapshot, lists(compacted));
+			journal.append(Arrays.asList(late));
+			List<Headphone> all = new ArrayList<Headphone>(compacted);
+			all.add(late);
+			assertSame(compaction, journal.compact(snapshot, lists(all)));
+		}
+		compaction.join();
+		assertEquals(2, CatalogSnapshot.load(snapshot).size());
+		assertEquals(1, journal.size());
+		assertEquals(Arrays.asList("Charlie"), names(journal.replay()));
+		List<Headphone> all = new ArrayList<Headphone>(compacted);
+		all.add(late);
+		Thread next = journal.compact(snapshot, lists(all));
+		assertNotSame(compaction, next);
+		next.join();
+		assertEquals(3, CatalogSnapshot.load(snapshot).size());
+		assertEquals(0, journal.size());
+		assertEquals(0, file.length());
+		assertEquals(0, journal.replay().size());
+	}
+
+	/**
+	 * Checks that headphones left in the journal by a crash between writing the snapshot and dropping
+	 * the records it covers are loaded once, along with the records appended after them, and that a
+	 * headphone with the same name but a different type isn't skipped.
+	 * @throws IOException if the journal or snapshot can't be written or read.
+	 */
+	@Test
+	public void testReplayAfterCrashBeforeDiscard() throws IOException {
+		Headphone alpha = headphone("Alpha", "In-Ear", 1);
+		Headphone bravo = headphone("Bravo", "Earbud", 2);
+		Headphone charlie = headphone("Charlie", "In-Ear", 3);
+		Headphone alphaEarbud = headphone("Alpha", "Earbud", 4);
+		CatalogSnapshot.write(snapshot, lists(Arrays.asList(alpha, bravo)));
+		journal.append(Arrays.asList(alpha, bravo));
+		journal.append(Arrays.asList(charlie, alphaEarbud, charlie));
+		List<HeadphoneList> loaded = lists(new ArrayList<Headphone>());
+		HeadphoneIO.loadSnapshot(snapshot, loaded);
+		HeadphoneIO.replayJournal(journal, loaded);
+		assertEquals(Arrays.asList("Alpha", "Charlie"), names(Arrays.asList(list(loaded, "In-Ear").getAll())));
+		assertEquals(Arrays.asList("Alpha", "Bravo"), names(Arrays.asList(list(loaded, "Earbud").getAll())));
+		assertEquals(4, list(loaded, "Earbud").getByName("Alpha").getDBVals()[0], 0);
+		assertEquals(5, journal.size());
+	}
+
+	/**
+	 * Cuts the journal file off at the given length.
+	 * @param length Length to cut the file off at.
+	 * @throws IOException if the file can't be changed.
+	 */
+	private void truncate(long length) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(length);
+		}
+	}
+
+	/**
+	 * Returns a list of every type of headphone containing the given headphones.
+	 * @param headphones Headphones to add to the lists.
+	 * @return lists of every type of headphone.
+	 */
+	private static List<HeadphoneList> lists(List<Headphone> headphones) {
+		List<HeadphoneList> lists = new ArrayList<HeadphoneList>();
+		for (String type : Headphone.HEADPHONE_TYPES) {
+			HeadphoneList list = new HeadphoneList(type);
+			for (Headphone headphone : headphones) {
+				if (headphone.getType().equals(type))
+					list.add(headphone);
+			}
+			lists.add(list);
+		}
+		return lists;
+	}
+
+	/**
+	 * Returns the list of the given type.
+	 * @param lists Lists of every type of headphone.
+	 * @param type Type of the list.
+	 * @return the list of the given type.
+	 */
+	private static HeadphoneList list(List<HeadphoneList> lists, String type) {
+		for (HeadphoneList list : lists) {
+			if (list.getType().equals(type))
+				return list;
+		}
+		throw new IllegalArgumentException(type);
+	}
+
+	/**
+	 * Returns the names of the headphones.
+	 * @param headphones Headphones to get the names of.
+	 * @return the names of the headphones, in the same order.
+	 */
+	private static List<String> names(List<Headphone> headphones) {
+		List<String> names = new ArrayList<String>();
+		for (Headphone headphone : headphones) {
+			names.add(headphone.getName());
+		}
+		return names;
+	}
+
+	/**
+	 * Returns a headphone with a curve starting at the given value.
+	 * @param name Name of the headphone.
+	 * @param type Type of headphone.
+	 * @param start First decibel value of the curve.
+	 * @return a headphone with the given name and type.
+	 */
+	private static Headphone headphone(String name, String type, double start) {
+		double[] dBVals = new double[CurveStore.CURVE_LENGTH];
+		for (int i = 0; i < dBVals.length; i++) {
+			dBVals[i] = start + i;
+		}
+		return new Headphone(name, type, "http://example.com/" + name + ".pdf", dBVals);
+	}
+
+}
@@ -0,0 +1,218 @@
+package io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import analyze.Catalogs;
+import data.CurveStore;
+import data.Headphone;
+import util.HeadphoneList;
+
+/**
+ * Checks that a snapshot loads back the headphones it was written from, that damaged snapshots are rejected,
+ * and that the previous generation is kept and loaded when the newest one can't be.
+ *
+ * @author Adam Luck
+ */
+public class CatalogSnapshotTest {
+
+	/** Folder the snapshots are written to. */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Checks that loading a snapshot of several lists gives every headphone back in order.
+	 * @throws IOException if the snapshot can't be written or loaded.
+	 */
+	@Test
+	public void testLoadMatchesWrite() throws IOException {
+		List<HeadphoneList> lists = lists();
+		File file = folder.newFile("catalog.snapshot");
+		CatalogSnapshot.write(file, lists);
+		CurveStore store = CatalogSnapshot.load(file);
+		int index = 0;
+		for (HeadphoneList list : lists) {
+			for (Headphone headphone : list.getAll()) {
+				assertEquals(headphone.getName(), store.getName(index));
+				assertEquals(headphone.getType(), store.getType(index));
+				assertEquals(headphone.getURL(), store.getURL(index));
+				assertArrayEquals(headphone.getDBVals(), store.getDBVals(index), 0);
+				assertEquals(headphone.getStore().getMean(headphone.getIndex()), store.getMean(index), 0);
+				index++;
+			}
+		}
+		assertEquals(index, store.size());
+	}
+
+	/**
+	 * Checks that a loaded snapshot keeps nothing open, so it can be replaced right away.
+	 * @throws IOException if the snapshot can't be written or loaded.
+	 */
+	@Test
+	public void testLoadLeavesFileFree() throws IOException {
+		File file = folder.newFile("catalog.snapshot");
+		CatalogSnapshot.write(file, lists());
+		CatalogSnapshot.load(file);
+		assertTrue(file.delete());
+		CatalogSnapshot.write(file, lists());
+		assertEquals(lists().get(0).size() + lists().get(1).size(), CatalogSnapshot.load(file).size());
+	}
+
+	/**
+	 * Checks that a snapshot with a flipped byte, a missing byte, or the wrong magic number isn't loaded.
+	 * @throws IOException if the snapshot can't be written or changed.
+	 */
+	@Test
+	public void testDamagedSnapshots() throws IOException {
+		File file = folder.newFile("catalog.snapshot");
+		CatalogSnapshot.write(file, lists());
+		long length = file.length();
+		for (long position : new long[] {0, CatalogSnapshot.HEADER_SIZE + 3, length / 2, length - 1}) {
+			flip(file, position);
+			assertNotLoaded(file);
+			flip(file, position);
+		}
+		CatalogSnapshot.load(file);
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(length - 1);
+		}
+		assertNotLoaded(file);
+	}
+
+	/**
+	 * Checks that writing a snapshot keeps the old one as the previous generation, and that the newest one is loaded.
+	 * @throws IOException if the snapshots can't be written or loaded.
+	 */
+	@Test
+	public void testWriteKeepsPreviousGeneration() throws IOException {
+		File file = new File(folder.getRoot(), "catalog.snapshot");
+		CatalogSnapshot.write(file, lists());
+		assertFalse(CatalogSnapshot.previous(file).exists());
+		CatalogSnapshot.write(file, Arrays.asList(Catalogs.list(20, 29)));
+		assertEquals(51, CatalogSnapshot.load(CatalogSnapshot.previous(file)).size());
+		assertEquals(20, CatalogSnapshot.loadLatest(file).size());
+		assertFalse(new File(file.getPath() + ".tmp").exists());
+	}
+
+	/**
+	 * Checks that a corrupt snapshot is set aside and the previous generation is loaded instead,
+	 * and that the previous generation is loaded if the snapshot is missing.
+	 * @throws IOException if the snapshots can't be written or loaded.
+	 */
+	@Test
+	public void testLoadLatestFallsBackToPreviousGeneration() throws IOException {
+		File file = new File(folder.getRoot(), "catalog.snapshot");
+		CatalogSnapshot.write(file, lists());
+		CatalogSnapshot.write(file, Arrays.asList(Catalogs.list(20, 29)));
+		flip(file, file.length() / 2);
+		assertEquals(51, CatalogSnapshot.loadLatest(file).size());
+		assertFalse(file.exists());
+		assertTrue(new File(file.getPath() + CatalogSnapshot.CORRUPT_SUFFIX).exists());
+		// The corrupt snapshot isn't kept as the previous generation by the next write.
+		CatalogSnapshot.write(file, Arrays.asList(Catalogs.list(30, 30)));
+		assertEquals(51, CatalogSnapshot.load(CatalogSnapshot.previous(file)).size());
+		assertTrue(file.delete());
+		assertEquals(51, CatalogSnapshot.loadLatest(file).size());
+	}
+
+	/**
+	 * Checks that loading fails if no generation of the snapshot is valid, instead of returning nothing.
+	 * @throws IOException if the snapshots can't be written or changed.
+	 */
+	@Test
+	public void testLoadLatestFailsWithoutValidGeneration() throws IOException {
+		File file = new File(folder.getRoot(), "catalog.snapshot");
+		assertLatestNotLoaded(file);
+		CatalogSnapshot.write(file, lists());
+		flip(file, file.length() / 2);
+		assertLatestNotLoaded(file);
+		flip(file, file.length() / 2);
+		CatalogSnapshot.write(file, lists());
+		flip(file, file.length() / 2);
+		flip(CatalogSnapshot.previous(file), file.length() / 2);
+		assertLatestNotLoaded(file);
+		assertTrue(file.exists());
+	}
+
+	/**
+	 * Checks that a snapshot can be written while the old one is mapped, and that the mapped catalog
+	 * keeps reading the old one.
+	 * @throws IOException if the snapshots can't be written, mapped, or loaded.
+	 */
+	@Test
+	public void testWriteWhileMapped() throws IOException {
+		File file = new File(folder.getRoot(), "catalog.snapshot");
+		CatalogSnapshot.write(file, lists());
+		MappedCatalog catalog = new MappedCatalog(file);
+		CatalogSnapshot.write(file, Arrays.asList(Catalogs.list(20, 29)));
+		assertEquals(51, catalog.size());
+		catalog.verify();
+		assertEquals(20, CatalogSnapshot.load(file).size());
+	}
+
+	/**
+	 * Returns two lists of headphones of different types, one of which has a headphone with no URL.
+	 * @return two lists of headphones.
+	 */
+	private static List<HeadphoneList> lists() {
+		HeadphoneList inEar = Catalogs.list(50, 28);
+		HeadphoneList earbuds = new HeadphoneList("Earbud");
+		earbuds.add(new Headphone("Bud \u00e9", "Earbud", null, new double[CurveStore.CURVE_LENGTH]));
+		return Arrays.asList(inEar, earbuds);
+	}
+
+	/**
+	 * Inverts the bits of a byte of a file.
+	 * @param file File to change.
+	 * @param position Position of the byte.
+	 * @throws IOException if the file can't be changed.
+	 */
+	private static void flip(File file, long position) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.seek(position);
+			int value = raf.read();
+			raf.seek(position);
+			raf.write(~value);
+		}
+	}
+
+	/**
+	 * Checks that loading a snapshot fails.
+	 * @param file Snapshot to load.
+	 */
+	private static void assertNotLoaded(File file) {
+		try {
+			CatalogSnapshot.load(file);
+			fail("Loaded a damaged snapshot.");
+		} catch (IOException e) {
+			// Expected.
+		}
+	}
+
+	/**
+	 * Checks that loading the newest valid generation of a snapshot fails.
+	 * @param file Snapshot to load.
+	 */
+	private static void assertLatestNotLoaded(File file) {
+		try {
+			CatalogSnapshot.loadLatest(file);
+			fail("Loaded a snapshot with no valid generation.");
+		} catch (IOException e) {
+			// Expected.
+		}
+	}
+
+}
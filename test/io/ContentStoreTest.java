@@ -0,0 +1,130 @@
+package io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that ContentStore links saved files with the same contents and deletes stored copies
+ * once no saved file has their contents.
+ *
+ * @author Adam Luck
+ */
+public class ContentStoreTest {
+
+	/** Contents of the first version of the PDFs. */
+	private static final byte[] OLD = "old contents".getBytes();
+	/** Contents of the second version of the PDFs. */
+	private static final byte[] NEW = "new contents".getBytes();
+
+	/** Folder the saved files and store are in. */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/** Directory of the store. */
+	private File dir;
+	/** First saved file. */
+	private File a;
+	/** Second saved file. */
+	private File b;
+
+	/**
+	 * Makes the store's directory and names the saved files.
+	 * @throws IOException if a folder can't be made.
+	 */
+	@Before
+	public void setUp() throws IOException {
+		dir = new File(folder.getRoot(), "content");
+		a = new File(folder.newFolder("In-Ear"), "a.pdf");
+		b = new File(folder.newFolder("On-Ear"), "b.pdf");
+	}
+
+	/**
+	 * Checks that files with the same contents are linked to one copy, and that the copy is only
+	 * deleted once both files have been replaced with new contents.
+	 * @throws IOException if a file can't be saved or added.
+	 */
+	@Test
+	public void testReleasesReplacedCopy() throws IOException {
+		ContentStore store = new ContentStore(dir);
+		String oldHash = add(store, a, OLD);
+		assertEquals(oldHash, add(store, b, OLD));
+		File oldCopy = store.getCopy(oldHash);
+		assertTrue(Files.isSameFile(a.toPath(), b.toPath()));
+		assertTrue(Files.isSameFile(a.toPath(), oldCopy.toPath()));
+		assertEquals(2, store.getReferences(oldHash));
+
+		String newHash = add(store, a, NEW);
+		assertEquals(1, store.getReferences(oldHash));
+		assertEquals(1, store.getReferences(newHash));
+		assertTrue(oldCopy.exists());
+		assertArrayEquals(OLD, Files.readAllBytes(b.toPath()));
+
+		add(store, b, NEW);
+		assertEquals(0, store.getReferences(oldHash));
+		assertEquals(2, store.getReferences(newHash));
+		assertFalse(oldCopy.exists());
+		assertTrue(Files.isSameFile(a.toPath(), b.toPath()));
+	}
+
+	/**
+	 * Checks that adding a file again with the same contents doesn't count it twice.
+	 * @throws IOException if a file can't be saved or added.
+	 */
+	@Test
+	public void testSameContentsAgain() throws IOException {
+		ContentStore store = new ContentStore(dir);
+		String hash = add(store, a, OLD);
+		add(store, a, OLD);
+		assertEquals(1, store.getReferences(hash));
+		add(store, a, NEW);
+		assertFalse(store.getCopy(hash).exists());
+	}
+
+	/**
+	 * Checks that the references are loaded from the index, and that the index is rewritten without
+	 * the lines that later lines replaced.
+	 * @throws IOException if a file can't be saved or added.
+	 */
+	@Test
+	public void testIndexPersists() throws IOException {
+		ContentStore store = new ContentStore(dir);
+		String oldHash = add(store, a, OLD);
+		add(store, b, OLD);
+		add(store, a, NEW);
+		File index = new File(dir, ContentStore.INDEX_FILE);
+		assertEquals(3, Files.readAllLines(index.toPath()).size());
+
+		store = new ContentStore(dir);
+		assertEquals(2, Files.readAllLines(index.toPath()).size());
+		assertEquals(1, store.getReferences(oldHash));
+		add(store, b, NEW);
+		assertFalse(store.getCopy(oldHash).exists());
+	}
+
+	/**
+	 * Saves a file with the given contents like a download would, replacing rather than rewriting it,
+	 * and adds it to the store.
+	 * @param store Store to add the file to.
+	 * @param file File to save.
+	 * @param contents Contents of the file.
+	 * @return the hash of the file's contents.
+	 * @throws IOException if the file can't be saved or added.
+	 */
+	private static String add(ContentStore store, File file, byte[] contents) throws IOException {
+		Files.deleteIfExists(file.toPath());
+		Files.write(file.toPath(), contents);
+		return store.add(file);
+	}
+
+}
@@ -0,0 +1,178 @@
+package io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import data.CurveStore;
+import data.Headphone;
+import util.HeadphoneList;
+
+/**
+ * Checks DatabaseSync against an in-memory H2 database in MySQL mode, with a headphones table
+ * like the one the program syncs to.
+ *
+ * @author Adam Luck
+ */
+public class DatabaseSyncTest {
+
+	/** Name of a headphone with single and double quotes in it. */
+	private static final String QUOTED_NAME = "Bob's \"Pro\" Bud; DROP TABLE headphones; --";
+
+	/** Connection to the in-memory database. */
+	private Connection con;
+
+	/**
+	 * Opens a new in-memory database and creates the headphones table.
+	 * @throws SQLException if the database can't be created.
+	 */
+	@Before
+	public void setUp() throws SQLException {
+		con = DriverManager.getConnection("jdbc:h2:mem:;MODE=MySQL");
+		try (Statement stmt = con.createStatement()) {
+			stmt.execute("CREATE TABLE headphones (name VARCHAR(255) PRIMARY KEY, type VARCHAR(32) NOT NULL,"
+					+ " url VARCHAR(255) NOT NULL, dbVals TEXT NOT NULL)");
+		}
+	}
+
+	/**
+	 * Closes the database, which drops it.
+	 * @throws SQLException if the database can't be closed.
+	 */
+	@After
+	public void tearDown() throws SQLException {
+		con.close();
+	}
+
+	/**
+	 * Checks that the first sync inserts every headphone with its information, across several batches.
+	 * @throws SQLException if the database can't be read or updated.
+	 */
+	@Test
+	public void testFirstSync() throws SQLException {
+		List<HeadphoneList> lists = lists(7);
+		assertEquals(8, DatabaseSync.sync(con, lists, 3));
+		Map<String, String[]> rows = rows();
+		assertEquals(8, rows.size());
+		for (HeadphoneList list : lists) {
+			for (Headphone headphone : list.getAll()) {
+				String[] row = rows.get(headphone.getName());
+				assertEquals(headphone.getType(), row[0]);
+				assertEquals(headphone.getURL(), row[1]);
+				assertEquals(Arrays.toString(headphone.getDBVals()), row[2]);
+			}
+		}
+		assertTrue(con.getAutoCommit());
+	}
+
+	/**
+	 * Checks that syncing again inserts nothing, and that only new headphones are inserted after that.
+	 * @throws SQLException if the database can't be read or updated.
+	 */
+	@Test
+	public void testResyncIsNoOp() throws SQLException {
+		List<HeadphoneList> lists = lists(7);
+		DatabaseSync.sync(con, lists, DatabaseSync.DEFAULT_BATCH_SIZE);
+		assertEquals(0, DatabaseSync.sync(con, lists, DatabaseSync.DEFAULT_BATCH_SIZE));
+		assertEquals(8, rows().size());
+		lists.get(0).add(headphone("New", "In-Ear", 1));
+		assertEquals(1, DatabaseSync.sync(con, lists, DatabaseSync.DEFAULT_BATCH_SIZE));
+		assertEquals(9, rows().size());
+	}
+
+	/**
+	 * Checks that a name with quotes is inserted as it is, and is found by the next sync.
+	 * @throws SQLException if the database can't be read or updated.
+	 */
+	@Test
+	public void testQuotedName() throws SQLException {
+		List<HeadphoneList> lists = lists(2);
+		assertEquals(3, DatabaseSync.sync(con, lists, DatabaseSync.DEFAULT_BATCH_SIZE));
+		assertEquals("Earbud", rows().get(QUOTED_NAME)[0]);
+		assertEquals(0, DatabaseSync.sync(con, lists, DatabaseSync.DEFAULT_BATCH_SIZE));
+	}
+
+	/**
+	 * Checks that a batch that fails rolls back the batches executed before it, and restores auto-commit.
+	 * @throws SQLException if the database can't be read.
+	 */
+	@Test
+	public void testFailingBatchRollsBack() throws SQLException {
+		List<HeadphoneList> lists = lists(7);
+		// The headphone without a URL is in the last list, so it's in the third batch of three.
+		HeadphoneList bad = new HeadphoneList("Earbud");
+		bad.add(new Headphone("No URL", "Earbud", null, new double[CurveStore.CURVE_LENGTH]));
+		lists.add(bad);
+		try {
+			DatabaseSync.sync(con, lists, 3);
+			fail("Synced a headphone the table doesn't allow.");
+		} catch (SQLException e) {
+			// Expected.
+		}
+		assertEquals(0, rows().size());
+		assertTrue(con.getAutoCommit());
+		lists.remove(bad);
+		assertEquals(8, DatabaseSync.sync(con, lists, 3));
+	}
+
+	/**
+	 * Returns a list of in-ear headphones and a list with an earbud with quotes in its name.
+	 * @param count Number of in-ear headphones.
+	 * @return the lists of headphones.
+	 */
+	private static List<HeadphoneList> lists(int count) {
+		HeadphoneList inEar = new HeadphoneList("In-Ear");
+		for (int i = 0; i < count; i++) {
+			inEar.add(headphone("In-Ear " + i, "In-Ear", i));
+		}
+		HeadphoneList earbuds = new HeadphoneList("Earbud");
+		earbuds.add(headphone(QUOTED_NAME, "Earbud", count));
+		return new ArrayList<HeadphoneList>(Arrays.asList(inEar, earbuds));
+	}
+
+	/**
+	 * Returns a headphone with a flat curve at the given level.
+	 * @param name Name of the headphone.
+	 * @param type Type of the headphone.
+	 * @param level Decibel value of every frequency.
+	 * @return the headphone.
+	 */
+	private static Headphone headphone(String name, String type, double level) {
+		double[] dBVals = new double[CurveStore.CURVE_LENGTH];
+		Arrays.fill(dBVals, level);
+		return new Headphone(name, type, "https://example.com/" + name.hashCode() + ".pdf", dBVals);
+	}
+
+	/**
+	 * Returns the type, URL, and decibel values of every row in the table, by name.
+	 * @return the rows of the table.
+	 * @throws SQLException if the table can't be read.
+	 */
+	private Map<String, String[]> rows() throws SQLException {
+		Map<String, String[]> rows = new HashMap<String, String[]>();
+		try (PreparedStatement stmt = con.prepareStatement("SELECT name, type, url, dbVals FROM headphones");
+				ResultSet rs = stmt.executeQuery()) {
+			while (rs.next()) {
+				rows.put(rs.getString(1), new String[] {rs.getString(2), rs.getString(3), rs.getString(4)});
+			}
+		}
+		return rows;
+	}
+
+}
@@ -0,0 +1,187 @@
+package io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Compares the download stage of the ingest pipeline on a platform thread pool and on a virtual thread
+ * per download, fetching a batch of files from a local fixture server that waits before each response
+ * like a distant server would, and reporting the files downloaded per second.
+ * The platform pool has as many threads as requests allowed to the host, and the JDK keeps
+ * enough connections alive for every request.
+ * The number of platform threads the downloads used at once is printed after each iteration, since
+ * JMH doesn't measure it. Virtual threads need the virtual profile built and run on JDK 21 or later:
+ * mvn -Pbenchmark,virtual clean test-compile exec:exec -Djmh.args="DownloadThreads"
+ *
+ * @author Adam Luck
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-D" + HttpFetcher.KEEP_ALIVE_PROPERTY + "=64")
+public class DownloadThreadsBenchmark {
+
+	/** Number of files downloaded per operation. */
+	private static final int LINKS = 256;
+	/** Number of bytes in each file. */
+	private static final int FILE_BYTES = 16 * 1024;
+	/** Number of threads the fixture server handles requests on, started before measuring. */
+	private static final int SERVER_THREADS = 128;
+
+	/** Kind of threads the downloads run on, "platform" or "virtual". */
+	@Param({"platform", "virtual"})
+	public String threads;
+	/** Number of concurrent requests allowed to the fixture server. */
+	@Param({"4", "64"})
+	public int maxPerHost;
+	/** Milliseconds the fixture server waits before each response. */
+	@Param({"20"})
+	public int latencyMs;
+
+	/** Fixture server. */
+	private HttpServer server;
+	/** Executor the fixture server handles requests on. */
+	private ThreadPoolExecutor serverThreads;
+	/** Fetcher the downloads use. */
+	private HttpFetcher fetcher;
+	/** Folder the files are downloaded to. */
+	private File dir;
+	/** Number of platform threads alive before the downloads started. */
+	private int baselineThreads;
+	/** Number of the next operation, which downloads to its own file names. */
+	private int operation;
+
+	/**
+	 * Starts the fixture server and checks that the asked for kind of threads is available.
+	 * @throws Exception if the server can't be started or virtual threads aren't available.
+	 */
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		byte[] body = new byte[FILE_BYTES];
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), SERVER_THREADS);
+		server.createContext("/", exchange -> {
+			try {
+				Thread.sleep(latencyMs);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		});
+		serverThreads = new ThreadPoolExecutor(SERVER_THREADS, SERVER_THREADS, 0, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<Runnable>());
+		serverThreads.prestartAllCoreThreads();
+		server.setExecutor(serverThreads);
+		server.start();
+		fetcher = new HttpFetcher(null, maxPerHost, 10000, 10000, 1, 0);
+		dir = Files.createTempDirectory("downloads").toFile();
+		if (threads.equals("virtual")) {
+			ExecutorService executor = IngestPipeline.newDownloadExecutor(threads, maxPerHost);
+			String name = executor.submit(() -> Thread.currentThread().getName()).get();
+			executor.shutdown();
+			if (!name.startsWith("ingest-download-"))
+				throw new IllegalStateException("Virtual threads aren't available; build with -Pvirtual on JDK 21.");
+		}
+	}
+
+	/**
+	 * Records the number of platform threads alive before the downloads, and resets the peak.
+	 */
+	@Setup(Level.Iteration)
+	public void resetPeak() {
+		ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		baselineThreads = threadBean.getThreadCount();
+		threadBean.resetPeakThreadCount();
+	}
+
+	/**
+	 * Prints the most platform threads the downloads used at once during the iteration.
+	 */
+	@TearDown(Level.Iteration)
+	public void printPeak() {
+		System.out.printf("%nPeak platform threads used by %s downloads with maxPerHost %d: %d%n", threads,
+				maxPerHost, ManagementFactory.getThreadMXBean().getPeakThreadCount() - baselineThreads);
+	}
+
+	/**
+	 * Stops the fixture server and deletes the downloaded files.
+	 * @throws IOException if a file can't be deleted.
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		server.stop(0);
+		serverThreads.shutdownNow();
+		for (File file : dir.listFiles()) {
+			Files.delete(file.toPath());
+		}
+		Files.delete(dir.toPath());
+	}
+
+	/**
+	 * Downloads a batch of files on the download executor and waits for all of them.
+	 * @return the number of files downloaded.
+	 * @throws InterruptedException if interrupted while waiting.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(LINKS)
+	public int download() throws InterruptedException {
+		ExecutorService downloaders = IngestPipeline.newDownloadExecutor(threads, maxPerHost);
+		CountDownLatch left = new CountDownLatch(LINKS);
+		AtomicInteger downloaded = new AtomicInteger();
+		String base = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/";
+		int op = operation++;
+		try {
+			for (int i = 0; i < LINKS; i++) {
+				String name = "hp" + i + ".pdf";
+				downloaders.execute(() -> {
+					try {
+						if (fetcher.fetch(base + op + "/" + name, new File(dir, name)))
+							downloaded.incrementAndGet();
+					} catch (IOException e) {
+						System.err.println(e.getMessage());
+					} finally {
+						left.countDown();
+					}
+				});
+			}
+			left.await();
+		} finally {
+			downloaders.shutdownNow();
+		}
+		return downloaded.get();
+	}
+
+}
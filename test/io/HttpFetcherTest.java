@@ -0,0 +1,262 @@
+package io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Checks HttpFetcher against a stub HTTP server on the loopback address.
+ *
+ * @author Adam Luck
+ */
+public class HttpFetcherTest {
+
+	/** Body of the file the server serves. */
+	private static final byte[] BODY = new byte[20000];
+	/** ETag of the file the server serves. */
+	private static final String ETAG = "\"v1\"";
+
+	static {
+		for (int i = 0; i < BODY.length; i++) {
+			BODY[i] = (byte) i;
+		}
+	}
+
+	/** Folder files are fetched to. */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/** Stub server. */
+	private HttpServer server;
+	/** Executor the server handles requests on. */
+	private ExecutorService serverThreads;
+	/** Handler of the next requests to the server. */
+	private volatile HttpHandler handler;
+	/** Requests the server has received, in the order it received them. */
+	private List<HttpExchange> requests;
+
+	/**
+	 * Starts the server on a free port.
+	 * @throws IOException if the server can't be started.
+	 */
+	@Before
+	public void setUp() throws IOException {
+		requests = Collections.synchronizedList(new ArrayList<HttpExchange>());
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/", exchange -> {
+			requests.add(exchange);
+			handler.handle(exchange);
+		});
+		serverThreads = Executors.newCachedThreadPool();
+		server.setExecutor(serverThreads);
+		server.start();
+	}
+
+	/**
+	 * Stops the server.
+	 */
+	@After
+	public void tearDown() {
+		server.stop(0);
+		serverThreads.shutdownNow();
+	}
+
+	/**
+	 * Checks that a file is downloaded, that fetching it again sends its ETag and downloads nothing,
+	 * and that a new fetcher with the same validator file does the same.
+	 * @throws IOException if a file can't be fetched.
+	 */
+	@Test
+	public void testNotModified() throws IOException {
+		handler = HttpFetcherTest::serveFile;
+		File validators = new File(folder.getRoot(), "validators.txt");
+		File target = new File(folder.getRoot(), "a.pdf");
+		HttpFetcher fetcher = new HttpFetcher(validators, 4, 1000, 1000, 1, 0);
+		assertTrue(fetcher.fetch(url("/a.pdf"), target));
+		assertArrayEquals(BODY, Files.readAllBytes(target.toPath()));
+		assertNull(requests.get(0).getRequestHeaders().getFirst("If-None-Match"));
+		assertFalse(fetcher.fetch(url("/a.pdf"), target));
+		assertEquals(ETAG, requests.get(1).getRequestHeaders().getFirst("If-None-Match"));
+		assertFalse(new HttpFetcher(validators, 4, 1000, 1000, 1, 0).fetch(url("/a.pdf"), target));
+		assertEquals(3, requests.size());
+		assertArrayEquals(BODY, Files.readAllBytes(target.toPath()));
+	}
+
+	/**
+	 * Checks that server errors are retried until one succeeds, and that other errors aren't retried.
+	 * @throws IOException if a file can't be fetched.
+	 */
+	@Test
+	public void testRetries() throws IOException {
+		AtomicInteger failures = new AtomicInteger(2);
+		handler = exchange -> {
+			if (failures.getAndDecrement() > 0)
+				respond(exchange, 503, new byte[0]);
+			else
+				serveFile(exchange);
+		};
+		HttpFetcher fetcher = new HttpFetcher(null, 4, 1000, 1000, 3, 1);
+		File target = new File(folder.getRoot(), "a.pdf");
+		assertTrue(fetcher.fetch(url("/a.pdf"), target));
+		assertEquals(3, requests.size());
+		assertArrayEquals(BODY, Files.readAllBytes(target.toPath()));
+		handler = exchange -> respond(exchange, 404, new byte[0]);
+		try {
+			fetcher.fetch(url("/missing.pdf"), new File(folder.getRoot(), "missing.pdf"));
+			fail("Fetched a missing file.");
+		} catch (IOException e) {
+			// Expected.
+		}
+		assertEquals(4, requests.size());
+		assertFalse(new File(folder.getRoot(), "missing.pdf").exists());
+	}
+
+	/**
+	 * Checks that a download cut off halfway is resumed from where it stopped with a Range request,
+	 * and that the target is never partial.
+	 * @throws IOException if a file can't be fetched.
+	 */
+	@Test
+	public void testResumesCutOffDownload() throws IOException {
+		AtomicInteger cutOffs = new AtomicInteger(1);
+		handler = exchange -> {
+			if (cutOffs.getAndDecrement() > 0) {
+				// Promise the whole file, but only send half of it.
+				exchange.getResponseHeaders().set("ETag", ETAG);
+				exchange.sendResponseHeaders(200, BODY.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(BODY, 0, BODY.length / 2);
+				out.flush();
+				exchange.close();
+			}
+			else {
+				serveFile(exchange);
+			}
+		};
+		HttpFetcher fetcher = new HttpFetcher(null, 4, 1000, 1000, 2, 1);
+		File target = new File(folder.getRoot(), "a.pdf");
+		assertTrue(fetcher.fetch(url("/a.pdf"), target));
+		assertArrayEquals(BODY, Files.readAllBytes(target.toPath()));
+		assertEquals(2, requests.size());
+		assertEquals("bytes=" + BODY.length / 2 + "-", requests.get(1).getRequestHeaders().getFirst("Range"));
+		assertEquals(ETAG, requests.get(1).getRequestHeaders().getFirst("If-Range"));
+		assertFalse(new File(target.getPath() + HttpFetcher.PART_EXTENSION).exists());
+	}
+
+	/**
+	 * Checks that no more than the per-host limit of requests are made at once, and that the fetcher
+	 * can be used again after a batch of fetches.
+	 * @throws Exception if a file can't be fetched.
+	 */
+	@Test
+	public void testPerHostLimit() throws Exception {
+		AtomicInteger active = new AtomicInteger();
+		AtomicInteger maxActive = new AtomicInteger();
+		handler = exchange -> {
+			int now = active.incrementAndGet();
+			maxActive.accumulateAndGet(now, Math::max);
+			try {
+				Thread.sleep(20);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			active.decrementAndGet();
+			serveFile(exchange);
+		};
+		HttpFetcher fetcher = new HttpFetcher(null, 2, 1000, 1000, 1, 0);
+		ExecutorService clients = Executors.newFixedThreadPool(8);
+		try {
+			for (int batch = 0; batch < 2; batch++) {
+				List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+				for (int i = 0; i < 8; i++) {
+					String path = "/" + batch + "-" + i + ".pdf";
+					File target = new File(folder.getRoot(), batch + "-" + i + ".pdf");
+					futures.add(clients.submit(() -> fetcher.fetch(url(path), target)));
+				}
+				for (Future<Boolean> future : futures) {
+					assertTrue(future.get());
+				}
+			}
+		} finally {
+			clients.shutdownNow();
+		}
+		assertEquals(16, requests.size());
+		assertTrue("Made " + maxActive.get() + " requests at once", maxActive.get() <= 2);
+	}
+
+	/**
+	 * Returns the URL of a path on the stub server.
+	 * @param path Path on the server.
+	 * @return the URL of the path.
+	 */
+	private String url(String path) {
+		return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + path;
+	}
+
+	/**
+	 * Serves the file, with a 304 if the request has its ETag and a 206 if it asks for the rest of it.
+	 * @param exchange Request to respond to.
+	 * @throws IOException if the response can't be sent.
+	 */
+	private static void serveFile(HttpExchange exchange) throws IOException {
+		exchange.getResponseHeaders().set("ETag", ETAG);
+		if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+			exchange.sendResponseHeaders(304, -1);
+			exchange.close();
+			return;
+		}
+		String range = exchange.getRequestHeaders().getFirst("Range");
+		if (range != null && ETAG.equals(exchange.getRequestHeaders().getFirst("If-Range"))) {
+			int from = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+			exchange.getResponseHeaders().set("Content-Range",
+					"bytes " + from + "-" + (BODY.length - 1) + "/" + BODY.length);
+			byte[] rest = new byte[BODY.length - from];
+			System.arraycopy(BODY, from, rest, 0, rest.length);
+			respond(exchange, 206, rest);
+			return;
+		}
+		respond(exchange, 200, BODY);
+	}
+
+	/**
+	 * Sends a response with the given status and body.
+	 * @param exchange Request to respond to.
+	 * @param status HTTP status of the response.
+	 * @param body Body of the response.
+	 * @throws IOException if the response can't be sent.
+	 */
+	private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+		exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+}
@@ -0,0 +1,190 @@
+package io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import data.CurveStore;
+import data.Headphone;
+import parse.InvalidDocumentException;
+
+/**
+ * Checks IngestPipeline with stub download and parse steps, so no PDFs are downloaded or parsed.
+ *
+ * @author Adam Luck
+ */
+public class IngestPipelineTest {
+
+	/** Number of links in each batch. */
+	private static final int LINKS = 60;
+
+	/**
+	 * Checks that failed downloads, parses, and collections don't stop the batch, that every other link
+	 * is collected once, and that every link has been handled when run returns.
+	 * @throws InterruptedException if interrupted while collecting.
+	 */
+	@Test
+	public void testFailuresDontStopBatch() throws InterruptedException {
+		AtomicInteger downloads = new AtomicInteger();
+		AtomicInteger parses = new AtomicInteger();
+		IngestPipeline pipeline = new IngestPipeline(3, 2, 2, 2, null, link -> {
+			downloads.incrementAndGet();
+			if (number(link) % 5 == 0)
+				throw new IOException("Download failed.");
+			return null;
+		}, link -> {
+			parses.incrementAndGet();
+			if (number(link) % 7 == 0)
+				throw new InvalidDocumentException("Parse failed.");
+			if (number(link) % 11 == 0)
+				throw new IllegalStateException("Parse failed.");
+			return headphone(link);
+		});
+		List<String> collected = new ArrayList<String>();
+		pipeline.run(links(LINKS), headphone -> {
+			if (headphone.getName().equals("hp13"))
+				throw new IllegalStateException("Collect failed.");
+			collected.add(headphone.getName());
+		});
+		Set<String> expected = new HashSet<String>();
+		int downloaded = 0;
+		for (int i = 0; i < LINKS; i++) {
+			if (i % 5 == 0)
+				continue;
+			downloaded++;
+			if (i % 7 != 0 && i % 11 != 0 && i != 13)
+				expected.add("hp" + i);
+		}
+		assertEquals(LINKS, downloads.get());
+		assertEquals(downloaded, parses.get());
+		assertEquals(expected.size(), collected.size());
+		assertEquals(expected, new HashSet<String>(collected));
+	}
+
+	/**
+	 * Checks that the collector is only called from the thread that runs the pipeline.
+	 * @throws InterruptedException if interrupted while collecting.
+	 */
+	@Test
+	public void testCollectsOnCallingThread() throws InterruptedException {
+		IngestPipeline pipeline = new IngestPipeline(4, 4, 1, 1, null, link -> null,
+				IngestPipelineTest::headphone);
+		Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+		pipeline.run(links(LINKS), headphone -> threads.add(Thread.currentThread()));
+		assertEquals(1, threads.size());
+		assertSame(Thread.currentThread(), threads.iterator().next());
+	}
+
+	/**
+	 * Checks that fast downloads and parses wait for a slow collector instead of running ahead of it,
+	 * so no more links are between stages than the queues and threads can hold.
+	 * @throws InterruptedException if interrupted while collecting.
+	 */
+	@Test
+	public void testBackpressure() throws InterruptedException {
+		int downloadThreads = 2;
+		int parseThreads = 2;
+		int parseQueueCapacity = 3;
+		int collectQueueCapacity = 1;
+		AtomicInteger downloaded = new AtomicInteger();
+		AtomicInteger parsed = new AtomicInteger();
+		IngestPipeline pipeline = new IngestPipeline(downloadThreads, parseThreads, parseQueueCapacity,
+				collectQueueCapacity, null, link -> {
+					downloaded.incrementAndGet();
+					return null;
+				}, link -> {
+					parsed.incrementAndGet();
+					return headphone(link);
+				});
+		AtomicInteger collected = new AtomicInteger();
+		AtomicInteger maxUncollected = new AtomicInteger();
+		AtomicInteger maxParsedUncollected = new AtomicInteger();
+		pipeline.run(links(LINKS), headphone -> {
+			maxUncollected.accumulateAndGet(downloaded.get() - collected.get(), Math::max);
+			maxParsedUncollected.accumulateAndGet(parsed.get() - collected.get(), Math::max);
+			sleep(5);
+			collected.incrementAndGet();
+		});
+		assertEquals(LINKS, collected.get());
+		// Each link downloaded but not collected is waiting on a download or parse thread, in a queue,
+		// or in the collector.
+		int maxParsedHeld = parseThreads + collectQueueCapacity + 1;
+		int maxHeld = downloadThreads + parseQueueCapacity + maxParsedHeld;
+		assertTrue(maxUncollected.get() + " downloaded links weren't collected",
+				maxUncollected.get() <= maxHeld);
+		assertTrue(maxParsedUncollected.get() + " parsed links weren't collected",
+				maxParsedUncollected.get() <= maxParsedHeld);
+	}
+
+	/**
+	 * Checks that a slow download doesn't hold up the links behind it, and that run waits for it.
+	 * @throws InterruptedException if interrupted while collecting.
+	 */
+	@Test
+	public void testSlowDownload() throws InterruptedException {
+		IngestPipeline pipeline = new IngestPipeline(2, 1, 1, 1, null, link -> {
+			if (number(link) == 0)
+				sleep(300);
+			return null;
+		}, IngestPipelineTest::headphone);
+		List<String> collected = new ArrayList<String>();
+		pipeline.run(links(10), headphone -> collected.add(headphone.getName()));
+		assertEquals(10, collected.size());
+		assertEquals("hp0", collected.get(collected.size() - 1));
+	}
+
+	/**
+	 * Returns links numbered from 0, which aren't downloaded by the stub steps.
+	 * @param count Number of links.
+	 * @return links numbered from 0.
+	 */
+	private static List<MeasurementLink> links(int count) {
+		List<MeasurementLink> links = new ArrayList<MeasurementLink>(count);
+		for (int i = 0; i < count; i++) {
+			links.add(new MeasurementLink("In-Ear", "http://localhost/hp" + i + ".pdf", "hp" + i, "hp" + i + ".pdf"));
+		}
+		return links;
+	}
+
+	/**
+	 * Returns the number of a link made by links(count).
+	 * @param link Link to get the number of.
+	 * @return the number of the link.
+	 */
+	private static int number(MeasurementLink link) {
+		return Integer.parseInt(link.getDirectoryName().substring(2));
+	}
+
+	/**
+	 * Returns a headphone named after the link, like a parse step would.
+	 * @param link Link to make a headphone for.
+	 * @return a headphone named after the link.
+	 */
+	private static Headphone headphone(MeasurementLink link) {
+		return new Headphone(link.getDirectoryName(), link.getType(), link.getURL(),
+				new double[CurveStore.CURVE_LENGTH]);
+	}
+
+	/**
+	 * Sleeps for the given number of milliseconds, keeping the interrupt if interrupted.
+	 * @param ms Number of milliseconds to sleep for.
+	 */
+	private static void sleep(long ms) {
+		try {
+			Thread.sleep(ms);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
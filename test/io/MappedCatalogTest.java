@@ -0,0 +1,169 @@
+package io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import analyze.Analyzer;
+import analyze.Catalogs;
+import data.CurveStore;
+import data.Headphone;
+import util.HeadphoneList;
+
+/**
+ * Checks analyses of a mapped catalog filtered by type, and which checks are done when a catalog is opened.
+ *
+ * @author Adam Luck
+ */
+public class MappedCatalogTest {
+
+	/** Folder the snapshots are written to. */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Checks that an analysis of one type in the catalog matches an analysis of a list of that type,
+	 * for every number of headphones the type has.
+	 * @throws IOException if the snapshot can't be written or mapped.
+	 */
+	@Test
+	public void testTypeMatchesList() throws IOException {
+		HeadphoneList inEar = inEar(100);
+		HeadphoneList earbuds = earbuds(30);
+		MappedCatalog catalog = map(Arrays.asList(inEar, earbuds));
+		assertEquals(130, catalog.size());
+		assertEquals(30, catalog.count("Earbud"));
+		assertEquals(0, catalog.count("Wireless"));
+		Random random = new Random(30);
+		for (int returnAmt = 0; returnAmt <= earbuds.size(); returnAmt++) {
+			double[] freqDiff = Catalogs.freqDiff(random);
+			Headphone base = earbuds.getAll()[random.nextInt(earbuds.size())];
+			assertArrayEquals(Catalogs.urls(Analyzer.analyze(base, freqDiff, returnAmt, earbuds)),
+					Catalogs.urls(Analyzer.analyze(base, freqDiff, returnAmt, catalog, "Earbud")));
+		}
+	}
+
+	/**
+	 * Checks that asking for more headphones than the type has is an error,
+	 * instead of returning an array padded with nulls.
+	 * @throws IOException if the snapshot can't be written or mapped.
+	 */
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testMoreThanTypeHas() throws IOException {
+		MappedCatalog catalog = map(Arrays.asList(inEar(100), earbuds(5)));
+		Analyzer.analyze(null, new double[CurveStore.CURVE_LENGTH], 6, catalog, "Earbud");
+	}
+
+	/**
+	 * Checks that a type that isn't in the catalog has no headphones to return.
+	 * @throws IOException if the snapshot can't be written or mapped.
+	 */
+	@Test
+	public void testMissingType() throws IOException {
+		MappedCatalog catalog = map(Arrays.asList(Catalogs.list(10, 32)));
+		assertEquals(0, Analyzer.analyze(null, new double[CurveStore.CURVE_LENGTH], 0, catalog, "Wireless").length);
+		try {
+			Analyzer.analyze(null, new double[CurveStore.CURVE_LENGTH], 1, catalog, "Wireless");
+			fail("Returned a headphone of a type that isn't in the catalog.");
+		} catch (IndexOutOfBoundsException e) {
+			// Expected.
+		}
+	}
+
+	/**
+	 * Checks that opening a catalog checks its header but not its checksum, which verify checks.
+	 * @throws IOException if the snapshot can't be written or changed.
+	 */
+	@Test
+	public void testChecksumOnlyCheckedByVerify() throws IOException {
+		File file = folder.newFile("catalog.snapshot");
+		CatalogSnapshot.write(file, Arrays.asList(Catalogs.list(10, 33)));
+		new MappedCatalog(file).verify();
+		// Damage a curve, which opening doesn't read.
+		int position = (int) CatalogSnapshot.map(file).getLong(CatalogSnapshot.CURVES_POSITION);
+		flip(file, position);
+		MappedCatalog catalog = new MappedCatalog(file);
+		assertEquals(10, catalog.size());
+		try {
+			catalog.verify();
+			fail("Verified a damaged snapshot.");
+		} catch (IOException e) {
+			// Expected.
+		}
+		// Damage the header, which opening does read.
+		flip(file, position);
+		flip(file, CatalogSnapshot.STRINGS_POSITION);
+		try {
+			new MappedCatalog(file);
+			fail("Opened a snapshot with a damaged header.");
+		} catch (IOException e) {
+			// Expected.
+		}
+	}
+
+	/**
+	 * Returns a list of in-ear headphones.
+	 * @param count Number of headphones.
+	 * @return a list of in-ear headphones.
+	 */
+	private static HeadphoneList inEar(int count) {
+		HeadphoneList inEar = new HeadphoneList(Catalogs.TYPE);
+		for (Headphone headphone : Catalogs.headphones(count, count + 1)) {
+			inEar.add(new Headphone(headphone.getName(), Catalogs.TYPE, headphone.getURL(), headphone.getDBVals()));
+		}
+		return inEar;
+	}
+
+	/**
+	 * Returns a list of earbuds.
+	 * @param count Number of earbuds.
+	 * @return a list of earbuds.
+	 */
+	private static HeadphoneList earbuds(int count) {
+		HeadphoneList earbuds = new HeadphoneList("Earbud");
+		for (Headphone headphone : Catalogs.headphones(count, count)) {
+			earbuds.add(new Headphone(headphone.getName(), "Earbud", headphone.getURL() + "#earbud",
+					headphone.getDBVals()));
+		}
+		return earbuds;
+	}
+
+	/**
+	 * Writes a snapshot of the lists and maps it.
+	 * @param lists Lists to write.
+	 * @return the mapped snapshot.
+	 * @throws IOException if the snapshot can't be written or mapped.
+	 */
+	private MappedCatalog map(List<HeadphoneList> lists) throws IOException {
+		File file = folder.newFile();
+		CatalogSnapshot.write(file, lists);
+		return new MappedCatalog(file);
+	}
+
+	/**
+	 * Inverts the bits of a byte of a file.
+	 * @param file File to change.
+	 * @param position Position of the byte.
+	 * @throws IOException if the file can't be changed.
+	 */
+	private static void flip(File file, long position) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.seek(position);
+			int value = raf.read();
+			raf.seek(position);
+			raf.write(~value);
+		}
+	}
+
+}
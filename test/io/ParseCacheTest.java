@@ -0,0 +1,185 @@
+package io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import data.CurveStore;
+import data.Headphone;
+import parse.MeasurementParser;
+import parse.ParseMode;
+
+/**
+ * Checks that ParseCache finds measurements by hash and parser version, and keeps them across loads.
+ *
+ * @author Adam Luck
+ */
+public class ParseCacheTest {
+
+	/** Version of the raster parser. */
+	private static final String RASTER = MeasurementParser.getVersion(ParseMode.RASTER);
+	/** Version of the vector parser. */
+	private static final String VECTOR = MeasurementParser.getVersion(ParseMode.VECTOR);
+
+	/** Folder the cache file is in. */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/** Cache file. */
+	private File file;
+
+	/**
+	 * Names the cache file.
+	 */
+	@Before
+	public void setUp() {
+		file = new File(folder.getRoot(), "parse-cache.txt");
+	}
+
+	/**
+	 * Checks that cached measurements are found by hash and version, with the asked for type and URL,
+	 * and that other hashes and versions aren't.
+	 * @throws IOException if the cache can't be written.
+	 */
+	@Test
+	public void testHitAndMiss() throws IOException {
+		ParseCache cache = new ParseCache(file);
+		Headphone parsed = headphone("HD 600", 1);
+		cache.put("aa", RASTER, parsed);
+		Headphone cached = cache.get("aa", RASTER, "Over-Ear", "http://example.com/hd600.pdf");
+		assertEquals("HD 600", cached.getName());
+		assertEquals("Over-Ear", cached.getType());
+		assertEquals("http://example.com/hd600.pdf", cached.getURL());
+		assertArrayEquals(parsed.getDBVals(), cached.getDBVals(), 0);
+		assertNotSame(cache.get("aa", RASTER, "Over-Ear", "").getDBVals(), cached.getDBVals());
+		assertNull(cache.get("bb", RASTER, "Over-Ear", ""));
+		assertNull(cache.get("aa", VECTOR, "Over-Ear", ""));
+	}
+
+	/**
+	 * Checks that entries are loaded again by a new cache, with the same hash kept apart in each mode,
+	 * and that putting an entry again doesn't write it twice.
+	 * @throws IOException if the cache can't be written or loaded.
+	 */
+	@Test
+	public void testReload() throws IOException {
+		ParseCache cache = new ParseCache(file);
+		cache.put("aa", RASTER, headphone("Raster", 1));
+		cache.put("aa", VECTOR, headphone("Vector", 2));
+		cache.put("aa", RASTER, headphone("Raster again", 3));
+		assertEquals(2, Files.readAllLines(file.toPath()).size());
+		cache = new ParseCache(file);
+		assertEquals(2, cache.size());
+		assertEquals("Raster", cache.get("aa", RASTER, "Earbud", "").getName());
+		assertArrayEquals(headphone("Raster", 1).getDBVals(), cache.get("aa", RASTER, "Earbud", "").getDBVals(), 0);
+		assertEquals("Vector", cache.get("aa", VECTOR, "Earbud", "").getName());
+		assertEquals(2, Files.readAllLines(file.toPath()).size());
+	}
+
+	/**
+	 * Checks that entries from other parser versions and unreadable lines are dropped when the cache is loaded,
+	 * and that the file is rewritten without them.
+	 * @throws IOException if the cache can't be written or loaded.
+	 */
+	@Test
+	public void testDropsStaleEntries() throws IOException {
+		ParseCache cache = new ParseCache(file);
+		cache.put("aa", RASTER, headphone("Current", 1));
+		List<String> lines = new ArrayList<String>(Files.readAllLines(file.toPath()));
+		String current = lines.get(0);
+		lines.add(current.replace("aa\t" + RASTER, "bb\t" + (MeasurementParser.PARSER_VERSION - 1) + "-RASTER"));
+		lines.add(current.replace("aa\t" + RASTER, "cc\t" + (MeasurementParser.PARSER_VERSION + 1) + "-VECTOR"));
+		lines.add(current.replace("aa", "dd").replace("[", "[x"));
+		lines.add("ee\t" + RASTER);
+		Files.write(file.toPath(), lines);
+		cache = new ParseCache(file);
+		assertEquals(1, cache.size());
+		assertEquals("Current", cache.get("aa", RASTER, "Earbud", "").getName());
+		assertNull(cache.get("bb", RASTER, "Earbud", ""));
+		assertEquals(Arrays.asList(current), Files.readAllLines(file.toPath()));
+	}
+
+	/**
+	 * Checks that a name containing the separator is loaded with a space in its place,
+	 * without shifting the other fields.
+	 * @throws IOException if the cache can't be written or loaded.
+	 */
+	@Test
+	public void testNameWithSeparator() throws IOException {
+		ParseCache cache = new ParseCache(file);
+		cache.put("aa", RASTER, headphone("Tab\tName\t", 1));
+		cache = new ParseCache(file);
+		Headphone cached = cache.get("aa", RASTER, "Earbud", "");
+		assertEquals("Tab Name ", cached.getName());
+		assertArrayEquals(headphone("", 1).getDBVals(), cached.getDBVals(), 0);
+	}
+
+	/**
+	 * Checks that entries put from several threads at once, including the same hash from each thread,
+	 * are each written once on their own line.
+	 * @throws Exception if the cache can't be written or loaded.
+	 */
+	@Test
+	public void testConcurrentPut() throws Exception {
+		ParseCache cache = new ParseCache(file);
+		int threads = 8;
+		int perThread = 50;
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for (int t = 0; t < threads; t++) {
+				int thread = t;
+				futures.add(pool.submit(() -> {
+					for (int i = 0; i < perThread; i++) {
+						cache.put("shared" + i, RASTER, headphone("Shared " + i, i));
+						cache.put("own" + thread + "-" + i, RASTER, headphone("Own " + i, i));
+					}
+					return null;
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		int expected = perThread + threads * perThread;
+		assertEquals(expected, cache.size());
+		assertEquals(expected, Files.readAllLines(file.toPath()).size());
+		ParseCache loaded = new ParseCache(file);
+		assertEquals(expected, loaded.size());
+		assertEquals("Shared 7", loaded.get("shared7", RASTER, "Earbud", "").getName());
+		assertArrayEquals(headphone("", 7).getDBVals(), loaded.get("own3-7", RASTER, "Earbud", "").getDBVals(), 0);
+	}
+
+	/**
+	 * Returns a headphone with the given name and a curve made from the given seed.
+	 * @param name Name of the headphone.
+	 * @param seed Seed of the curve.
+	 * @return a headphone with the given name.
+	 */
+	private static Headphone headphone(String name, int seed) {
+		double[] dBVals = new double[CurveStore.CURVE_LENGTH];
+		for (int i = 0; i < dBVals.length; i++) {
+			dBVals[i] = seed + i / 100.0 - 0.25;
+		}
+		return new Headphone(name, "In-Ear", "", dBVals);
+	}
+
+}
@@ -0,0 +1,112 @@
+package parse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import data.Headphone;
+
+/**
+ * Parses a few thousand synthetic PDFs on several threads under a small fixed heap, to check that
+ * parsing stays within its memory budget and doesn't keep anything from the PDFs it has parsed.
+ * Surefire only runs it with the soak profile, which sets the heap: mvn -Psoak test.
+ * The number of PDFs, threads, and heap can be changed with soak.count, soak.threads, and soak.heap.
+ *
+ * @author Adam Luck
+ */
+public class MeasurementParserSoak {
+
+	/** Largest heap the soak is meant to run under, so a default-sized heap doesn't hide a leak. */
+	private static final long MAX_HEAP_BYTES = 256L * 1024 * 1024;
+	/** Number of bytes the heap used after parsing can grow by between the first batch and the end. */
+	private static final long LEAK_SLACK_BYTES = 8L * 1024 * 1024;
+	/** Number of PDFs written and parsed at a time, so the folder doesn't hold the whole corpus at once. */
+	private static final int BATCH_SIZE = 250;
+
+	/** Folder the PDFs are written to. */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Sets a tight memory budget, so PDFs wait for each other and spill to scratch files.
+	 */
+	@Before
+	public void setBudget() {
+		MeasurementParser.setMemoryBudget(2, 64 * 1024);
+	}
+
+	/**
+	 * Restores the default memory budget.
+	 */
+	@After
+	public void restoreBudget() {
+		MeasurementParser.setMemoryBudget(MeasurementParser.DEFAULT_MAX_OPEN_DOCUMENTS,
+				MeasurementParser.DEFAULT_MAIN_MEMORY_BYTES);
+	}
+
+	/**
+	 * Parses the corpus in batches, checking every PDF's name, and checks that the heap used after a full
+	 * collection is no bigger at the end than after the first batch.
+	 * @throws Exception if a PDF can't be written or parsed.
+	 */
+	@Test
+	public void testBoundedHeap() throws Exception {
+		long maxHeap = Runtime.getRuntime().maxMemory();
+		assertTrue("Heap of " + maxHeap + " bytes is too big to soak under; run with -Psoak",
+				maxHeap <= MAX_HEAP_BYTES);
+		int count = Integer.getInteger("soak.count", 3000);
+		int threads = Integer.getInteger("soak.threads", 4);
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			long baseline = -1;
+			for (int start = 0; start < count; start += BATCH_SIZE) {
+				int size = Math.min(BATCH_SIZE, count - start);
+				File dir = folder.newFolder("batch" + start);
+				List<File> files = SamplePdfs.write(dir, size, start);
+				AtomicInteger parsed = new AtomicInteger();
+				List<Future<?>> futures = new ArrayList<Future<?>>();
+				for (File file : files) {
+					futures.add(pool.submit(() -> {
+						Headphone headphone = MeasurementParser.parseMeasurements(file.getPath(), "In-Ear", file.getName());
+						assertTrue(file.getName(), headphone.getName().length() > 0);
+						parsed.incrementAndGet();
+						return null;
+					}));
+				}
+				for (Future<?> future : futures) {
+					future.get();
+				}
+				assertEquals(size, parsed.get());
+				for (File file : files) {
+					assertTrue(file.delete());
+				}
+				System.gc();
+				long used = memory.getHeapMemoryUsage().getUsed();
+				if (baseline < 0)
+					baseline = used;
+				assertTrue("Heap used grew from " + baseline + " to " + used + " bytes after "
+						+ (start + size) + " PDFs", used <= baseline + LEAK_SLACK_BYTES);
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+}
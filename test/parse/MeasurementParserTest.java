@@ -0,0 +1,213 @@
+package parse;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import data.Headphone;
+
+/**
+ * Checks that the parser reads the same names and decibel values from the sample PDFs
+ * as the original parser did, which rendered the whole page and read it with getRGB,
+ * and read the name from the text of the whole page.
+ *
+ * @author Adam Luck
+ */
+public class MeasurementParserTest {
+
+	/** Folder the sample PDFs are written to. */
+	@ClassRule
+	public static TemporaryFolder folder = new TemporaryFolder();
+
+	/** Sample PDFs the baseline measurements were parsed from. */
+	private static List<File> samples;
+	/** Lines of the baseline measurements file, keyed by the file name of the sample they were parsed from. */
+	private static Map<String, String[]> baseline;
+	/** Parse mode before the test. */
+	private ParseMode mode;
+
+	/**
+	 * Writes the sample PDFs and loads the measurements the original parser read from them.
+	 * @throws IOException if the samples can't be written or the baseline can't be read.
+	 */
+	@BeforeClass
+	public static void setUp() throws IOException {
+		samples = SamplePdfs.write(folder.newFolder("samples"), SamplePdfs.BASELINE_COUNT, SamplePdfs.BASELINE_SEED);
+		baseline = new LinkedHashMap<String, String[]>();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+				MeasurementParserTest.class.getResourceAsStream("baseline-measurements.txt"), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				// Lines are file name, dBVals, and name, with the name last since it's free text.
+				String[] fields = line.split("\t", 3);
+				baseline.put(fields[0], fields);
+			}
+		}
+		assertEquals(samples.size(), baseline.size());
+	}
+
+	/**
+	 * Saves the parse mode, so tests can change it.
+	 */
+	@Before
+	public void saveMode() {
+		mode = MeasurementParser.getMode();
+	}
+
+	/**
+	 * Restores the parse mode from before the test.
+	 */
+	@After
+	public void restoreMode() {
+		MeasurementParser.setMode(mode);
+	}
+
+	/**
+	 * Checks that the raster parser reads exactly the baseline decibel values and names, and reports
+	 * that it read them.
+	 * @throws Exception if a sample can't be parsed.
+	 */
+	@Test
+	public void testRasterMatchesBaseline() throws Exception {
+		MeasurementParser.setMode(ParseMode.RASTER);
+		for (File sample : samples) {
+			Headphone headphone = MeasurementParser.parseMeasurements(sample.getPath(), "Earbud", sample.getName());
+			String[] expected = baseline.get(sample.getName());
+			assertEquals(sample.getName(), expected[1], Arrays.toString(headphone.getDBVals()));
+			assertEquals(sample.getName(), expected[2], headphone.getName());
+			assertEquals(ParseMode.RASTER, MeasurementParser.getParsedMode());
+		}
+	}
+
+	/**
+	 * Checks that the names read from the name corpus, whose headers are drawn out of order, on several lines,
+	 * or below the header region, match the names the original parser read from the whole page.
+	 * @throws IOException if the corpus can't be written, read, or parsed.
+	 */
+	@Test
+	public void testNameCorpusMatchesBaseline() throws IOException {
+		List<File> corpus = SamplePdfs.writeNames(folder.newFolder("names"));
+		Map<String, String> names = new LinkedHashMap<String, String>();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+				MeasurementParserTest.class.getResourceAsStream("baseline-names.txt"), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				// Lines are file name and name, with line breaks in the name written as \n.
+				String[] fields = line.split("\t", 2);
+				names.put(fields[0], fields[1]);
+			}
+		}
+		assertEquals(corpus.size(), names.size());
+		for (File file : corpus) {
+			try (PDDocument document = PDDocument.load(file)) {
+				String name = MeasurementParser.parseName(document).replace(System.lineSeparator(), "\\n");
+				assertEquals(file.getName(), names.get(file.getName()), name);
+			}
+		}
+	}
+
+	/**
+	 * Checks that the raster parser is the default, since vector parsing hasn't been shown to match it on real PDFs.
+	 */
+	@Test
+	public void testRasterIsDefault() {
+		assertEquals(ParseMode.RASTER, mode);
+	}
+
+	/**
+	 * Checks that vector parsing reads the baseline names, and decibel values within the
+	 * half a decibel it's known to differ from the rendered graph by, without falling back to raster.
+	 * @throws Exception if a sample can't be parsed.
+	 */
+	@Test
+	public void testVectorNearBaseline() throws Exception {
+		MeasurementParser.setMode(ParseMode.VECTOR);
+		for (File sample : samples) {
+			Headphone headphone = MeasurementParser.parseMeasurements(sample.getPath(), "Earbud", sample.getName());
+			String[] expected = baseline.get(sample.getName());
+			assertArrayEquals(sample.getName(), parseDBVals(expected[1]), headphone.getDBVals(), 0.5);
+			assertEquals(sample.getName(), expected[2], headphone.getName());
+			assertEquals(ParseMode.VECTOR, MeasurementParser.getParsedMode());
+		}
+	}
+
+	/**
+	 * Checks that parsing a sample twice on the same thread, which reuses the graph image, reads the same values.
+	 * @throws Exception if a sample can't be parsed.
+	 */
+	@Test
+	public void testGraphImageReuse() throws Exception {
+		MeasurementParser.setMode(ParseMode.RASTER);
+		File first = samples.get(0);
+		double[] dBVals = MeasurementParser.parseMeasurements(first.getPath(), "Earbud", "").getDBVals();
+		// Parse a stretched sample in between, so the image holds a different graph.
+		MeasurementParser.parseMeasurements(samples.get(1).getPath(), "Earbud", "");
+		assertArrayEquals(dBVals, MeasurementParser.parseMeasurements(first.getPath(), "Earbud", "").getDBVals(), 0);
+	}
+
+	/**
+	 * Checks that scanning a rendered graph allocates nothing but the returned array.
+	 * Skipped on JVMs that can't count the bytes a thread allocates.
+	 * @throws Exception if a sample can't be rendered or scanned.
+	 */
+	@Test
+	public void testScanAllocatesOnlyResult() throws Exception {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+		Assume.assumeTrue(allocations.isThreadAllocatedMemorySupported());
+		allocations.setThreadAllocatedMemoryEnabled(true);
+		try (PDDocument document = PDDocument.load(samples.get(0))) {
+			BufferedImage image = MeasurementParser.renderGraph(document);
+			long thread = Thread.currentThread().getId();
+			int scans = 1000;
+			long before = allocations.getThreadAllocatedBytes(thread);
+			for (int i = 0; i < scans; i++) {
+				MeasurementParser.scanDBVals(image);
+			}
+			long allocated = allocations.getThreadAllocatedBytes(thread) - before;
+			// A double[27] takes 16 bytes of header and 216 bytes of values,
+			// and reading the allocation counter can allocate a little itself.
+			long resultBytes = 16 + 8 * Headphone.MEASURED_FREQUENCIES.length;
+			assertTrue("Allocated " + allocated + " bytes in " + scans + " scans",
+					allocated <= scans * resultBytes + 1024);
+		}
+	}
+
+	/**
+	 * Returns the decibel values in a line of the baseline measurements file.
+	 * @param field Decibel values written by Arrays.toString.
+	 * @return the decibel values.
+	 */
+	private static double[] parseDBVals(String field) {
+		String[] split = field.replace("[", "").replace("]", "").split(", ");
+		double[] dBVals = new double[split.length];
+		for (int i = 0; i < dBVals.length; i++) {
+			dBVals[i] = Double.parseDouble(split[i]);
+		}
+		return dBVals;
+	}
+
+}
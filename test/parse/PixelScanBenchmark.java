@@ -0,0 +1,172 @@
+package parse;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares reading the decibel values from a rendered graph through the image's backing array
+ * with the original getRGB and Color scan, which is copied from the original parser loop. Run with "-prof gc" to see the bytes allocated per
+ * scan, which for the backing array scan is only the returned array.
+ *
+ * @author Adam Luck
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PixelScanBenchmark {
+
+	/** Whether the graph scanned has the stretched layout. */
+	@Param({"false", "true"})
+	public boolean stretched;
+
+	/** Rendered graph area that is scanned. */
+	private BufferedImage image;
+
+	/**
+	 * Renders the graph area of a sample PDF, and checks that both scans read the same values from it.
+	 * @throws IOException if the sample can't be written or rendered.
+	 * @throws InvalidDocumentException if the graph can't be read.
+	 */
+	@Setup
+	public void setUp() throws IOException, InvalidDocumentException {
+		File dir = Files.createTempDirectory("samples").toFile();
+		List<File> samples = SamplePdfs.write(dir, 2, SamplePdfs.BASELINE_SEED);
+		try (PDDocument document = PDDocument.load(samples.get(stretched ? 1 : 0))) {
+			BufferedImage graph = MeasurementParser.renderGraph(document);
+			// Copy the image, since the rendered one is reused by the next render on this thread.
+			image = new BufferedImage(graph.getWidth(), graph.getHeight(), BufferedImage.TYPE_INT_RGB);
+			image.getGraphics().drawImage(graph, 0, 0, null);
+		}
+		for (File sample : samples) {
+			Files.delete(sample.toPath());
+		}
+		Files.delete(dir.toPath());
+		// Both scans have to read the same values for their times to be comparable.
+		if (!Arrays.equals(backingArray(), getRGB()))
+			throw new IllegalStateException("The scans read different values.");
+	}
+
+	/**
+	 * Scans the graph through its backing array.
+	 * @return the decibel values read from the graph.
+	 * @throws InvalidDocumentException if the graph can't be read.
+	 */
+	@Benchmark
+	public double[] backingArray() throws InvalidDocumentException {
+		return MeasurementParser.scanDBVals(image);
+	}
+
+	/**
+	 * Scans the graph with getRGB and a Color per pixel, copied from the parser's original parseDBVals,
+	 * with coordinates offset since only the graph area is rendered.
+	 * @return the decibel values read from the graph.
+	 * @throws InvalidDocumentException if the graph can't be read.
+	 */
+	@Benchmark
+	public double[] getRGB() throws InvalidDocumentException {
+		int left = MeasurementParser.GRAPH_LEFT;
+		int graphTop = MeasurementParser.GRAPH_TOP;
+		
+		// Determine whether the image is stretched or not.
+		Color corner = new Color(image.getRGB(MeasurementParser.STRETCH_CHECK.x - left,
+				MeasurementParser.STRETCH_CHECK.y - graphTop));
+		boolean isStretched = corner.equals(Color.WHITE);
+		// Set variables based on stretch.
+		int top;
+		int bot;
+		int[] xVals;
+		if (isStretched) {
+			top = MeasurementParser.S_FR_TOP;
+			bot = MeasurementParser.S_FR_BOT;
+			xVals = MeasurementParser.S_FR_X_VALS;
+		}
+		else {
+			top = MeasurementParser.NS_FR_TOP;
+			bot = MeasurementParser.NS_FR_BOT;
+			xVals = MeasurementParser.NS_FR_X_VALS;
+		}
+		
+		// Calculate decibel values for each frequency in xVals.
+		double[] dBVals = new double[xVals.length];
+		int botTopRange = bot - top;
+		for (int i = 0; i < xVals.length; i++) {
+			boolean foundRed = false;
+			boolean foundBlue = false;
+			int finalRedY = bot;
+			int finalBlueY = bot;
+			// Get most red/blue pixel at the given x-coordinate between top and bottom
+			int mostRed = 0;
+			int mostBlue = 0;
+			// Start at the top of the graph and work down.
+			for (int yVal = top; yVal < bot; yVal++) {
+				Color color = new Color(image.getRGB(xVals[i] - left, yVal - graphTop));
+				int red = color.getRed();
+				int blue = color.getBlue();
+				// Don't count grayscale pixels.
+				if (red == blue && red == color.getGreen()) {
+					continue;
+				}
+				else if (red > mostRed && red > blue) {
+					foundRed = true;
+					mostRed = red;
+					finalRedY = yVal;
+					if (mostRed == Color.RED.getRed())
+						break;
+				}
+				else if (blue > mostBlue && blue > red) {
+					foundBlue = true;
+					mostBlue = blue;
+					finalBlueY = yVal;
+					if (mostBlue == Color.BLUE.getBlue())
+						break;
+				}
+			}
+			
+			// Calculate the final Y value based on the red and blue y values found.
+			int finalYVal = 0;
+			if (foundRed && foundBlue) {
+				finalYVal = (finalRedY + finalBlueY) / 2;
+			}
+			else if (foundRed) {
+				finalYVal = finalRedY;
+			}
+			else if (foundBlue) {
+				finalYVal = finalBlueY;
+			} else {
+				throw new InvalidDocumentException("Couldn't parse measurements.");
+			}
+			
+			// Do some math to calculate a rounded decibel value using the graph proportions.
+			int distFromBot = bot - finalYVal;
+			double propDistFromBot = (double) distFromBot / botTopRange;
+			double dBFromBot = propDistFromBot * MeasurementParser.DB_RANGE;
+			double totalDB = dBFromBot + MeasurementParser.DB_MIN;
+			totalDB = Math.round(totalDB * 100.0) / 100.0;
+			dBVals[i] = totalDB;
+		}
+		return dBVals;
+	}
+
+}
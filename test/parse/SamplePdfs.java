@@ -0,0 +1,230 @@
+package parse;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+
+/**
+ * Writes synthetic measurement PDFs laid out like Innerfidelity's, with a header containing
+ * the headphone's name and a frequency response graph with a red and a blue curve.
+ * Odd-numbered samples have the stretched graph layout. The same seed always writes the same PDFs.
+ * Also writes a corpus of PDFs that only have a header, with the name laid out in ways that make
+ * text extraction order matter.
+ *
+ * @author Adam Luck
+ */
+public class SamplePdfs {
+
+	/** Seed of the sample set that the baseline measurements were parsed from. */
+	public static final long BASELINE_SEED = 42;
+	/** Number of PDFs in the sample set that the baseline measurements were parsed from. */
+	public static final int BASELINE_COUNT = 20;
+	/** Points per pixel of the page rendered at the parser's DPI. */
+	private static final float SCALE = 72f / MeasurementParser.RENDER_DPI;
+	/** Copyright notice the name follows in the header. */
+	private static final String NOTICE = "Copyright 2017 All rights reserved.";
+	/** Points below the top of the page of a line below the region the name is read from. */
+	private static final float BELOW_REGION = MeasurementParser.NAME_REGION_HEIGHT + 30;
+	/** Headers of the name corpus, each a list of text runs in the order they are drawn. */
+	private static final Run[][] NAME_CORPUS = {
+		{run(50, 22, NOTICE + "  Plain Name  10%")},
+		{run(50, 22, NOTICE), run(220, 22, "Split Name w/ Cable"), run(400, 22, "10%")},
+		{run(220, 22, "Drawn First"), run(50, 22, NOTICE + "  Drawn Second"), run(330, 22, "  10%")},
+		{run(50, 22, NOTICE + "  "), run(300, 22, "Reversed"), run(240, 22, "Runs"), run(400, 22, "  10%")},
+		{run(50, 22, NOTICE + "  Raised"), run(240, 20, "Run"), run(280, 24, "Lowered  10%")},
+		{run(50, 22, NOTICE + "  Name"), run(50, 40, "Under  10%")},
+		{run(50, 40, "Frequency Response"), run(50, 22, NOTICE + "  Lower Line Drawn First  10%")},
+		{run(50, 22, NOTICE + "  Caf\u00e9 \u00c9tude \u00dcber  10%")},
+		{run(50, 22, NOTICE + "  Model: \"X\" <Mk 2> | 3/4 * ?  10%")},
+		{run(50, 22, NOTICE), run(216, 22, "K"), run(223, 22, "e"), run(229, 22, "r"), run(233, 22, "n"),
+			run(239, 22, "e"), run(245, 22, "d"), run(260, 22, "Letters  10%")},
+		{run(50, BELOW_REGION, NOTICE + "  Below Header  10%")},
+		{run(50, 22, "Innerfidelity"), run(50, BELOW_REGION, NOTICE + "  Only Below  10%")},
+	};
+
+	/**
+	 * Writes the given number of sample PDFs to the directory, named hp0.pdf, hp1.pdf, and so on.
+	 * @param dir Directory to write the PDFs to.
+	 * @param count Number of PDFs to write.
+	 * @param seed Seed of the random curves.
+	 * @return the PDFs written, in order.
+	 * @throws IOException if a PDF can't be written.
+	 */
+	public static List<File> write(File dir, int count, long seed) throws IOException {
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Failed to make sample directory.");
+		}
+		Random random = new Random(seed);
+		List<File> files = new ArrayList<File>();
+		for (int i = 0; i < count; i++) {
+			File file = new File(dir, "hp" + i + ".pdf");
+			write(file, i, random);
+			files.add(file);
+		}
+		return files;
+	}
+
+	/**
+	 * Writes the name corpus to the directory, named name0.pdf, name1.pdf, and so on.
+	 * @param dir Directory to write the PDFs to.
+	 * @return the PDFs written, in order.
+	 * @throws IOException if a PDF can't be written.
+	 */
+	public static List<File> writeNames(File dir) throws IOException {
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Failed to make sample directory.");
+		}
+		List<File> files = new ArrayList<File>();
+		for (int i = 0; i < NAME_CORPUS.length; i++) {
+			File file = new File(dir, "name" + i + ".pdf");
+			try (PDDocument document = new PDDocument()) {
+				PDPage page = new PDPage(PDRectangle.LETTER);
+				document.addPage(page);
+				float height = page.getMediaBox().getHeight();
+				try (PDPageContentStream stream = new PDPageContentStream(document, page)) {
+					for (Run run : NAME_CORPUS[i]) {
+						stream.beginText();
+						stream.setFont(PDType1Font.HELVETICA, 10);
+						stream.newLineAtOffset(run.x, height - run.y);
+						stream.showText(run.text);
+						stream.endText();
+					}
+				}
+				document.save(file);
+			}
+			files.add(file);
+		}
+		return files;
+	}
+
+	/**
+	 * Writes one sample PDF.
+	 * @param file File to write the PDF to.
+	 * @param number Number of the sample, which decides its name and layout.
+	 * @param random Source of the curves.
+	 * @throws IOException if the PDF can't be written.
+	 */
+	private static void write(File file, int number, Random random) throws IOException {
+		boolean stretched = number % 2 == 1;
+		try (PDDocument document = new PDDocument()) {
+			PDPage page = new PDPage(PDRectangle.LETTER);
+			document.addPage(page);
+			float height = page.getMediaBox().getHeight();
+			try (PDPageContentStream stream = new PDPageContentStream(document, page)) {
+				// Header with the name between the copyright notice and the compensation percentage.
+				stream.beginText();
+				stream.setFont(PDType1Font.HELVETICA, 10);
+				stream.newLineAtOffset(50, height - 22);
+				stream.showText("Copyright 2017 All rights reserved.  " + name(number) + "  10%");
+				stream.endText();
+				// The corner of the graph's frame is only at STRETCH_CHECK in the unstretched layout.
+				if (!stretched) {
+					float x = MeasurementParser.STRETCH_CHECK.x + 0.5f;
+					float y = MeasurementParser.STRETCH_CHECK.y + 0.5f;
+					stream.setStrokingColor(128, 128, 128);
+					stream.setLineWidth(1);
+					line(stream, height, x, y, 1200, y);
+					line(stream, height, x, y, x, 1030);
+				}
+				int top = stretched ? MeasurementParser.S_FR_TOP : MeasurementParser.NS_FR_TOP;
+				int bot = stretched ? MeasurementParser.S_FR_BOT : MeasurementParser.NS_FR_BOT;
+				for (int curve = 0; curve < 2; curve++) {
+					if (curve == 0)
+						stream.setStrokingColor(255, 0, 0);
+					else
+						stream.setStrokingColor(0, 0, 255);
+					stream.setLineWidth(0.5f);
+					float y = top + 100 + random.nextInt(200);
+					stream.moveTo(400 * SCALE, height - y * SCALE);
+					for (int x = 410; x < 1200; x += 10) {
+						y = Math.max(top + 5, Math.min(bot - 5, y + random.nextInt(21) - 10));
+						stream.lineTo(x * SCALE, height - y * SCALE);
+					}
+					stream.stroke();
+				}
+			}
+			document.save(file);
+		}
+	}
+
+	/**
+	 * Returns the name printed in the header of a sample, some of which contain characters the parser cleans up.
+	 * @param number Number of the sample.
+	 * @return the name printed in the header of the sample.
+	 */
+	private static String name(int number) {
+		switch (number % 4) {
+		case 0:
+			return "Test Headphone " + number + " w/ pads";
+		case 1:
+			return "Model " + number + ": \"Pro\"";
+		case 2:
+			return "Studio/Monitor  " + number;
+		default:
+			return "Earphone " + number + " <Mk II>";
+		}
+	}
+
+	/**
+	 * Strokes a line between two points given in pixels of the page rendered at the parser's DPI.
+	 * @param stream Stream to draw the line in.
+	 * @param height Height of the page in points.
+	 * @param x1 X-value of the start of the line.
+	 * @param y1 Y-value of the start of the line.
+	 * @param x2 X-value of the end of the line.
+	 * @param y2 Y-value of the end of the line.
+	 * @throws IOException if the line can't be written.
+	 */
+	private static void line(PDPageContentStream stream, float height, float x1, float y1, float x2, float y2)
+			throws IOException {
+		stream.moveTo(x1 * SCALE, height - y1 * SCALE);
+		stream.lineTo(x2 * SCALE, height - y2 * SCALE);
+		stream.stroke();
+	}
+
+	/**
+	 * Returns a run of text in a header.
+	 * @param x Points from the left of the page the text starts at.
+	 * @param y Points below the top of the page of the text's baseline.
+	 * @param text Text of the run.
+	 * @return the run.
+	 */
+	private static Run run(float x, float y, String text) {
+		return new Run(x, y, text);
+	}
+
+	/**
+	 * Text drawn at a position in a header.
+	 */
+	private static final class Run {
+
+		/** Points from the left of the page the text starts at. */
+		private final float x;
+		/** Points below the top of the page of the text's baseline. */
+		private final float y;
+		/** Text of the run. */
+		private final String text;
+
+		/**
+		 * Constructor for a run.
+		 * @param x Points from the left of the page the text starts at.
+		 * @param y Points below the top of the page of the text's baseline.
+		 * @param text Text of the run.
+		 */
+		private Run(float x, float y, String text) {
+			this.x = x;
+			this.y = y;
+			this.text = text;
+		}
+
+	}
+
+}
@@ -0,0 +1,116 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import data.CurveStore;
+import data.Headphone;
+
+/**
+ * Measures building a list of headphones and looking them up by URL and name, at sizes much
+ * larger than Innerfidelity's catalog, where the original list's insertion sort and linear
+ * URL search were quadratic.
+ *
+ * @author Adam Luck
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeadphoneListBenchmark {
+
+	/** Number of headphones in the list. */
+	@Param({"10000", "100000"})
+	public int size;
+
+	/** Headphones to add, in random order. */
+	private List<Headphone> headphones;
+	/** List containing every headphone. */
+	private HeadphoneList list;
+	/** Source of the headphones looked up. */
+	private Random random;
+
+	/**
+	 * Makes the headphones and a list containing them.
+	 */
+	@Setup
+	public void setUp() {
+		random = new Random(42);
+		headphones = new ArrayList<Headphone>(size);
+		double[] dBVals = new double[CurveStore.CURVE_LENGTH];
+		for (int i = 0; i < size; i++) {
+			int id = random.nextInt(size);
+			headphones.add(new Headphone("Headphone " + id, "Earbud", "http://example.com/" + id + ".pdf", dBVals));
+		}
+		list = new HeadphoneList("Earbud");
+		list.addAll(headphones);
+	}
+
+	/**
+	 * Adds every headphone to an empty list one at a time, then reads the sorted list.
+	 * @return the sorted headphones.
+	 */
+	@Benchmark
+	public Headphone[] add() {
+		HeadphoneList list = new HeadphoneList("Earbud");
+		for (Headphone headphone : headphones) {
+			list.add(headphone);
+		}
+		return list.getAll();
+	}
+
+	/**
+	 * Adds every headphone to an empty list at once.
+	 * @return the sorted headphones.
+	 */
+	@Benchmark
+	public Headphone[] addAll() {
+		HeadphoneList list = new HeadphoneList("Earbud");
+		list.addAll(headphones);
+		return list.getAll();
+	}
+
+	/**
+	 * Looks up a headphone by URL.
+	 * @return the headphone found.
+	 */
+	@Benchmark
+	public Headphone getByURL() {
+		return list.getByURL(headphones.get(random.nextInt(size)).getURL());
+	}
+
+	/**
+	 * Looks up a headphone by name.
+	 * @return the headphone found.
+	 */
+	@Benchmark
+	public Headphone getByName() {
+		return list.getByName(headphones.get(random.nextInt(size)).getName());
+	}
+
+	/**
+	 * Copies the sorted list.
+	 * @return the sorted headphones.
+	 */
+	@Benchmark
+	public Headphone[] getAll() {
+		return list.getAll();
+	}
+
+}
@@ -0,0 +1,190 @@
+package util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import data.CurveStore;
+import data.Headphone;
+
+/**
+ * Checks that the indexed list finds the same headphones, in the same order,
+ * as the original insertion-sorted list with its binary and linear searches did.
+ *
+ * @author Adam Luck
+ */
+public class HeadphoneListTest {
+
+	/**
+	 * Checks that headphones added one at a time come back sorted by name and then type,
+	 * with headphones that compare equal in the order they were added.
+	 */
+	@Test
+	public void testAddKeepsSortedOrder() {
+		HeadphoneList list = new HeadphoneList("Earbud");
+		list.add(headphone("Charlie", "Earbud", "c"));
+		list.add(headphone("Alpha", "In-Ear", "a2"));
+		list.add(headphone("Bravo", "Earbud", "b"));
+		list.add(headphone("Alpha", "Earbud", "a1"));
+		list.add(headphone("Bravo", "Earbud", "b2"));
+		assertEquals(5, list.size());
+		assertArrayEquals(new String[] {"a1", "a2", "b", "b2", "c"}, urls(list.getAll()));
+	}
+
+	/**
+	 * Checks that adding a collection gives the same order as adding its headphones one at a time.
+	 */
+	@Test
+	public void testAddAllMatchesAdd() {
+		List<Headphone> headphones = new ArrayList<Headphone>();
+		for (int i = 0; i < 100; i++) {
+			// Reuse names, so some headphones compare equal.
+			headphones.add(headphone("Headphone " + (i * 37 % 41), "Earbud", "url" + i));
+		}
+		HeadphoneList one = new HeadphoneList("Earbud");
+		for (Headphone headphone : headphones) {
+			one.add(headphone);
+		}
+		HeadphoneList all = new HeadphoneList("Earbud");
+		all.add(headphones.get(0));
+		all.addAll(headphones.subList(1, headphones.size()));
+		assertArrayEquals(urls(one.getAll()), urls(all.getAll()));
+		assertEquals(headphones.size(), all.getStore().size());
+	}
+
+	/**
+	 * Checks that headphones are found by URL and name, before and after the list is sorted.
+	 */
+	@Test
+	public void testLookups() {
+		HeadphoneList list = new HeadphoneList("Earbud");
+		list.add(headphone("Zulu", "Earbud", "z"));
+		list.add(headphone("Yankee", "Earbud", "y"));
+		assertEquals("Zulu", list.getByURL("z").getName());
+		assertEquals("y", list.getByName("Yankee").getURL());
+		list.getAll();
+		assertEquals("Zulu", list.getByURL("z").getName());
+		assertEquals("y", list.getByName("Yankee").getURL());
+		assertArrayEquals(new double[CurveStore.CURVE_LENGTH], list.getByURL("z").getDBVals(), 0);
+		assertNull(list.getByURL("x"));
+		assertNull(list.getByName("X-ray"));
+		assertNull(new HeadphoneList("Earbud").getByName("Zulu"));
+	}
+
+	/**
+	 * Checks that a name or URL shared by several headphones finds the first of them in sorted order,
+	 * which is the one a search of the original sorted list found, whatever order they were added in.
+	 */
+	@Test
+	public void testDuplicateLookups() {
+		HeadphoneList list = new HeadphoneList("Earbud");
+		list.add(headphone("Bravo", "Earbud", "same"));
+		list.add(headphone("Alpha", "Earbud", "same"));
+		list.add(headphone("Alpha", "Earbud", "other"));
+		assertEquals("Alpha", list.getByURL("same").getName());
+		assertEquals("same", list.getByName("Alpha").getURL());
+		list.getAll();
+		assertEquals("Alpha", list.getByURL("same").getName());
+		assertEquals("same", list.getByName("Alpha").getURL());
+		list.add(headphone("Alpha", "Earbud", "same"));
+		assertEquals("Alpha", list.getByURL("same").getName());
+		assertEquals(0, list.getByURL("same").getIndex());
+	}
+
+	/**
+	 * Checks that the views returned by the list stay valid after more headphones are added,
+	 * that the store holds the headphones in the same order as getAll, and that the store isn't changed afterwards.
+	 */
+	@Test
+	public void testViewsAndStore() {
+		HeadphoneList list = new HeadphoneList("Earbud");
+		list.add(headphone("Mike", "Earbud", "m"));
+		Headphone mike = list.getByURL("m");
+		Headphone[] before = list.getAll();
+		for (int i = 0; i < 10; i++) {
+			list.add(headphone("Headphone " + i, "Earbud", "url" + i));
+		}
+		assertEquals("Mike", mike.getName());
+		assertEquals("Mike", before[0].getName());
+		Headphone[] all = list.getAll();
+		CurveStore store = list.getStore();
+		assertEquals(all.length, store.size());
+		for (int i = 0; i < all.length; i++) {
+			assertSame(store, all[i].getStore());
+			assertEquals(i, all[i].getIndex());
+		}
+		// Adding to the list leaves the store it returned as it was.
+		list.add(headphone("Alpha", "Earbud", "a"));
+		assertEquals(all.length, store.size());
+		assertEquals("Headphone 0", store.getName(0));
+		assertEquals("Alpha", list.getStore().getName(0));
+		assertEquals(all.length + 1, list.getStore().size());
+		assertEquals("Alpha", list.getByURL("a").getName());
+		assertEquals("Mike", list.getByURL("m").getName());
+	}
+
+	/**
+	 * Checks that adding to a list whose store has been shared doesn't copy the shared store,
+	 * so an add followed by an analysis only rebuilds the store once, and that the next store
+	 * has every headphone in sorted order.
+	 */
+	@Test
+	public void testAddAfterShareRebuildsOnce() {
+		HeadphoneList list = new HeadphoneList("Earbud");
+		for (int i = 0; i < 10; i++) {
+			list.add(headphone("Headphone " + i, "Earbud", "url" + i));
+		}
+		CurveStore shared = list.getStore();
+		Headphone first = list.getByURL("url0");
+		assertSame(shared, first.getStore());
+		list.add(headphone("Alpha", "Earbud", "a"));
+		list.add(headphone("Zulu", "Earbud", "z"));
+		// Nothing was copied by the adds, so the views from before them are still the ones in the list.
+		assertSame(first, list.getByURL("url0"));
+		assertEquals(10, shared.size());
+		assertEquals("Alpha", list.getByURL("a").getName());
+		CurveStore rebuilt = list.getStore();
+		assertEquals(12, rebuilt.size());
+		assertEquals("Alpha", rebuilt.getName(0));
+		assertEquals("Zulu", rebuilt.getName(11));
+		for (Headphone headphone : new Headphone[] {list.getByURL("a"), list.getByURL("url0"), list.getByName("Zulu")}) {
+			assertSame(rebuilt, headphone.getStore());
+		}
+		assertEquals(1, list.getByURL("url0").getIndex());
+		// Sorting again doesn't rebuild the store.
+		assertSame(rebuilt, list.getStore());
+		assertSame(rebuilt, list.getAll()[0].getStore());
+	}
+
+	/**
+	 * Returns a headphone with a flat curve.
+	 * @param name Name of the headphone.
+	 * @param type Type of headphone.
+	 * @param url URL of headphone measurements.
+	 * @return a headphone with a flat curve.
+	 */
+	private static Headphone headphone(String name, String type, String url) {
+		return new Headphone(name, type, url, new double[CurveStore.CURVE_LENGTH]);
+	}
+
+	/**
+	 * Returns the URLs of the headphones.
+	 * @param headphones Headphones to get the URLs of.
+	 * @return the URLs of the headphones, in the same order.
+	 */
+	private static String[] urls(Headphone[] headphones) {
+		String[] urls = new String[headphones.length];
+		for (int i = 0; i < urls.length; i++) {
+			urls[i] = headphones[i].getURL();
+		}
+		return urls;
+	}
+
+}